@@ -2,45 +2,169 @@ package com.gestankbratwurst.ambrosia.impl.file;
 
 import com.gestankbratwurst.ambrosia.Ambrosia;
 import com.gestankbratwurst.ambrosia.impl.file.collections.FileMap;
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileKeyCodec;
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileLayout;
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileLayoutMigration;
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
 import com.gestankbratwurst.ambrosia.impl.file.serializer.GsonStringSerializer;
 import com.gestankbratwurst.ambrosia.impl.file.serializer.StringSerializer;
+import com.gestankbratwurst.ambrosia.impl.file.snapshot.SnapshotArchive;
+import com.gestankbratwurst.ambrosia.impl.file.snapshot.SnapshotFiles;
+import com.gestankbratwurst.ambrosia.impl.file.snapshot.SnapshotManifest;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
-public class FileAmbrosia extends Ambrosia<File, FileMap<?, ?>> {
+public class FileAmbrosia extends Ambrosia<File, FileMap<?, ?>> implements AutoCloseable {
 
   public static Builder<?> builder() {
     return new Builder<>();
   }
 
   private final StringSerializer serializer;
+  private final FileMapOptions defaultOptions;
+  private final Map<Path, FileMap<?, ?>> mapViews;
 
-  public FileAmbrosia(File folderBackbone, StringSerializer serializer) {
+  public FileAmbrosia(File folderBackbone, StringSerializer serializer, FileMapOptions defaultOptions) {
     super(folderBackbone);
     if (folderBackbone.isFile()) {
       throw new IllegalArgumentException("FileAmbrosia requires a folder as backbone.");
     }
     this.serializer = serializer;
+    this.defaultOptions = defaultOptions;
+    this.mapViews = new ConcurrentHashMap<>();
+  }
+
+  public FileAmbrosia(File folderBackbone, StringSerializer serializer) {
+    this(folderBackbone, serializer, FileMapOptions.defaults());
   }
 
   @Override
   public <K, V> FileMap<K, V> createMapView(String mapName, Class<K> keyType, Class<V> valueType) {
+    return this.createMapView(mapName, keyType, valueType, this.defaultOptions);
+  }
+
+  /**
+   * Creates a map view, or returns the open view of the same map. A map has only one view at a time,
+   * as every view holds its own key index and locks. The options of an open view are kept.
+   *
+   * @throws IllegalStateException If the map is open with other key or value types.
+   */
+  @SuppressWarnings("unchecked")
+  public <K, V> FileMap<K, V> createMapView(String mapName, Class<K> keyType, Class<V> valueType, FileMapOptions options) {
     File mapFolder = new File(this.getBackbone() + "/" + mapName);
     if (!mapFolder.exists()) {
       if (!mapFolder.mkdirs()) {
         throw new IllegalStateException("Failed to create folder: " + mapFolder);
       }
     }
-    return new FileMap<>(mapFolder, this.serializer, keyType, valueType);
+    FileMap<?, ?> mapView = this.mapViews.compute(mapFolder.toPath().toAbsolutePath().normalize(), (path, openView) -> {
+      if (openView == null || openView.isClosed()) {
+        return new FileMap<>(mapFolder, this.serializer, keyType, valueType, options);
+      }
+      if (openView.getKeyType() != keyType || openView.getValueType() != valueType) {
+        throw new IllegalStateException("Map " + mapName + " is already open with other types.");
+      }
+      return openView;
+    });
+    return (FileMap<K, V>) mapView;
+  }
+
+  /**
+   * Moves the files of a map into another layout, e.g. from flat to sharded once it grew large.
+   * Also renames files written with the old key encoding. The map must not be open while migrating.
+   *
+   * @param mapName The name of the map.
+   * @param keyType The type of the keys.
+   * @param layout  The layout to migrate to.
+   * @param <K>     The type of the keys.
+   * @return The amount of moved files.
+   */
+  public <K> int migrateLayout(String mapName, Class<K> keyType, FileLayout layout) {
+    File mapFolder = new File(this.getBackbone() + "/" + mapName);
+    if (!mapFolder.isDirectory()) {
+      return 0;
+    }
+    return FileLayoutMigration.migrate(mapFolder.toPath(), new FileKeyCodec<>(keyType, this.serializer), layout);
+  }
+
+  /**
+   * Creates a full snapshot of all maps in a zip archive. See {@link #snapshot(Path, SnapshotManifest)}.
+   *
+   * @param archive The archive to write.
+   * @return The manifest of the snapshot, to base incremental snapshots on.
+   */
+  public SnapshotManifest snapshot(Path archive) {
+    return this.snapshot(archive, null);
+  }
+
+  /**
+   * Creates a snapshot of all maps in a zip archive. Open maps are hard linked while their writes are paused.
+   * Incremental snapshots only contain the files changed since the given manifest, see {@link SnapshotArchive#restore}.
+   *
+   * @param archive The archive to write.
+   * @param base    The manifest of the previous snapshot or null for a full snapshot.
+   * @return The manifest of the snapshot, to base incremental snapshots on.
+   */
+  public SnapshotManifest snapshot(Path archive, @Nullable SnapshotManifest base) {
+    Path backbone = this.getBackbone().toPath().toAbsolutePath().normalize();
+    Path staging = backbone.resolve(".snapshot-" + System.nanoTime());
+    try {
+      Files.createDirectories(staging);
+      try (DirectoryStream<Path> mapFolders = Files.newDirectoryStream(backbone, Files::isDirectory)) {
+        for (Path mapFolder : mapFolders) {
+          String mapName = mapFolder.getFileName().toString();
+          if (mapName.startsWith(".")) {
+            continue;
+          }
+          FileMap<?, ?> mapView = this.findMapView(mapFolder);
+          if (mapView != null) {
+            mapView.snapshot(staging.resolve(mapName));
+          } else {
+            SnapshotFiles.linkTree(mapFolder, staging.resolve(mapName));
+          }
+        }
+      }
+      return SnapshotArchive.write(staging, base, archive);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to create snapshot of: " + backbone, e);
+    } finally {
+      SnapshotFiles.deleteTree(staging);
+    }
+  }
+
+  private FileMap<?, ?> findMapView(Path mapFolder) {
+    FileMap<?, ?> mapView = this.mapViews.get(mapFolder);
+    return mapView == null || mapView.isClosed() ? null : mapView;
+  }
+
+  /**
+   * Closes all map views created by this instance.
+   */
+  @Override
+  public void close() {
+    this.mapViews.values().forEach(mapView -> {
+      if (!mapView.isClosed()) {
+        mapView.close();
+      }
+    });
+    this.mapViews.clear();
   }
 
   public static sealed class Builder<SELF extends Builder<SELF>> permits AmbrosiaSerializerBuilder, AmbrosiaGsonBuilder, AmbrosiaGsonConstructBuilder {
 
     protected StringSerializer serializer;
     protected File folder;
+    protected FileMapOptions options = FileMapOptions.defaults();
 
     private Builder() {
     }
@@ -51,15 +175,15 @@ public class FileAmbrosia extends Ambrosia<File, FileMap<?, ?>> {
     }
 
     public AmbrosiaSerializerBuilder serializer(StringSerializer serializer) {
-      return new AmbrosiaSerializerBuilder(serializer).folder(this.folder);
+      return new AmbrosiaSerializerBuilder(serializer).folder(this.folder).options(this.options);
     }
 
     public AmbrosiaGsonBuilder gson(Gson gson) {
-      return new AmbrosiaGsonBuilder(gson).folder(this.folder);
+      return new AmbrosiaGsonBuilder(gson).folder(this.folder).options(this.options);
     }
 
     public AmbrosiaGsonConstructBuilder gsonBuild() {
-      return new AmbrosiaGsonConstructBuilder().folder(this.folder);
+      return new AmbrosiaGsonConstructBuilder().folder(this.folder).options(this.options);
     }
 
     public SELF folder(File folder) {
@@ -67,6 +191,17 @@ public class FileAmbrosia extends Ambrosia<File, FileMap<?, ?>> {
       return this.self();
     }
 
+    /**
+     * Sets the options used by all map views that are created without explicit options.
+     *
+     * @param options The default map options.
+     * @return This builder.
+     */
+    public SELF options(FileMapOptions options) {
+      this.options = options;
+      return this.self();
+    }
+
     public FileAmbrosia build() {
       if (this.serializer == null) {
         throw new IllegalStateException("Serializer is not set.");
@@ -74,7 +209,7 @@ public class FileAmbrosia extends Ambrosia<File, FileMap<?, ?>> {
       if (this.folder == null) {
         throw new IllegalStateException("Folder is not set.");
       }
-      return new FileAmbrosia(this.folder, this.serializer);
+      return new FileAmbrosia(this.folder, this.serializer, this.options);
     }
 
   }
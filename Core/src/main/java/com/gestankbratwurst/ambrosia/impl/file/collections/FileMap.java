@@ -1,137 +1,505 @@
 package com.gestankbratwurst.ambrosia.impl.file.collections;
 
+import com.gestankbratwurst.ambrosia.impl.file.format.ValueCodec;
+import com.gestankbratwurst.ambrosia.impl.file.index.ExpiryIndex;
+import com.gestankbratwurst.ambrosia.impl.file.index.PropertyIndex;
+import com.gestankbratwurst.ambrosia.impl.file.index.PropertyIndexes;
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileKeyCodec;
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
 import com.gestankbratwurst.ambrosia.impl.file.serializer.StringSerializer;
+import com.gestankbratwurst.ambrosia.impl.file.storage.AsyncFileWriter;
+import com.gestankbratwurst.ambrosia.impl.file.storage.FileStorage;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.UUID;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
-public class FileMap<K, V> implements Map<K, V> {
+/**
+ * A map that stores every value as json in a {@link FileStorage}, by default one file per key.
+ * All keys are held in memory, and every key is guarded by a striped read write lock.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class FileMap<K, V> implements Map<K, V>, AutoCloseable {
 
-  private static final String jsonExtension = ".json";
-
-  private final File folder;
+  private final FileStorage<K> storage;
   private final StringSerializer serializer;
+  private final ValueCodec valueCodec;
   private final Class<K> keyType;
   private final Class<V> valueType;
+  private final Executor loadExecutor;
+  private final int loadBatchSize;
+  private final PropertyIndexes<K> indexes;
+  private final KeyLocks locks;
+  private final AsyncFileWriter asyncWriter;
+  private final Map<K, PendingWrite> pendingWrites;
+  private final Set<CompletableFuture<Void>> inFlightWrites;
+  private final ExpiryIndex<K> expiry;
+  private final Duration expirySweepInterval;
+  private final int expirySweepBatchSize;
+  private ScheduledFuture<?> expirySweep;
+  private volatile boolean closed;
 
-  public FileMap(File folder, StringSerializer serializer, Class<K> keyType, Class<V> valueType) {
-    this.folder = folder;
+  public FileMap(FileStorage<K> storage, StringSerializer serializer, Class<K> keyType, Class<V> valueType, FileMapOptions options) {
+    this.storage = storage;
     this.serializer = serializer;
+    this.valueCodec = new ValueCodec(serializer, options);
     this.keyType = keyType;
     this.valueType = valueType;
+    this.loadExecutor = options.getLoadExecutor() != null ? options.getLoadExecutor() : DefaultLoadExecutor.executor;
+    this.loadBatchSize = options.getLoadBatchSize();
+    this.locks = new KeyLocks(options.getLockStripes());
+    this.asyncWriter = options.getAsyncWriter() != null ? options.getAsyncWriter() : DefaultAsyncWriter.writer;
+    this.pendingWrites = new ConcurrentHashMap<>();
+    this.inFlightWrites = ConcurrentHashMap.newKeySet();
+    FileKeyCodec<K> keyCodec = new FileKeyCodec<>(keyType, serializer);
+    this.indexes = new PropertyIndexes<>(storage.getFolder(), keyCodec);
+    this.expiry = new ExpiryIndex<>(storage.getFolder(), keyCodec, options);
+    this.expirySweepInterval = options.getExpirySweepInterval();
+    this.expirySweepBatchSize = options.getExpirySweepBatchSize();
+    if (!this.expiry.isEmpty()) {
+      this.startExpirySweep();
+    }
+    options.getIndexes().forEach(this::createIndex);
   }
 
-  private File getFile(K key) {
-    String serializedKey = this.serializeKey(key);
-    return new File(this.folder, serializedKey + jsonExtension);
-  }
-
-  private K keyFromFileName(String fileName) {
-    fileName = fileName.substring(0, fileName.length() - jsonExtension.length());
-
-    if (keyType.isPrimitive()) {
-      if (keyType == int.class) {
-        return keyType.cast(Integer.parseInt(fileName));
-      } else if (keyType == long.class) {
-        return keyType.cast(Long.parseLong(fileName));
-      } else if (keyType == double.class) {
-        return keyType.cast(Double.parseDouble(fileName));
-      } else if (keyType == float.class) {
-        return keyType.cast(Float.parseFloat(fileName));
-      } else if (keyType == short.class) {
-        return keyType.cast(Short.parseShort(fileName));
-      } else if (keyType == byte.class) {
-        return keyType.cast(Byte.parseByte(fileName));
-      } else if (keyType == char.class) {
-        return keyType.cast(fileName.charAt(0));
-      } else if (keyType == boolean.class) {
-        return keyType.cast(Boolean.parseBoolean(fileName));
-      } else {
-        throw new IllegalArgumentException("Unknown primitive type: " + keyType);
-      }
+  public FileMap(FileStorage<K> storage, StringSerializer serializer, Class<K> keyType, Class<V> valueType) {
+    this(storage, serializer, keyType, valueType, FileMapOptions.defaults());
+  }
+
+  public FileMap(File folder, StringSerializer serializer, Class<K> keyType, Class<V> valueType, FileMapOptions options) {
+    this(FileStorage.open(folder.toPath(), new FileKeyCodec<>(keyType, serializer), options), serializer, keyType, valueType, options);
+  }
+
+  public FileMap(File folder, StringSerializer serializer, Class<K> keyType, Class<V> valueType) {
+    this(folder, serializer, keyType, valueType, FileMapOptions.defaults());
+  }
+
+  /**
+   * Shared pool for bulk loads of maps without their own executor. Only created when first needed.
+   */
+  private static final class DefaultLoadExecutor {
+
+    private static final ExecutorService executor = createExecutor();
+
+    private static ExecutorService createExecutor() {
+      AtomicInteger counter = new AtomicInteger();
+      return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+        Thread thread = new Thread(runnable, "Ambrosia-FileLoader-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
     }
+  }
+
+  /**
+   * Shared writer for async writes of maps without their own writer. Only created when first needed.
+   */
+  private static final class DefaultAsyncWriter {
+
+    private static final AsyncFileWriter writer = new AsyncFileWriter(2, Duration.ofMillis(10));
+  }
+
+  /**
+   * Shared thread that deletes expired entries of all maps. Only created when first needed.
+   */
+  private static final class ExpirySweeper {
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "Ambrosia-FileExpiry");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * A value that is serialized, but not written yet.
+   *
+   * @param value  The serialized value or null for a removal.
+   * @param tree   The json tree for the property indexes, if the map had any.
+   * @param future Completed once the write is durable.
+   */
+  private record PendingWrite(byte[] value, JsonElement tree, CompletableFuture<Void> future) {
+  }
+
+  public FileStorage<K> getStorage() {
+    return this.storage;
+  }
+
+  public Class<K> getKeyType() {
+    return this.keyType;
+  }
 
-    if (keyType == String.class) {
-      return keyType.cast(fileName);
-    } else if (keyType == UUID.class) {
-      return keyType.cast(UUID.fromString(fileName));
+  public Class<V> getValueType() {
+    return this.valueType;
+  }
+
+  public boolean isClosed() {
+    return this.closed;
+  }
+
+  /**
+   * Closes the underlying storage, flushes pending writes and saves the property indexes.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+      if (this.expirySweep != null) {
+        this.expirySweep.cancel(false);
+      }
     }
+    this.awaitAsyncWrites();
+    this.storage.close();
+    this.indexes.save(this.storage::size);
+    this.expiry.close();
+  }
+
+  /**
+   * Forces all pending writes to the storage device and saves the property indexes.
+   * Waits for async writes that were queued before.
+   */
+  public void flush() {
+    this.awaitAsyncWrites();
+    this.storage.flush();
+    this.indexes.save(this.storage::size);
+    this.expiry.flush();
+  }
 
-    String json = new String(Base64.getDecoder().decode(fileName));
-    return this.deserializeKey(json);
+  private void awaitAsyncWrites() {
+    CompletableFuture.allOf(this.inFlightWrites.toArray(CompletableFuture[]::new)).exceptionally(ignored -> null).join();
   }
 
-  private String readValue(File file) {
+  /**
+   * Links the stored files into an empty folder, as they are at this point in time.
+   * Writes to this map wait while the files are linked, which is quick as nothing is copied.
+   * Async writes that are still queued are not included.
+   *
+   * @param target The folder to link the files into.
+   */
+  public void snapshot(Path target) {
+    this.locks.lockAll();
     try {
-      return Files.readString(file.toPath());
+      this.storage.snapshot(target);
+      this.indexes.snapshot(target);
+      this.expiry.snapshot(target);
     } catch (IOException e) {
       throw new RuntimeException(e);
+    } finally {
+      this.locks.unlockAll();
     }
   }
 
-  private void writeValue(File file, String json) {
-    Path path = file.toPath();
+  /**
+   * Creates an index on a property of the values. It is loaded from its sidecar file if that is still valid,
+   * otherwise it is built from all stored values. Writes wait until the index is built.
+   *
+   * @param property The property to index. Nested properties are separated by dots.
+   * @param type     The type of the index.
+   */
+  public void createIndex(String property, FileMapOptions.IndexType type) {
+    this.indexes.add(property, type, this.storage.keys(), this::buildIndex);
+  }
+
+  /**
+   * Reads without key locks, as writers wait for the index lock while holding their key lock.
+   * While an index is created no write is in progress. Scans for queries run alongside writes, so they see every
+   * value either before or after a concurrent write.
+   */
+  private void buildIndex(PropertyIndex<K> index) {
+    this.forEachParallel(key -> this.storage.read(key, this::deserializeValue), (key, value) -> index.put(key, this.toJsonTree(value)));
+  }
+
+  private JsonElement toJsonTree(V value) {
+    return JsonParser.parseString(this.serializer.serialize(value));
+  }
+
+  /**
+   * Reads a value, preferring a pending async write of the key.
+   */
+  private V readValueFromKey(K key) {
+    Lock lock = this.locks.get(key).readLock();
+    lock.lock();
     try {
-      if (!file.exists()) {
-        Files.createFile(path);
+      PendingWrite pendingWrite = this.pendingWrites.get(key);
+      if (pendingWrite != null) {
+        return pendingWrite.value() == null ? null : this.deserializeValue(ByteBuffer.wrap(pendingWrite.value()));
       }
-      Files.writeString(path, json);
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+      if (this.expiry.isExpired(key)) {
+        return null;
+      }
+      return this.storage.read(key, this::deserializeValue);
+    } finally {
+      lock.unlock();
     }
   }
 
-  private V readValueFromKey(K key) {
-    File file = this.getFile(key);
-    if (!file.exists()) {
-      return null;
+  /**
+   * Reads a stored value, ignoring pending async writes.
+   */
+  private V readStoredValue(K key) {
+    Lock lock = this.locks.get(key).readLock();
+    lock.lock();
+    try {
+      if (this.expiry.isExpired(key)) {
+        return null;
+      }
+      return this.storage.read(key, this::deserializeValue);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean containsStoredOrPending(K key) {
+    PendingWrite pendingWrite = this.pendingWrites.get(key);
+    if (pendingWrite != null) {
+      return pendingWrite.value() != null;
     }
-    String json = this.readValue(file);
-    return this.deserializeValue(json);
+    return this.storage.contains(key) && !this.expiry.isExpired(key);
   }
 
-  private String serializeKey(K key) {
+  /**
+   * Parses the value straight from the stored bytes, which may be memory mapped.
+   */
+  private V deserializeValue(ByteBuffer serializedValue) {
+    return this.valueCodec.read(serializedValue, this.valueType);
+  }
+
+  /**
+   * Streams the serialized value into the storage without building a string first.
+   * Indexed maps serialize the value once more, to extract the indexed properties.
+   * Must be called while holding the write lock of the key.
+   */
+  private void writeValue(K key, V value) {
+    this.writeValue(key, value, 0);
+  }
+
+  /**
+   * The expiry is written before the value, so a crash in between can shorten the life of the old value,
+   * but never make the new value live forever.
+   */
+  private void writeValue(K key, V value, long expiresAt) {
+    this.replacePendingWrite(key, () -> {
+      if (expiresAt > 0) {
+        this.expiry.set(key, expiresAt);
+        this.startExpirySweep();
+      } else {
+        this.expiry.remove(key);
+      }
+      JsonElement tree = this.indexes.isEmpty() ? null : this.toJsonTree(value);
+      this.storeValue(key, outputStream -> this.valueCodec.write(value, outputStream), tree);
+    });
+  }
 
-    if (keyType.isPrimitive()) {
-      return String.valueOf(key);
-    } else if (keyType == String.class) {
-      return (String) key;
-    } else if (keyType == UUID.class) {
-      return key.toString();
+  private void storeValue(K key, FileStorage.ValueWriter writer, JsonElement tree) {
+    if (this.indexes.isEmpty()) {
+      this.storage.write(key, writer);
+      return;
+    }
+    this.indexes.modify(() -> {
+      this.storage.write(key, writer);
+      this.indexes.update(key, tree);
+    });
+  }
+
+  /**
+   * Must be called while holding the write lock of the key.
+   */
+  private void deleteValue(K key) {
+    this.replacePendingWrite(key, () -> this.eraseValue(key));
+  }
+
+  private void eraseValue(K key) {
+    if (this.indexes.isEmpty()) {
+      this.storage.delete(key);
+    } else {
+      this.indexes.modify(() -> {
+        this.storage.delete(key);
+        this.indexes.remove(key);
+      });
+    }
+    this.expiry.remove(key);
+  }
+
+  private synchronized void startExpirySweep() {
+    if (this.expirySweep != null) {
+      return;
+    }
+    long interval = this.expirySweepInterval.toMillis();
+    this.expirySweep = ExpirySweeper.executor.scheduleWithFixedDelay(this::sweepExpired, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Deletes up to a batch of expired entries. Queued async writes of a key are kept, as they replace the expired value.
+   */
+  private void sweepExpired() {
+    try {
+      for (K key : this.expiry.getExpired(this.expirySweepBatchSize)) {
+        Lock lock = this.locks.get(key).writeLock();
+        lock.lock();
+        try {
+          if (this.expiry.isExpired(key)) {
+            this.eraseValue(key);
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+    } catch (RuntimeException e) {
+      // Keep the schedule alive, but don't swallow the failure.
+      Thread thread = Thread.currentThread();
+      thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+  }
+
+  /**
+   * Runs a synchronous write that replaces a pending async write of the key.
+   * The replaced write completes once the synchronous write is done, or fails with it.
+   */
+  private void replacePendingWrite(K key, Runnable write) {
+    PendingWrite replaced = this.pendingWrites.remove(key);
+    try {
+      write.run();
+    } catch (RuntimeException e) {
+      if (replaced != null) {
+        replaced.future().completeExceptionally(e);
+      }
+      throw e;
     }
+    if (replaced != null) {
+      replaced.future().complete(null);
+    }
+  }
 
-    String json = this.serializer.serialize(key);
-    return Base64.getEncoder().encodeToString(json.getBytes());
+  /**
+   * Queues a value to be written by the async writer. The value is serialized right away and reads see it immediately,
+   * while key queries like {@link #size()} see it once it is written.
+   *
+   * @param key   The key to put the value under.
+   * @param value The value to put.
+   * @return A future that completes once the value is durable.
+   */
+  public CompletableFuture<Void> putAsync(K key, V value) {
+    ByteArrayOutputStream serializedValue = new ByteArrayOutputStream();
+    try {
+      this.valueCodec.write(value, serializedValue);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    JsonElement tree = this.indexes.isEmpty() ? null : this.toJsonTree(value);
+    return this.queueWrite(key, new PendingWrite(serializedValue.toByteArray(), tree, new CompletableFuture<>()));
   }
 
-  private K deserializeKey(String serializedKey) {
-    return this.serializer.deserialize(serializedKey, this.keyType);
+  /**
+   * Queues a removal to be written by the async writer and returns right away.
+   * Reads see the removal immediately.
+   *
+   * @param key The key to remove.
+   * @return A future that completes once the removal is durable.
+   */
+  public CompletableFuture<Void> removeAsync(K key) {
+    return this.queueWrite(key, new PendingWrite(null, null, new CompletableFuture<>()));
   }
 
-  private V deserializeValue(String serializedValue) {
-    return this.serializer.deserialize(serializedValue, valueType);
+  private CompletableFuture<Void> queueWrite(K key, PendingWrite pendingWrite) {
+    CompletableFuture<Void> future = pendingWrite.future();
+    // No key lock needed, a write being applied only removes itself.
+    PendingWrite replaced = this.pendingWrites.put(key, pendingWrite);
+    if (replaced != null) {
+      // The replaced write is skipped, so it is durable once its replacement is.
+      future.whenComplete((ignored, error) -> {
+        if (error != null) {
+          replaced.future().completeExceptionally(error);
+        } else {
+          replaced.future().complete(null);
+        }
+      });
+    }
+    this.inFlightWrites.add(future);
+    future.whenComplete((ignored, error) -> this.inFlightWrites.remove(future));
+    this.asyncWriter.submit(this.storage, key, () -> this.applyPendingWrite(key, pendingWrite), future);
+    return future;
   }
 
-  private String serializeValue(V value) {
-    return this.serializer.serialize(value);
+  /**
+   * Writes a pending write on an I/O thread, unless it was replaced in the meantime.
+   */
+  private boolean applyPendingWrite(K key, PendingWrite pendingWrite) {
+    Lock lock = this.locks.get(key).writeLock();
+    lock.lock();
+    try {
+      if (this.pendingWrites.get(key) != pendingWrite) {
+        return false;
+      }
+      try {
+        byte[] value = pendingWrite.value();
+        if (value == null) {
+          this.eraseValue(key);
+        } else {
+          JsonElement tree = pendingWrite.tree();
+          if (tree == null && !this.indexes.isEmpty()) {
+            tree = this.toJsonTree(this.deserializeValue(ByteBuffer.wrap(value)));
+          }
+          this.expiry.remove(key);
+          this.storeValue(key, outputStream -> outputStream.write(value), tree);
+        }
+      } finally {
+        this.pendingWrites.remove(key, pendingWrite);
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
   }
 
+  /**
+   * Counts the stored keys. Expired values are not counted, even before the sweep deletes them.
+   *
+   * @return The amount of keys.
+   */
   @Override
   public int size() {
-    File[] files = this.folder.listFiles();
-    return files == null ? 0 : files.length;
+    return Math.max(0, this.storage.size() - this.expiry.countExpired(this.storage::contains));
   }
 
   @Override
@@ -141,28 +509,28 @@ public class FileMap<K, V> implements Map<K, V> {
 
   @Override
   public boolean containsKey(Object key) {
-    if (!this.keyType.isInstance(key)) {
-      return false;
-    }
-    return getFile(this.keyType.cast(key)).exists();
+    return this.keyType.isInstance(key) && this.containsStoredOrPending(this.keyType.cast(key));
   }
 
   @Override
   public boolean containsValue(Object value) {
-    File[] files = this.folder.listFiles();
-    if (files == null) {
-      return false;
-    }
-    for (File file : files) {
-      String json = readValue(file);
-      V deserialized = this.deserializeValue(json);
-      if (deserialized.equals(value)) {
+    for (K key : this.liveKeys()) {
+      V deserialized = this.readValueFromKey(key);
+      if (deserialized != null && deserialized.equals(value)) {
         return true;
       }
     }
     return false;
   }
 
+  /**
+   * Reads a value from the storage.
+   * The folder storage reads the file even if the key is not indexed, so files added by other processes are found
+   * and the index is corrected on the fly.
+   *
+   * @param key The key to query for.
+   * @return The value associated with the key or null if the key does not exist.
+   */
   @Override
   public V get(Object key) {
     if (!this.keyType.isInstance(key)) {
@@ -171,28 +539,81 @@ public class FileMap<K, V> implements Map<K, V> {
     return this.readValueFromKey(this.keyType.cast(key));
   }
 
+  /**
+   * Puts a value into the map and returns the value it replaced.
+   * Use {@link #fastPut(Object, Object)} if the old value is not needed, as it skips reading the old value.
+   *
+   * @param key   The key to put the value under.
+   * @param value The value to put.
+   * @return The old value associated with the key or null if the key did not exist.
+   */
   @Nullable
   @Override
   public V put(K key, V value) {
-    File file = this.getFile(key);
-    V replaced = null;
-    if (file.exists()) {
-      replaced = this.readValueFromKey(key);
-      if (!file.delete()) {
-        throw new IllegalStateException("Failed to delete file: " + file);
-      }
+    Lock lock = this.locks.get(key).writeLock();
+    lock.lock();
+    try {
+      V replaced = this.containsStoredOrPending(key) ? this.readValueFromKey(key) : null;
+      this.writeValue(key, value);
+      return replaced;
+    } finally {
+      lock.unlock();
     }
+  }
 
-    String json = this.serializeValue(value);
-    this.writeValue(file, json);
+  public void fastPut(K key, V value) {
+    Lock lock = this.locks.get(key).writeLock();
+    lock.lock();
+    try {
+      this.writeValue(key, value);
+    } finally {
+      lock.unlock();
+    }
+  }
 
-    return replaced;
+  /**
+   * Puts a value that expires after a time to live and returns the value it replaced.
+   * Expired values are absent right away and deleted by a background sweep.
+   * Writing the key again without a time to live makes it permanent.
+   *
+   * @param key        The key to put the value under.
+   * @param value      The value to put.
+   * @param timeToLive The time after which the value expires.
+   * @return The old value associated with the key or null if the key did not exist.
+   */
+  @Nullable
+  public V put(K key, V value, Duration timeToLive) {
+    Lock lock = this.locks.get(key).writeLock();
+    lock.lock();
+    try {
+      V replaced = this.containsStoredOrPending(key) ? this.readValueFromKey(key) : null;
+      this.writeValue(key, value, System.currentTimeMillis() + timeToLive.toMillis());
+      return replaced;
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public void fastPut(K key, V value) {
-    File file = this.getFile(key);
-    String json = this.serializeValue(value);
-    this.writeValue(file, json);
+  public void fastPut(K key, V value, Duration timeToLive) {
+    Lock lock = this.locks.get(key).writeLock();
+    lock.lock();
+    try {
+      this.writeValue(key, value, System.currentTimeMillis() + timeToLive.toMillis());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the remaining time to live of a key.
+   *
+   * @param key The key.
+   * @return The remaining time to live or null if the key doesn't expire.
+   */
+  @Nullable
+  public Duration getTimeToLive(K key) {
+    Long expiresAt = this.expiry.getExpiryTime(key);
+    return expiresAt == null ? null : Duration.ofMillis(Math.max(0, expiresAt - System.currentTimeMillis()));
   }
 
   @Override
@@ -202,93 +623,483 @@ public class FileMap<K, V> implements Map<K, V> {
     }
 
     K typedKey = this.keyType.cast(key);
-    File file = this.getFile(typedKey);
+    Lock lock = this.locks.get(typedKey).writeLock();
+    lock.lock();
+    try {
+      V removed = this.readValueFromKey(typedKey);
+      if (removed == null) {
+        return null;
+      }
 
-    if (!file.exists()) {
-      return null;
+      this.deleteValue(typedKey);
+      return removed;
+    } finally {
+      lock.unlock();
     }
+  }
 
-    V removed = this.readValueFromKey(typedKey);
+  public void fastRemove(K key) {
+    Lock lock = this.locks.get(key).writeLock();
+    lock.lock();
+    try {
+      this.deleteValue(key);
+    } finally {
+      lock.unlock();
+    }
+  }
 
-    if (!file.delete()) {
-      throw new IllegalStateException("Failed to delete file: " + file);
+  /**
+   * Puts a value if the key has no value yet, atomically for the key.
+   *
+   * @param key   The key to put the value under.
+   * @param value The value to put.
+   * @return The existing value or null if the value was put.
+   */
+  @Nullable
+  @Override
+  public V putIfAbsent(K key, V value) {
+    Lock lock = this.locks.get(key).writeLock();
+    lock.lock();
+    try {
+      V existing = this.readValueFromKey(key);
+      if (existing == null) {
+        this.writeValue(key, value);
+      }
+      return existing;
+    } finally {
+      lock.unlock();
     }
+  }
 
-    return removed;
+  /**
+   * Computes a new value from the current one, atomically for the key.
+   * Only the lock stripe of the key is held while the function runs, so it must not access other keys of this map.
+   *
+   * @param key               The key to compute the value of.
+   * @param remappingFunction Computes the new value from the key and the current value or null. Returning null removes the value.
+   * @return The new value or null if there is none.
+   */
+  @Override
+  public V compute(K key, @NotNull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    Lock lock = this.locks.get(key).writeLock();
+    lock.lock();
+    try {
+      V oldValue = this.readValueFromKey(key);
+      V newValue = remappingFunction.apply(key, oldValue);
+      if (newValue != null) {
+        this.writeValue(key, newValue);
+      } else if (oldValue != null) {
+        this.deleteValue(key);
+      }
+      return newValue;
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public void fastRemove(K key) {
-    File file = this.getFile(key);
-    if (file.exists()) {
-      if (!file.delete()) {
-        throw new IllegalStateException("Failed to delete file: " + file);
+  /**
+   * Computes a value if the key has none yet, atomically for the key.
+   * Present values are returned without writing them again, so they keep their time to live.
+   *
+   * @param key             The key to compute the value of.
+   * @param mappingFunction Computes the value from the key. Returning null puts nothing.
+   * @return The present or computed value or null if there is none.
+   */
+  @Override
+  public V computeIfAbsent(K key, @NotNull Function<? super K, ? extends V> mappingFunction) {
+    Lock lock = this.locks.get(key).writeLock();
+    lock.lock();
+    try {
+      V existing = this.readValueFromKey(key);
+      if (existing != null) {
+        return existing;
+      }
+      V value = mappingFunction.apply(key);
+      if (value != null) {
+        this.writeValue(key, value);
       }
+      return value;
+    } finally {
+      lock.unlock();
     }
   }
 
+  @Override
+  public V computeIfPresent(K key, @NotNull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    return this.compute(key, (ignored, oldValue) -> oldValue != null ? remappingFunction.apply(key, oldValue) : null);
+  }
+
+  /**
+   * Merges a value into the current one, atomically for the key.
+   *
+   * @param key               The key to merge the value into.
+   * @param value             The value to put if the key has no value.
+   * @param remappingFunction Merges the current and the given value. Returning null removes the value.
+   * @return The new value or null if there is none.
+   */
+  @Override
+  public V merge(K key, @NotNull V value, @NotNull BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    return this.compute(key, (ignored, oldValue) -> oldValue != null ? remappingFunction.apply(oldValue, value) : value);
+  }
+
   @Override
   public void putAll(@NotNull Map<? extends K, ? extends V> map) {
-    map.forEach(this::put);
+    map.forEach(this::fastPut);
   }
 
   @Override
   public void clear() {
-    File[] files = this.folder.listFiles();
-    if (files == null) {
-      return;
+    this.locks.lockAll();
+    try {
+      List<PendingWrite> replaced = new ArrayList<>(this.pendingWrites.values());
+      this.pendingWrites.clear();
+      try {
+        this.expiry.clear();
+        this.indexes.modify(() -> {
+          this.storage.clear();
+          this.indexes.clear();
+        });
+      } catch (RuntimeException e) {
+        replaced.forEach(pendingWrite -> pendingWrite.future().completeExceptionally(e));
+        throw e;
+      }
+      replaced.forEach(pendingWrite -> pendingWrite.future().complete(null));
+    } finally {
+      this.locks.unlockAll();
+    }
+  }
+
+  /**
+   * Finds all values whose property equals a value. Indexed properties only read the matching values,
+   * other properties are scanned by parsing every value.
+   *
+   * @param property The property to compare. Nested properties are separated by dots.
+   * @param value    The value to look for.
+   * @param <E>      The type of the property.
+   * @return All matching values.
+   */
+  @NotNull
+  public <E> List<V> findByProperty(@NotNull String property, E value) {
+    Map<K, PendingWrite> pending = this.snapshotPendingWrites();
+    PropertyIndex<K> index = this.indexes.get(property);
+    if (index == null) {
+      index = this.scanIndex(property, FileMapOptions.IndexType.EQUALITY);
+    }
+    if (pending.isEmpty()) {
+      return this.readValues(index.find(value), pending);
+    }
+    PropertyIndex<K> changes = this.indexPendingWrites(pending, property, FileMapOptions.IndexType.EQUALITY);
+    return this.readValues(index.find(value, changes, pending.keySet()), pending);
+  }
+
+  /**
+   * Finds all values whose property lies within a range, sorted by the property.
+   * Answered by a sorted index if there is one, otherwise by parsing every value.
+   *
+   * @param property The property to compare. Nested properties are separated by dots.
+   * @param min      The inclusive lower bound or null for no bound.
+   * @param max      The inclusive upper bound or null for no bound.
+   * @param <E>      The type of the property.
+   * @return All matching values in ascending order.
+   */
+  @NotNull
+  public <E> List<V> findByPropertyRange(@NotNull String property, @Nullable E min, @Nullable E max) {
+    Map<K, PendingWrite> pending = this.snapshotPendingWrites();
+    PropertyIndex<K> index = this.sortedIndex(property);
+    if (pending.isEmpty()) {
+      return this.readValues(index.range(min, max), pending);
     }
-    for (File file : files) {
-      if (!file.delete()) {
-        throw new IllegalStateException("Failed to delete file: " + file);
+    PropertyIndex<K> changes = this.indexPendingWrites(pending, property, FileMapOptions.IndexType.SORTED);
+    return this.readValues(index.range(min, max, changes, pending.keySet()), pending);
+  }
+
+  /**
+   * Queries the top n values sorted by a property. The values are eagerly loaded into a list.
+   * Answered by a sorted index if there is one, otherwise by parsing every value.
+   *
+   * @param property  The property to sort by. Nested properties are separated by dots.
+   * @param limit     The maximum amount of values.
+   * @param ascending True to start with the lowest value.
+   * @return The top values.
+   */
+  @NotNull
+  public List<V> queryToplist(@NotNull String property, int limit, boolean ascending) {
+    Map<K, PendingWrite> pending = this.snapshotPendingWrites();
+    PropertyIndex<K> index = this.sortedIndex(property);
+    if (pending.isEmpty()) {
+      return this.readValues(index.top(limit, ascending), pending);
+    }
+    PropertyIndex<K> changes = this.indexPendingWrites(pending, property, FileMapOptions.IndexType.SORTED);
+    return this.readValues(index.top(limit, ascending, changes, pending.keySet()), pending);
+  }
+
+  private PropertyIndex<K> sortedIndex(String property) {
+    PropertyIndex<K> index = this.indexes.get(property);
+    if (index != null && index.getType() == FileMapOptions.IndexType.SORTED) {
+      return index;
+    }
+    return this.scanIndex(property, FileMapOptions.IndexType.SORTED);
+  }
+
+  /**
+   * Builds a throwaway index for properties that are not indexed.
+   */
+  private PropertyIndex<K> scanIndex(String property, FileMapOptions.IndexType type) {
+    PropertyIndex<K> index = new PropertyIndex<>(property, type);
+    this.buildIndex(index);
+    return index;
+  }
+
+  /**
+   * Copies the async writes that are not written yet. Taken before a query looks at an index, so a write that is
+   * applied in the meantime is in the snapshot, and queries see pending values like reads do.
+   */
+  private Map<K, PendingWrite> snapshotPendingWrites() {
+    return this.pendingWrites.isEmpty() ? Map.of() : new HashMap<>(this.pendingWrites);
+  }
+
+  private PropertyIndex<K> indexPendingWrites(Map<K, PendingWrite> pending, String property, FileMapOptions.IndexType type) {
+    PropertyIndex<K> index = new PropertyIndex<>(property, type);
+    pending.forEach((key, pendingWrite) -> {
+      byte[] value = pendingWrite.value();
+      if (value != null) {
+        JsonElement tree = pendingWrite.tree();
+        index.put(key, tree != null ? tree : this.toJsonTree(this.deserializeValue(ByteBuffer.wrap(value))));
+      }
+    });
+    return index;
+  }
+
+  /**
+   * Reads the values a query matched: pending values from the snapshot, all others from the storage,
+   * so every value is the one the query looked at.
+   */
+  private List<V> readValues(Collection<K> keys, Map<K, PendingWrite> pending) {
+    List<V> values = new ArrayList<>(keys.size());
+    for (K key : keys) {
+      PendingWrite pendingWrite = pending.get(key);
+      V value;
+      if (pendingWrite != null) {
+        value = pendingWrite.value() == null ? null : this.deserializeValue(ByteBuffer.wrap(pendingWrite.value()));
+      } else {
+        value = this.readStoredValue(key);
+      }
+      if (value != null) {
+        values.add(value);
       }
     }
+    return values;
   }
 
+  /**
+   * Creates a snapshot of all keys from the in-memory index, without expired keys.
+   *
+   * @return A set of all keys in the map.
+   */
   @NotNull
   @Override
   public Set<K> keySet() {
-    File[] files = this.folder.listFiles();
-    if (files == null) {
-      return Set.of();
-    }
-    Set<K> keys = new HashSet<>();
-    for (File file : files) {
-      keys.add(this.keyFromFileName(file.getName()));
+    return new HashSet<>(this.liveKeys());
+  }
+
+  /**
+   * Creates a lazy stream of all values. Values are only read and parsed when the stream reaches them,
+   * and a parallel stream splits the work evenly across its threads.
+   *
+   * @return A stream of all values.
+   */
+  public Stream<V> valueStream() {
+    return this.keyStream().map(this::readValueFromKey).filter(Objects::nonNull);
+  }
+
+  /**
+   * Creates a lazy stream of all entries. Values are only read and parsed when the stream reaches them,
+   * and a parallel stream splits the work evenly across its threads.
+   *
+   * @return A stream of all entries.
+   */
+  public Stream<Entry<K, V>> entryStream() {
+    return this.keyStream().map(key -> {
+      V value = this.readValueFromKey(key);
+      return value == null ? null : Map.entry(key, value);
+    }).filter(Objects::nonNull);
+  }
+
+  /**
+   * Streams a snapshot of the key index, which is sized and splits evenly for parallel streams.
+   */
+  private Stream<K> keyStream() {
+    return this.liveKeys().stream();
+  }
+
+  /**
+   * Copies the stored keys that are not expired.
+   */
+  private List<K> liveKeys() {
+    List<K> keys = new ArrayList<>(this.storage.size());
+    for (K key : this.storage.keys()) {
+      if (!this.expiry.isExpired(key)) {
+        keys.add(key);
+      }
     }
     return keys;
   }
 
+  /**
+   * Reads and parses all values on the load executor, a batch of keys per task.
+   * The consumer is called as soon as a value is parsed, possibly from multiple threads at once.
+   *
+   * @param consumer Consumes every entry.
+   * @return A future that completes once all entries are consumed.
+   */
+  public CompletableFuture<Void> forEachAsync(BiConsumer<? super K, ? super V> consumer) {
+    return this.forEachAsync(this::readValueFromKey, consumer);
+  }
+
+  private CompletableFuture<Void> forEachAsync(Function<K, V> reader, BiConsumer<? super K, ? super V> consumer) {
+    List<K> keys = this.liveKeys();
+    List<CompletableFuture<Void>> batches = new ArrayList<>();
+    for (int from = 0; from < keys.size(); from += this.loadBatchSize) {
+      List<K> batch = keys.subList(from, Math.min(from + this.loadBatchSize, keys.size()));
+      batches.add(CompletableFuture.runAsync(() -> {
+        for (K key : batch) {
+          V value = reader.apply(key);
+          if (value != null) {
+            consumer.accept(key, value);
+          }
+        }
+      }, this.loadExecutor));
+    }
+    return CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new));
+  }
+
+  /**
+   * Reads all values on the load executor and on the calling thread, and returns once all of them are consumed.
+   * The calling thread claims every batch that no task has started yet, so it only waits for batches that are
+   * being read. That way it can't deadlock, even when it is a thread of the load executor itself.
+   */
+  private void forEachParallel(Function<K, V> reader, BiConsumer<? super K, ? super V> consumer) {
+    List<K> keys = this.liveKeys();
+    int batches = (keys.size() + this.loadBatchSize - 1) / this.loadBatchSize;
+    AtomicInteger nextBatch = new AtomicInteger();
+    CountDownLatch finishedBatches = new CountDownLatch(batches);
+    AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    Runnable worker = () -> {
+      int batch;
+      while ((batch = nextBatch.getAndIncrement()) < batches) {
+        try {
+          for (K key : keys.subList(batch * this.loadBatchSize, Math.min((batch + 1) * this.loadBatchSize, keys.size()))) {
+            V value = reader.apply(key);
+            if (value != null) {
+              consumer.accept(key, value);
+            }
+          }
+        } catch (RuntimeException e) {
+          failure.compareAndSet(null, e);
+        } finally {
+          finishedBatches.countDown();
+        }
+      }
+    };
+    int helpers = Math.min(batches - 1, Runtime.getRuntime().availableProcessors());
+    for (int i = 0; i < helpers; i++) {
+      try {
+        this.loadExecutor.execute(worker);
+      } catch (RejectedExecutionException e) {
+        // The calling thread reads the rest.
+        break;
+      }
+    }
+    worker.run();
+    try {
+      finishedBatches.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while reading values.", e);
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+  }
+
+  /**
+   * Loads all entries in parallel on the load executor.
+   *
+   * @return A future of a map holding all entries.
+   */
+  public CompletableFuture<Map<K, V>> loadAllAsync() {
+    Map<K, V> entries = new ConcurrentHashMap<>(this.size());
+    return this.forEachAsync(entries::put).thenApply(ignored -> entries);
+  }
+
+  /**
+   * Gets a view of all values, which reads them lazily while iterating.
+   *
+   * @return A collection of all values.
+   */
   @NotNull
   @Override
   public Collection<V> values() {
-    File[] files = this.folder.listFiles();
-    if (files == null) {
-      return Set.of();
-    }
-    List<V> values = new ArrayList<>();
-    for (File file : files) {
-      String json = this.readValue(file);
-      values.add(this.deserializeValue(json));
-    }
-    return values;
+    return new AbstractCollection<>() {
+      @Override
+      public Iterator<V> iterator() {
+        return FileMap.this.valueStream().iterator();
+      }
+
+      @Override
+      public Spliterator<V> spliterator() {
+        return FileMap.this.valueStream().spliterator();
+      }
+
+      @Override
+      public Stream<V> stream() {
+        return FileMap.this.valueStream();
+      }
+
+      @Override
+      public int size() {
+        return FileMap.this.size();
+      }
+    };
   }
 
+  /**
+   * Gets a view of all entries, which reads the values lazily while iterating.
+   *
+   * @return A set of all entries.
+   */
   @NotNull
   @Override
   public Set<Entry<K, V>> entrySet() {
-    File[] files = this.folder.listFiles();
-    if (files == null) {
-      return Set.of();
-    }
-    Set<Entry<K, V>> entries = new HashSet<>();
-    for (File file : files) {
-      K key = this.keyFromFileName(file.getName());
-      V value = this.readValueFromKey(key);
-      if (value == null) {
-        continue;
+    return new AbstractSet<>() {
+      @Override
+      public Iterator<Entry<K, V>> iterator() {
+        return FileMap.this.entryStream().iterator();
       }
-      entries.add(Map.entry(key, value));
-    }
-    return entries;
+
+      @Override
+      public Spliterator<Entry<K, V>> spliterator() {
+        return FileMap.this.entryStream().spliterator();
+      }
+
+      @Override
+      public Stream<Entry<K, V>> stream() {
+        return FileMap.this.entryStream();
+      }
+
+      @Override
+      public boolean contains(Object object) {
+        if (!(object instanceof Entry<?, ?> entry)) {
+          return false;
+        }
+        V value = FileMap.this.get(entry.getKey());
+        return value != null && value.equals(entry.getValue());
+      }
+
+      @Override
+      public int size() {
+        return FileMap.this.size();
+      }
+    };
   }
 }
@@ -0,0 +1,43 @@
+package com.gestankbratwurst.ambrosia.impl.file.collections;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A fixed amount of read write locks, shared by all keys with the same hash stripe.
+ * Readers of a key never block each other and keys of different stripes proceed in parallel.
+ */
+final class KeyLocks {
+
+  private final ReadWriteLock[] stripes;
+  private final int mask;
+
+  KeyLocks(int stripes) {
+    int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+    this.stripes = new ReadWriteLock[size];
+    this.mask = size - 1;
+    for (int i = 0; i < size; i++) {
+      this.stripes[i] = new ReentrantReadWriteLock();
+    }
+  }
+
+  ReadWriteLock get(Object key) {
+    int hash = key.hashCode();
+    return this.stripes[(hash ^ (hash >>> 16)) & this.mask];
+  }
+
+  /**
+   * Acquires all write locks, always in the same order.
+   */
+  void lockAll() {
+    for (ReadWriteLock stripe : this.stripes) {
+      stripe.writeLock().lock();
+    }
+  }
+
+  void unlockAll() {
+    for (int i = this.stripes.length - 1; i >= 0; i--) {
+      this.stripes[i].writeLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,437 @@
+package com.gestankbratwurst.ambrosia.impl.file.format;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of json. Every token is a single tag byte, followed by its payload.
+ * Integers are zig-zag varints, doubles are stored as 8 bytes if that is lossless, and every property name
+ * is only written once per value and referenced by its index afterwards.
+ */
+public final class BinaryJson {
+
+  private static final int beginObject = 1;
+  private static final int endObject = 2;
+  private static final int beginArray = 3;
+  private static final int endArray = 4;
+  private static final int name = 5;
+  private static final int nameReference = 6;
+  private static final int string = 7;
+  private static final int trueValue = 8;
+  private static final int falseValue = 9;
+  private static final int nullValue = 10;
+  private static final int integer = 11;
+  private static final int floatingPoint = 12;
+  private static final int rawNumber = 13;
+
+  private BinaryJson() {
+  }
+
+  /**
+   * Encodes json text.
+   *
+   * @param json         The json to encode.
+   * @param outputStream The stream to write the encoded json to.
+   */
+  public static void encode(Reader json, OutputStream outputStream) throws IOException {
+    JsonReader reader = new JsonReader(json);
+    reader.setLenient(true);
+    copy(reader, writer(outputStream));
+  }
+
+  /**
+   * Creates a json writer that encodes straight into the stream, without any json text in between.
+   *
+   * @param outputStream The stream to write the encoded json to. It is not closed by the writer.
+   * @return The writer.
+   */
+  public static JsonWriter writer(OutputStream outputStream) {
+    return new BinaryJsonWriter(outputStream);
+  }
+
+  private static void copy(JsonReader reader, JsonWriter writer) throws IOException {
+    while (true) {
+      switch (reader.peek()) {
+        case BEGIN_OBJECT -> {
+          reader.beginObject();
+          writer.beginObject();
+        }
+        case END_OBJECT -> {
+          reader.endObject();
+          writer.endObject();
+        }
+        case BEGIN_ARRAY -> {
+          reader.beginArray();
+          writer.beginArray();
+        }
+        case END_ARRAY -> {
+          reader.endArray();
+          writer.endArray();
+        }
+        case NAME -> writer.name(reader.nextName());
+        case STRING -> writer.value(reader.nextString());
+        case NUMBER -> writer.jsonValue(reader.nextString());
+        case BOOLEAN -> writer.value(reader.nextBoolean());
+        case NULL -> {
+          reader.nextNull();
+          writer.nullValue();
+        }
+        case END_DOCUMENT -> {
+          writer.flush();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the binary tags. Names are deferred until their value, so null properties can be dropped
+   * like {@link JsonWriter} does when nulls are not serialized.
+   */
+  private static final class BinaryJsonWriter extends JsonWriter {
+
+    private final OutputStream outputStream;
+    private final Map<String, Integer> names;
+    private String deferredName;
+
+    private BinaryJsonWriter(OutputStream outputStream) {
+      super(Writer.nullWriter());
+      this.outputStream = outputStream;
+      this.names = new HashMap<>();
+    }
+
+    private void writeDeferredName() throws IOException {
+      if (this.deferredName == null) {
+        return;
+      }
+      Integer reference = this.names.get(this.deferredName);
+      if (reference != null) {
+        this.outputStream.write(nameReference);
+        writeVarInt(this.outputStream, reference);
+      } else {
+        this.names.put(this.deferredName, this.names.size());
+        this.outputStream.write(name);
+        writeString(this.outputStream, this.deferredName);
+      }
+      this.deferredName = null;
+    }
+
+    private JsonWriter tag(int tag) throws IOException {
+      this.writeDeferredName();
+      this.outputStream.write(tag);
+      return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+      return this.tag(beginObject);
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+      return this.tag(endObject);
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+      return this.tag(beginArray);
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+      return this.tag(endArray);
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+      if (this.deferredName != null) {
+        throw new IllegalStateException("Name " + this.deferredName + " has no value.");
+      }
+      this.deferredName = name;
+      return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+      if (value == null) {
+        return this.nullValue();
+      }
+      this.tag(string);
+      writeString(this.outputStream, value);
+      return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+      if (value == null) {
+        return this.nullValue();
+      }
+      JsonReader reader = new JsonReader(new StringReader(value));
+      reader.setLenient(true);
+      if (reader.peek() == JsonToken.NUMBER) {
+        this.writeDeferredName();
+        writeNumber(this.outputStream, reader.nextString());
+        return this;
+      }
+      copy(reader, this);
+      return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+      if (this.deferredName != null && !this.getSerializeNulls()) {
+        this.deferredName = null;
+        return this;
+      }
+      return this.tag(nullValue);
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+      return this.tag(value ? trueValue : falseValue);
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+      return value == null ? this.nullValue() : this.value(value.booleanValue());
+    }
+
+    @Override
+    public JsonWriter value(float value) throws IOException {
+      this.writeDeferredName();
+      writeNumber(this.outputStream, Float.toString(value));
+      return this;
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+      this.tag(floatingPoint);
+      writeDouble(this.outputStream, value);
+      return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+      this.tag(integer);
+      writeVarLong(this.outputStream, (value << 1) ^ (value >> 63));
+      return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+      if (value == null) {
+        return this.nullValue();
+      } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+        return this.value(value.longValue());
+      } else if (value instanceof Double) {
+        return this.value(value.doubleValue());
+      }
+      this.writeDeferredName();
+      writeNumber(this.outputStream, value.toString());
+      return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      this.outputStream.flush();
+    }
+
+    @Override
+    public void close() {
+      // The stream belongs to the caller.
+    }
+  }
+
+  /**
+   * Decodes to a json tree, without any json text in between.
+   *
+   * @param buffer The encoded json, read until the end.
+   * @return The decoded json.
+   */
+  public static JsonElement decodeTree(ByteBuffer buffer) throws IOException {
+    List<String> names = new ArrayList<>();
+    Deque<JsonElement> parents = new ArrayDeque<>();
+    JsonElement root = JsonNull.INSTANCE;
+    String propertyName = null;
+    while (buffer.hasRemaining()) {
+      int tag = buffer.get();
+      JsonElement element;
+      switch (tag) {
+        case beginObject -> element = new JsonObject();
+        case beginArray -> element = new JsonArray();
+        case endObject, endArray -> {
+          parents.pop();
+          continue;
+        }
+        case name -> {
+          propertyName = readString(buffer);
+          names.add(propertyName);
+          continue;
+        }
+        case nameReference -> {
+          propertyName = names.get(readVarInt(buffer));
+          continue;
+        }
+        case string -> element = new JsonPrimitive(readString(buffer));
+        case trueValue -> element = new JsonPrimitive(true);
+        case falseValue -> element = new JsonPrimitive(false);
+        case nullValue -> element = JsonNull.INSTANCE;
+        case integer -> element = new JsonPrimitive(zigZagDecode(readVarLong(buffer)));
+        case floatingPoint -> element = new JsonPrimitive(buffer.getDouble());
+        case rawNumber -> element = JsonParser.parseString(readString(buffer));
+        default -> throw new IOException("Unknown binary json tag: " + tag);
+      }
+      JsonElement parent = parents.peek();
+      if (parent == null) {
+        root = element;
+      } else if (parent instanceof JsonObject object) {
+        object.add(propertyName, element);
+      } else {
+        ((JsonArray) parent).add(element);
+      }
+      if (element.isJsonObject() || element.isJsonArray()) {
+        parents.push(element);
+      }
+    }
+    return root;
+  }
+
+  /**
+   * Decodes to json text.
+   *
+   * @param buffer The encoded json, read until the end.
+   * @param json   The writer to write the json text to.
+   */
+  public static void decode(ByteBuffer buffer, Writer json) throws IOException {
+    JsonWriter writer = new JsonWriter(json);
+    writer.setLenient(true);
+    List<String> names = new ArrayList<>();
+    while (buffer.hasRemaining()) {
+      int tag = buffer.get();
+      switch (tag) {
+        case beginObject -> writer.beginObject();
+        case endObject -> writer.endObject();
+        case beginArray -> writer.beginArray();
+        case endArray -> writer.endArray();
+        case name -> {
+          String propertyName = readString(buffer);
+          names.add(propertyName);
+          writer.name(propertyName);
+        }
+        case nameReference -> writer.name(names.get(readVarInt(buffer)));
+        case string -> writer.value(readString(buffer));
+        case trueValue -> writer.value(true);
+        case falseValue -> writer.value(false);
+        case nullValue -> writer.nullValue();
+        case integer -> writer.value(zigZagDecode(readVarLong(buffer)));
+        case floatingPoint -> writer.value(buffer.getDouble());
+        case rawNumber -> writer.jsonValue(readString(buffer));
+        default -> throw new IOException("Unknown binary json tag: " + tag);
+      }
+    }
+    writer.flush();
+  }
+
+  private static void writeNumber(OutputStream outputStream, String number) throws IOException {
+    try {
+      long longValue = Long.parseLong(number);
+      if (Long.toString(longValue).equals(number)) {
+        outputStream.write(integer);
+        writeVarLong(outputStream, (longValue << 1) ^ (longValue >> 63));
+        return;
+      }
+    } catch (NumberFormatException ignored) {
+      // Not an integer.
+    }
+    try {
+      double doubleValue = Double.parseDouble(number);
+      if (Double.toString(doubleValue).equals(number)) {
+        outputStream.write(floatingPoint);
+        writeDouble(outputStream, doubleValue);
+        return;
+      }
+    } catch (NumberFormatException ignored) {
+      // Kept as written.
+    }
+    outputStream.write(rawNumber);
+    writeString(outputStream, number);
+  }
+
+  private static void writeDouble(OutputStream outputStream, double value) throws IOException {
+    long bits = Double.doubleToRawLongBits(value);
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      outputStream.write((int) (bits >>> shift));
+    }
+  }
+
+  private static long zigZagDecode(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeString(OutputStream outputStream, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarInt(outputStream, bytes.length);
+    outputStream.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = readVarInt(buffer);
+    if (!buffer.hasArray()) {
+      byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+    String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+
+  private static void writeVarInt(OutputStream outputStream, int value) throws IOException {
+    writeVarLong(outputStream, value & 0xFFFFFFFFL);
+  }
+
+  private static void writeVarLong(OutputStream outputStream, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      outputStream.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    outputStream.write((int) value);
+  }
+
+  private static int readVarInt(ByteBuffer buffer) {
+    return (int) readVarLong(buffer);
+  }
+
+  private static long readVarLong(ByteBuffer buffer) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+}
@@ -0,0 +1,46 @@
+package com.gestankbratwurst.ambrosia.impl.file.format;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the remaining bytes of a buffer without copying them first.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+  private final ByteBuffer buffer;
+
+  public ByteBufferInputStream(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  @Override
+  public int read() {
+    return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+  }
+
+  @Override
+  public int read(byte[] bytes, int offset, int length) {
+    if (length == 0) {
+      return 0;
+    }
+    if (!this.buffer.hasRemaining()) {
+      return -1;
+    }
+    int read = Math.min(length, this.buffer.remaining());
+    this.buffer.get(bytes, offset, read);
+    return read;
+  }
+
+  @Override
+  public long skip(long n) {
+    int skipped = (int) Math.max(0, Math.min(n, this.buffer.remaining()));
+    this.buffer.position(this.buffer.position() + skipped);
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return this.buffer.remaining();
+  }
+}
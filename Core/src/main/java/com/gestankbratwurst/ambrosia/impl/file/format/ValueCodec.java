@@ -0,0 +1,145 @@
+package com.gestankbratwurst.ambrosia.impl.file.format;
+
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
+import com.gestankbratwurst.ambrosia.impl.file.serializer.StringSerializer;
+import com.gestankbratwurst.ambrosia.impl.file.serializer.Utf8ByteBufferReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Writes values in the storage format of a map and reads values in any format.
+ * The format is detected by the first bytes: gzip {@code 1f 8b}, zlib {@code 78}, binary {@code ab 01}, otherwise json.
+ */
+public class ValueCodec {
+
+  private static final int binaryMagic0 = 0xAB;
+  private static final int binaryMagic1 = 0x01;
+
+  private final StringSerializer serializer;
+  private final FileMapOptions.StorageFormat format;
+  private final int compressionThreshold;
+
+  public ValueCodec(StringSerializer serializer, FileMapOptions.StorageFormat format, int compressionThreshold) {
+    this.serializer = serializer;
+    this.format = format;
+    this.compressionThreshold = compressionThreshold;
+  }
+
+  public ValueCodec(StringSerializer serializer, FileMapOptions options) {
+    this(serializer, options.getFormat(), options.getCompressionThreshold());
+  }
+
+  /**
+   * Writes a value in the storage format.
+   * Compressed formats keep values smaller than the compression threshold as plain json.
+   *
+   * @param value        The value to write.
+   * @param outputStream The stream to write to.
+   */
+  public void write(Object value, OutputStream outputStream) throws IOException {
+    switch (this.format) {
+      case JSON -> this.serializer.serialize(value, outputStream);
+      case BINARY -> {
+        outputStream.write(binaryMagic0);
+        outputStream.write(binaryMagic1);
+        this.serializer.serialize(value, BinaryJson.writer(outputStream));
+      }
+      case GZIP, DEFLATE -> {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        this.serializer.serialize(value, json);
+        if (json.size() < this.compressionThreshold) {
+          json.writeTo(outputStream);
+        } else if (this.format == FileMapOptions.StorageFormat.GZIP) {
+          GZIPOutputStream gzip = new GZIPOutputStream(new UnclosableOutputStream(outputStream), 8192);
+          json.writeTo(gzip);
+          gzip.close();
+        } else {
+          Deflater deflater = new Deflater();
+          try {
+            DeflaterOutputStream deflate = new DeflaterOutputStream(outputStream, deflater, 8192);
+            json.writeTo(deflate);
+            deflate.finish();
+          } finally {
+            deflater.end();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads a value in any storage format.
+   *
+   * @param buffer The stored bytes of the value.
+   * @param type   The type of the value.
+   * @param <T>    The type of the value.
+   * @return The read value.
+   */
+  public <T> T read(ByteBuffer buffer, Class<T> type) {
+    if (buffer.remaining() >= 2) {
+      int first = buffer.get(buffer.position()) & 0xFF;
+      int second = buffer.get(buffer.position() + 1) & 0xFF;
+      try {
+        if (first == 0x1F && second == 0x8B) {
+          try (InputStream inputStream = new GZIPInputStream(new ByteBufferInputStream(buffer), 8192)) {
+            return this.serializer.deserialize(inputStream, type);
+          }
+        } else if (first == 0x78 && ((first << 8) | second) % 31 == 0) {
+          Inflater inflater = new Inflater();
+          try {
+            return this.serializer.deserialize(new InflaterInputStream(new ByteBufferInputStream(buffer), inflater, 8192), type);
+          } finally {
+            inflater.end();
+          }
+        } else if (first == binaryMagic0 && second == binaryMagic1) {
+          return this.serializer.deserialize(BinaryJson.decodeTree(buffer.position(buffer.position() + 2)), type);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return this.serializer.deserialize(new Utf8ByteBufferReader(buffer), type);
+  }
+
+  /**
+   * Lets compressors finish their output without closing the storage stream.
+   */
+  private static final class UnclosableOutputStream extends OutputStream {
+
+    private final OutputStream outputStream;
+
+    private UnclosableOutputStream(OutputStream outputStream) {
+      this.outputStream = outputStream;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      this.outputStream.write(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      this.outputStream.write(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      this.outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.outputStream.flush();
+    }
+  }
+}
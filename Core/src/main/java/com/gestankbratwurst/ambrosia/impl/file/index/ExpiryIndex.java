@@ -0,0 +1,331 @@
+package com.gestankbratwurst.ambrosia.impl.file.index;
+
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileKeyCodec;
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The expiry times of the keys of a map, appended to {@code expiry.log} in the map folder.
+ * The file is rewritten once it holds more outdated records than live ones.
+ *
+ * @param <K> The type of the keys.
+ */
+public class ExpiryIndex<K> implements AutoCloseable {
+
+  private static final String fileName = "expiry.log";
+  private static final long noExpiry = 0;
+  private static final int minCompactionRecords = 1024;
+  private static final Logger logger = Logger.getLogger(ExpiryIndex.class.getName());
+
+  private final Path path;
+  private final FileKeyCodec<K> keyCodec;
+  private final FileMapOptions.FsyncPolicy fsyncPolicy;
+  private final int fsyncBatchSize;
+  private final Map<K, Long> expiryTimes;
+  private final NavigableMap<Long, Set<K>> keysByExpiry;
+  private FileChannel channel;
+  private long records;
+  private int unsyncedRecords;
+
+  public ExpiryIndex(Path folder, FileKeyCodec<K> keyCodec, FileMapOptions options) {
+    this.path = folder.resolve(fileName);
+    this.keyCodec = keyCodec;
+    this.fsyncPolicy = options.getFsyncPolicy();
+    this.fsyncBatchSize = options.getFsyncBatchSize();
+    this.expiryTimes = new ConcurrentHashMap<>();
+    this.keysByExpiry = new TreeMap<>();
+    try {
+      this.load();
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to open expiry index: " + this.path, e);
+    }
+  }
+
+  /**
+   * Reads all records. A torn record at the end, left behind by a crash, is cut off.
+   * Records whose key can't be decoded are skipped.
+   */
+  private void load() throws IOException {
+    if (!Files.exists(this.path)) {
+      return;
+    }
+    long fileSize = Files.size(this.path);
+    long validSize = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.path), 1 << 16))) {
+      while (true) {
+        int keyLength = in.readInt();
+        if (keyLength < 0 || validSize + 4 + keyLength + 8 > fileSize) {
+          break;
+        }
+        byte[] key = new byte[keyLength];
+        in.readFully(key);
+        long expiresAt = in.readLong();
+        String name = new String(key, StandardCharsets.UTF_8);
+        try {
+          this.apply(this.keyCodec.decode(name), expiresAt);
+        } catch (RuntimeException e) {
+          logger.log(Level.WARNING, "Skipping expiry of undecodable key " + name + " in " + this.path, e);
+        }
+        this.records++;
+        validSize += 4 + keyLength + 8;
+      }
+    } catch (EOFException ignored) {
+      // End of the file or a torn record.
+    }
+    if (validSize < fileSize) {
+      try (FileChannel truncated = FileChannel.open(this.path, StandardOpenOption.WRITE)) {
+        truncated.truncate(validSize);
+      }
+    }
+  }
+
+  private void apply(K key, long expiresAt) {
+    Long previous = expiresAt == noExpiry ? this.expiryTimes.remove(key) : this.expiryTimes.put(key, expiresAt);
+    if (previous != null) {
+      Set<K> keys = this.keysByExpiry.get(previous);
+      keys.remove(key);
+      if (keys.isEmpty()) {
+        this.keysByExpiry.remove(previous);
+      }
+    }
+    if (expiresAt != noExpiry) {
+      this.keysByExpiry.computeIfAbsent(expiresAt, ignored -> new LinkedHashSet<>()).add(key);
+    }
+  }
+
+  public boolean isEmpty() {
+    return this.expiryTimes.isEmpty();
+  }
+
+  /**
+   * Checks if a key is expired. Does not lock, so it is cheap enough for every read.
+   *
+   * @param key The key to check.
+   * @return True if the key has an expiry time in the past.
+   */
+  public boolean isExpired(K key) {
+    Long expiresAt = this.expiryTimes.get(key);
+    return expiresAt != null && expiresAt <= System.currentTimeMillis();
+  }
+
+  /**
+   * Gets the time at which a key expires.
+   *
+   * @param key The key.
+   * @return The expiry time in epoch milliseconds or null if the key doesn't expire.
+   */
+  public Long getExpiryTime(K key) {
+    return this.expiryTimes.get(key);
+  }
+
+  /**
+   * Sets the time at which a key expires.
+   *
+   * @param key       The key.
+   * @param expiresAt The expiry time in epoch milliseconds.
+   */
+  public synchronized void set(K key, long expiresAt) {
+    this.append(key, Math.max(expiresAt, 1));
+  }
+
+  /**
+   * Removes the expiry of a key. Only writes a record if the key had one.
+   *
+   * @param key The key.
+   */
+  public void remove(K key) {
+    if (!this.expiryTimes.containsKey(key)) {
+      return;
+    }
+    synchronized (this) {
+      if (this.expiryTimes.containsKey(key)) {
+        this.append(key, noExpiry);
+      }
+    }
+  }
+
+  private void append(K key, long expiresAt) {
+    byte[] encodedKey = this.keyCodec.encode(key).getBytes(StandardCharsets.UTF_8);
+    ByteBuffer record = ByteBuffer.allocate(4 + encodedKey.length + 8);
+    record.putInt(encodedKey.length).put(encodedKey).putLong(expiresAt).flip();
+    try {
+      if (this.channel == null) {
+        // Only maps that use expiry get a file.
+        this.channel = this.openChannel();
+      }
+      while (record.hasRemaining()) {
+        this.channel.write(record);
+      }
+      if (this.fsyncPolicy == FileMapOptions.FsyncPolicy.PER_WRITE) {
+        this.channel.force(false);
+      } else if (this.fsyncPolicy == FileMapOptions.FsyncPolicy.BATCHED && ++this.unsyncedRecords >= this.fsyncBatchSize) {
+        this.channel.force(false);
+        this.unsyncedRecords = 0;
+      }
+      this.apply(key, expiresAt);
+      if (++this.records > Math.max(minCompactionRecords, this.expiryTimes.size() * 2L)) {
+        this.compact();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to write expiry index: " + this.path, e);
+    }
+  }
+
+  /**
+   * Rewrites the file with one record per key that has an expiry time.
+   */
+  private void compact() throws IOException {
+    Path tempPath = this.path.resolveSibling(fileName + ".tmp");
+    try (FileOutputStream fileOut = new FileOutputStream(tempPath.toFile());
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16))) {
+      for (Map.Entry<K, Long> entry : this.expiryTimes.entrySet()) {
+        byte[] encodedKey = this.keyCodec.encode(entry.getKey()).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encodedKey.length);
+        out.write(encodedKey);
+        out.writeLong(entry.getValue());
+      }
+      out.flush();
+      if (this.fsyncPolicy != FileMapOptions.FsyncPolicy.NEVER) {
+        fileOut.getChannel().force(false);
+      }
+    }
+    this.channel.close();
+    try {
+      Files.move(tempPath, this.path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING);
+    }
+    this.channel = this.openChannel();
+    this.records = this.expiryTimes.size();
+    this.unsyncedRecords = 0;
+  }
+
+  private FileChannel openChannel() throws IOException {
+    return FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+  }
+
+  /**
+   * Gets keys that are expired, starting with the longest expired ones.
+   *
+   * @param limit The maximum amount of keys.
+   * @return The expired keys.
+   */
+  public synchronized List<K> getExpired(int limit) {
+    List<K> expired = new ArrayList<>();
+    for (Set<K> keys : this.keysByExpiry.headMap(System.currentTimeMillis(), true).values()) {
+      for (K key : keys) {
+        if (expired.size() >= limit) {
+          return expired;
+        }
+        expired.add(key);
+      }
+    }
+    return expired;
+  }
+
+  /**
+   * Counts the keys that are expired, but not deleted yet.
+   *
+   * @param stored Checks if a key still has a stored value.
+   * @return The amount of expired keys with a stored value.
+   */
+  public int countExpired(Predicate<K> stored) {
+    if (this.expiryTimes.isEmpty()) {
+      return 0;
+    }
+    synchronized (this) {
+      int count = 0;
+      for (Set<K> keys : this.keysByExpiry.headMap(System.currentTimeMillis(), true).values()) {
+        for (K key : keys) {
+          if (stored.test(key)) {
+            count++;
+          }
+        }
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Removes the expiry of all keys.
+   */
+  public synchronized void clear() {
+    this.expiryTimes.clear();
+    this.keysByExpiry.clear();
+    try {
+      if (this.channel != null) {
+        this.channel.truncate(0);
+      } else {
+        Files.deleteIfExists(this.path);
+      }
+      this.records = 0;
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to clear expiry index: " + this.path, e);
+    }
+  }
+
+  /**
+   * Forces all records to the storage device.
+   */
+  public synchronized void flush() {
+    if (this.channel == null) {
+      return;
+    }
+    try {
+      this.channel.force(false);
+      this.unsyncedRecords = 0;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Copies the file into a snapshot. It is appended to in place, so it can't be linked.
+   *
+   * @param target The folder of the snapshot.
+   */
+  public synchronized void snapshot(Path target) throws IOException {
+    if (this.records > 0) {
+      Files.createDirectories(target);
+      Files.copy(this.path, target.resolve(fileName), StandardCopyOption.COPY_ATTRIBUTES);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (this.channel == null) {
+      return;
+    }
+    try {
+      this.channel.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.gestankbratwurst.ambrosia.impl.file.index;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+
+/**
+ * Normalizes property values, so stored json and query arguments compare equal.
+ * Numbers become {@link BigDecimal}s without trailing zeros, booleans stay booleans and everything else becomes a string.
+ */
+final class IndexValues {
+
+  /**
+   * Orders booleans before numbers before strings, and each of them naturally.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  static final Comparator<Object> order = Comparator.comparingInt(IndexValues::rank)
+      .thenComparing((first, second) -> ((Comparable) first).compareTo(second));
+
+  private IndexValues() {
+  }
+
+  private static int rank(Object value) {
+    if (value instanceof Boolean) {
+      return 0;
+    } else if (value instanceof BigDecimal) {
+      return 1;
+    }
+    return 2;
+  }
+
+  /**
+   * Extracts a property from a json tree.
+   *
+   * @param tree The json tree of a value.
+   * @param path The path of the property.
+   * @return The normalized property value or null if it is missing or not a primitive.
+   */
+  static Object extract(JsonElement tree, String[] path) {
+    JsonElement element = tree;
+    for (String part : path) {
+      if (!(element instanceof JsonObject object)) {
+        return null;
+      }
+      element = object.get(part);
+    }
+    if (!(element instanceof JsonPrimitive primitive)) {
+      return null;
+    }
+    if (primitive.isBoolean()) {
+      return primitive.getAsBoolean();
+    } else if (primitive.isNumber()) {
+      return number(primitive.getAsString());
+    }
+    return primitive.getAsString();
+  }
+
+  /**
+   * Normalizes a query argument.
+   *
+   * @param value The value to query for.
+   * @return The normalized value.
+   */
+  static Object normalize(Object value) {
+    if (value == null || value instanceof Boolean) {
+      return value;
+    } else if (value instanceof Number) {
+      return number(value.toString());
+    } else if (value instanceof Enum<?> enumValue) {
+      return enumValue.name();
+    }
+    return value.toString();
+  }
+
+  private static BigDecimal number(String number) {
+    try {
+      return new BigDecimal(number).stripTrailingZeros();
+    } catch (NumberFormatException e) {
+      // NaN and infinity are not indexed.
+      return null;
+    }
+  }
+}
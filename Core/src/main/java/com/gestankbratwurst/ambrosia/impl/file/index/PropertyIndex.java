@@ -0,0 +1,287 @@
+package com.gestankbratwurst.ambrosia.impl.file.index;
+
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileKeyCodec;
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
+import com.google.gson.JsonElement;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Maps the values of a single property to the keys holding them.
+ * Equality indexes answer exact lookups, sorted indexes also answer range and top list queries.
+ * Values missing the property, or holding a non-primitive value, are not indexed.
+ *
+ * @param <K> The type of the keys.
+ */
+public class PropertyIndex<K> {
+
+  private static final int tagFalse = 0;
+  private static final int tagTrue = 1;
+  private static final int tagNumber = 2;
+  private static final int tagString = 3;
+
+  private final String property;
+  private final String[] path;
+  private final FileMapOptions.IndexType type;
+  private final Map<K, Object> valuesByKey;
+  private final Map<Object, Set<K>> keysByValue;
+
+  public PropertyIndex(String property, FileMapOptions.IndexType type) {
+    this.property = property;
+    this.path = property.split("\\.");
+    this.type = type;
+    this.valuesByKey = new HashMap<>();
+    this.keysByValue = type == FileMapOptions.IndexType.SORTED ? new TreeMap<>(IndexValues.order) : new HashMap<>();
+  }
+
+  public String getProperty() {
+    return this.property;
+  }
+
+  public FileMapOptions.IndexType getType() {
+    return this.type;
+  }
+
+  /**
+   * Indexes the property of a value, replacing the previously indexed value of the key.
+   *
+   * @param key  The key of the value.
+   * @param tree The json tree of the value.
+   */
+  public synchronized void put(K key, JsonElement tree) {
+    this.remove(key);
+    Object value = IndexValues.extract(tree, this.path);
+    if (value == null) {
+      return;
+    }
+    this.valuesByKey.put(key, value);
+    this.keysByValue.computeIfAbsent(value, ignored -> new LinkedHashSet<>()).add(key);
+  }
+
+  public synchronized void remove(K key) {
+    Object value = this.valuesByKey.remove(key);
+    if (value == null) {
+      return;
+    }
+    Set<K> keys = this.keysByValue.get(value);
+    keys.remove(key);
+    if (keys.isEmpty()) {
+      this.keysByValue.remove(value);
+    }
+  }
+
+  public synchronized void clear() {
+    this.valuesByKey.clear();
+    this.keysByValue.clear();
+  }
+
+  /**
+   * Finds all keys whose property equals a value.
+   *
+   * @param value The value to look for.
+   * @return The matching keys.
+   */
+  public synchronized Set<K> find(Object value) {
+    Set<K> keys = this.keysByValue.get(IndexValues.normalize(value));
+    return keys == null ? Set.of() : new HashSet<>(keys);
+  }
+
+  /**
+   * Finds all keys whose property equals a value, with the values of some keys changed.
+   *
+   * @param value       The value to look for.
+   * @param changes     An index of the changed values.
+   * @param changedKeys All changed keys. Changed keys missing from the changes are treated as removed.
+   * @return The matching keys.
+   */
+  public Set<K> find(Object value, PropertyIndex<K> changes, Set<K> changedKeys) {
+    Set<K> keys = new HashSet<>(this.find(value));
+    keys.removeAll(changedKeys);
+    keys.addAll(changes.find(value));
+    return keys;
+  }
+
+  /**
+   * Finds all keys whose property lies within a range, in ascending order of the property.
+   *
+   * @param min The inclusive lower bound or null for no bound.
+   * @param max The inclusive upper bound or null for no bound.
+   * @return The matching keys.
+   */
+  public List<K> range(Object min, Object max) {
+    return keysOf(this.rangeEntries(min, max, Set.of()));
+  }
+
+  /**
+   * Finds all keys whose property lies within a range, with the values of some keys changed.
+   *
+   * @param min         The inclusive lower bound or null for no bound.
+   * @param max         The inclusive upper bound or null for no bound.
+   * @param changes     A sorted index of the changed values.
+   * @param changedKeys All changed keys. Changed keys missing from the changes are treated as removed.
+   * @return The matching keys.
+   */
+  public List<K> range(Object min, Object max, PropertyIndex<K> changes, Set<K> changedKeys) {
+    return merge(this.rangeEntries(min, max, changedKeys), changes.rangeEntries(min, max, Set.of()), true, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Gets the keys with the highest or lowest property values.
+   *
+   * @param limit     The maximum amount of keys.
+   * @param ascending True to start with the lowest value.
+   * @return The keys in order of their property.
+   */
+  public List<K> top(int limit, boolean ascending) {
+    return keysOf(this.topEntries(limit, ascending, Set.of()));
+  }
+
+  /**
+   * Gets the keys with the highest or lowest property values, with the values of some keys changed.
+   *
+   * @param limit       The maximum amount of keys.
+   * @param ascending   True to start with the lowest value.
+   * @param changes     A sorted index of the changed values.
+   * @param changedKeys All changed keys. Changed keys missing from the changes are treated as removed.
+   * @return The keys in order of their property.
+   */
+  public List<K> top(int limit, boolean ascending, PropertyIndex<K> changes, Set<K> changedKeys) {
+    return merge(this.topEntries(limit, ascending, changedKeys), changes.topEntries(limit, ascending, Set.of()), ascending, limit);
+  }
+
+  private synchronized List<Map.Entry<Object, K>> rangeEntries(Object min, Object max, Set<K> excluded) {
+    NavigableMap<Object, Set<K>> sorted = this.sorted();
+    Object from = IndexValues.normalize(min);
+    Object to = IndexValues.normalize(max);
+    NavigableMap<Object, Set<K>> range;
+    if (from == null && to == null) {
+      range = sorted;
+    } else if (from == null) {
+      range = sorted.headMap(to, true);
+    } else if (to == null) {
+      range = sorted.tailMap(from, true);
+    } else {
+      range = sorted.subMap(from, true, to, true);
+    }
+    return flatten(range, excluded, Integer.MAX_VALUE);
+  }
+
+  private synchronized List<Map.Entry<Object, K>> topEntries(int limit, boolean ascending, Set<K> excluded) {
+    NavigableMap<Object, Set<K>> sorted = this.sorted();
+    return flatten(ascending ? sorted : sorted.descendingMap(), excluded, limit);
+  }
+
+  private NavigableMap<Object, Set<K>> sorted() {
+    if (!(this.keysByValue instanceof NavigableMap<Object, Set<K>> sorted)) {
+      throw new IllegalStateException("Index on " + this.property + " is not sorted.");
+    }
+    return sorted;
+  }
+
+  /**
+   * Lists the keys with their values in the order of the map, skipping excluded keys.
+   */
+  private static <K> List<Map.Entry<Object, K>> flatten(Map<Object, Set<K>> keySets, Set<K> excluded, int limit) {
+    List<Map.Entry<Object, K>> entries = new ArrayList<>();
+    for (Map.Entry<Object, Set<K>> keySet : keySets.entrySet()) {
+      for (K key : keySet.getValue()) {
+        if (entries.size() >= limit) {
+          return entries;
+        }
+        if (!excluded.contains(key)) {
+          entries.add(Map.entry(keySet.getKey(), key));
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static <K> List<K> keysOf(List<Map.Entry<Object, K>> entries) {
+    List<K> keys = new ArrayList<>(entries.size());
+    for (Map.Entry<Object, K> entry : entries) {
+      keys.add(entry.getValue());
+    }
+    return keys;
+  }
+
+  /**
+   * Merges two lists of keys that are sorted by their values.
+   */
+  private static <K> List<K> merge(List<Map.Entry<Object, K>> first, List<Map.Entry<Object, K>> second, boolean ascending, int limit) {
+    Comparator<Object> order = ascending ? IndexValues.order : IndexValues.order.reversed();
+    List<K> keys = new ArrayList<>(Math.min(limit, first.size() + second.size()));
+    int firstIndex = 0;
+    int secondIndex = 0;
+    while (keys.size() < limit && (firstIndex < first.size() || secondIndex < second.size())) {
+      boolean takeFirst = secondIndex >= second.size()
+          || (firstIndex < first.size() && order.compare(first.get(firstIndex).getKey(), second.get(secondIndex).getKey()) <= 0);
+      keys.add(takeFirst ? first.get(firstIndex++).getValue() : second.get(secondIndex++).getValue());
+    }
+    return keys;
+  }
+
+  synchronized Set<K> keys() {
+    return new HashSet<>(this.valuesByKey.keySet());
+  }
+
+  synchronized void write(DataOutputStream out, FileKeyCodec<K> keyCodec) throws IOException {
+    out.writeInt(this.valuesByKey.size());
+    for (Map.Entry<K, Object> entry : this.valuesByKey.entrySet()) {
+      writeString(out, keyCodec.encode(entry.getKey()));
+      Object value = entry.getValue();
+      if (value instanceof Boolean bool) {
+        out.writeByte(bool ? tagTrue : tagFalse);
+      } else if (value instanceof BigDecimal number) {
+        out.writeByte(tagNumber);
+        writeString(out, number.toString());
+      } else {
+        out.writeByte(tagString);
+        writeString(out, (String) value);
+      }
+    }
+  }
+
+  synchronized void read(DataInputStream in, FileKeyCodec<K> keyCodec) throws IOException {
+    this.clear();
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      K key = keyCodec.decode(readString(in));
+      int tag = in.readByte();
+      Object value = switch (tag) {
+        case tagFalse -> false;
+        case tagTrue -> true;
+        case tagNumber -> new BigDecimal(readString(in));
+        case tagString -> readString(in);
+        default -> throw new IOException("Unknown index value tag: " + tag);
+      };
+      this.valuesByKey.put(key, value);
+      this.keysByValue.computeIfAbsent(value, ignored -> new LinkedHashSet<>()).add(key);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
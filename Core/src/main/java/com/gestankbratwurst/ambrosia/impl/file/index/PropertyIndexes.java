@@ -0,0 +1,303 @@
+package com.gestankbratwurst.ambrosia.impl.file.index;
+
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileKeyCodec;
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
+import com.gestankbratwurst.ambrosia.impl.file.snapshot.SnapshotFiles;
+import com.google.gson.JsonElement;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * The property indexes of a map, persisted as {@code <property>.idx} files in the map folder.
+ * They are only trusted if the {@code indexes.clean} marker of the last save matches, otherwise they are rebuilt.
+ *
+ * @param <K> The type of the keys.
+ */
+public class PropertyIndexes<K> {
+
+  private static final String indexExtension = ".idx";
+  private static final String cleanMarkerName = "indexes.clean";
+  private static final int magic = 0x41494458;
+  private static final int version = 2;
+
+  private final Path folder;
+  private final FileKeyCodec<K> keyCodec;
+  private final Map<String, PropertyIndex<K>> indexes;
+  private final ReadWriteLock lock;
+  private final CleanMarker cleanMarker;
+  private volatile boolean dirty;
+
+  public PropertyIndexes(Path folder, FileKeyCodec<K> keyCodec) {
+    this.folder = folder;
+    this.keyCodec = keyCodec;
+    this.indexes = new ConcurrentHashMap<>();
+    this.lock = new ReentrantReadWriteLock();
+    this.cleanMarker = this.readCleanMarker();
+    this.deleteSidecar(this.getCleanMarkerPath());
+  }
+
+  /**
+   * The state of the sidecars after the last clean save.
+   *
+   * @param generation     The generation the sidecars were written with.
+   * @param storedKeyCount The amount of stored keys at that time.
+   */
+  private record CleanMarker(long generation, int storedKeyCount) {
+  }
+
+  public boolean isEmpty() {
+    return this.indexes.isEmpty();
+  }
+
+  public PropertyIndex<K> get(String property) {
+    return this.indexes.get(property);
+  }
+
+  public Collection<PropertyIndex<K>> getAll() {
+    return this.indexes.values();
+  }
+
+  /**
+   * Adds an index and loads it from its sidecar, if that is still valid.
+   * Otherwise, it is rebuilt from the stored values, while changes wait for it.
+   *
+   * @param property   The property to index.
+   * @param type       The type of the index.
+   * @param storedKeys All keys of the map, to validate the sidecar against.
+   * @param rebuild    Puts all stored values into an empty index.
+   */
+  public void add(String property, FileMapOptions.IndexType type, Set<K> storedKeys, Consumer<PropertyIndex<K>> rebuild) {
+    this.lock.writeLock().lock();
+    try {
+      if (this.indexes.containsKey(property)) {
+        throw new IllegalArgumentException("Index on " + property + " already exists.");
+      }
+      PropertyIndex<K> index = new PropertyIndex<>(property, type);
+      Path path = this.getPath(property);
+      boolean loaded = this.cleanMarker != null && this.cleanMarker.storedKeyCount() == storedKeys.size() && this.load(index, path);
+      if (loaded && !storedKeys.containsAll(index.keys())) {
+        // Values were deleted while the map was closed.
+        index.clear();
+        loaded = false;
+      }
+      if (!loaded) {
+        rebuild.accept(index);
+      }
+      this.dirty = true;
+      this.indexes.put(property, index);
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  private boolean load(PropertyIndex<K> index, Path path) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 8192))) {
+      if (in.readInt() != magic || in.readByte() != version || in.readByte() != index.getType().ordinal()
+          || in.readLong() != this.cleanMarker.generation()) {
+        return false;
+      }
+      index.read(in, this.keyCodec);
+      return true;
+    } catch (NoSuchFileException e) {
+      return false;
+    } catch (IOException | RuntimeException e) {
+      // A corrupt sidecar is rebuilt.
+      index.clear();
+      return false;
+    }
+  }
+
+  /**
+   * Runs a change of the stored values, which must also update the indexes.
+   * The clean marker is deleted before the first change after a save, and no save happens while a change is running.
+   *
+   * @param change Writes or deletes values and updates the indexes.
+   */
+  public void modify(Runnable change) {
+    this.lock.readLock().lock();
+    try {
+      if (!this.dirty) {
+        this.markDirty();
+      }
+      change.run();
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  private synchronized void markDirty() {
+    if (this.dirty) {
+      return;
+    }
+    this.deleteSidecar(this.getCleanMarkerPath());
+    this.dirty = true;
+  }
+
+  public void update(K key, JsonElement tree) {
+    for (PropertyIndex<K> index : this.indexes.values()) {
+      index.put(key, tree);
+    }
+  }
+
+  public void remove(K key) {
+    for (PropertyIndex<K> index : this.indexes.values()) {
+      index.remove(key);
+    }
+  }
+
+  public void clear() {
+    for (PropertyIndex<K> index : this.indexes.values()) {
+      index.clear();
+    }
+  }
+
+  /**
+   * Writes all indexes to their sidecars and marks them as clean, if they changed since the last save.
+   *
+   * @param storedKeyCount Counts the stored keys. Called while no change is running.
+   */
+  public void save(IntSupplier storedKeyCount) {
+    this.lock.writeLock().lock();
+    try {
+      this.writeSidecars(storedKeyCount.getAsInt());
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  private void writeSidecars(int storedKeyCount) {
+    if (!this.dirty || this.indexes.isEmpty()) {
+      return;
+    }
+    long generation = ThreadLocalRandom.current().nextLong();
+    List<Path> written = new ArrayList<>();
+    for (PropertyIndex<K> index : this.indexes.values()) {
+      Path path = this.getPath(index.getProperty());
+      try {
+        this.writeAtomically(path, out -> {
+          out.writeInt(magic);
+          out.writeByte(version);
+          out.writeByte(index.getType().ordinal());
+          out.writeLong(generation);
+          index.write(out, this.keyCodec);
+        });
+        written.add(path);
+      } catch (IOException e) {
+        written.forEach(this::deleteSidecar);
+        throw new RuntimeException(e);
+      }
+    }
+    try {
+      // Written last, so the sidecars are only trusted once all of them are durable.
+      this.writeAtomically(this.getCleanMarkerPath(), out -> {
+        out.writeInt(magic);
+        out.writeLong(generation);
+        out.writeInt(storedKeyCount);
+      });
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    this.dirty = false;
+  }
+
+  private interface SidecarWriter {
+
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private void writeAtomically(Path path, SidecarWriter writer) throws IOException {
+    Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+    try {
+      try (FileOutputStream fileOut = new FileOutputStream(tempPath.toFile());
+           DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 8192))) {
+        writer.write(out);
+        out.flush();
+        fileOut.getChannel().force(false);
+      }
+      try {
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      this.deleteSidecar(tempPath);
+      throw e;
+    }
+  }
+
+  private CleanMarker readCleanMarker() {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.getCleanMarkerPath()), 64))) {
+      if (in.readInt() != magic) {
+        return null;
+      }
+      return new CleanMarker(in.readLong(), in.readInt());
+    } catch (IOException e) {
+      // Missing or torn, so no sidecar is trusted.
+      return null;
+    }
+  }
+
+  /**
+   * Links the sidecars into a snapshot, if they are up to date.
+   *
+   * @param target The folder of the snapshot.
+   */
+  public void snapshot(Path target) throws IOException {
+    this.lock.writeLock().lock();
+    try {
+      if (this.dirty) {
+        return;
+      }
+      Path cleanMarkerPath = this.getCleanMarkerPath();
+      if (!Files.exists(cleanMarkerPath)) {
+        return;
+      }
+      for (String property : this.indexes.keySet()) {
+        Path path = this.getPath(property);
+        if (Files.exists(path)) {
+          SnapshotFiles.linkOrCopy(path, target.resolve(path.getFileName()));
+        }
+      }
+      SnapshotFiles.linkOrCopy(cleanMarkerPath, target.resolve(cleanMarkerPath.getFileName()));
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  private Path getPath(String property) {
+    return this.folder.resolve(property + indexExtension);
+  }
+
+  private Path getCleanMarkerPath() {
+    return this.folder.resolve(cleanMarkerName);
+  }
+
+  private void deleteSidecar(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to delete index: " + path, e);
+    }
+  }
+}
@@ -0,0 +1,245 @@
+package com.gestankbratwurst.ambrosia.impl.file.layout;
+
+import com.gestankbratwurst.ambrosia.impl.file.serializer.StringSerializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Converts keys to file names and back. Primitives, UUIDs and valid strings are used as they are, other keys
+ * are URL-safe Base64 encoded, and names longer than {@link #MAX_NAME_LENGTH} are hashed with a {@code .key} sidecar.
+ *
+ * @param <K> The type of the keys.
+ */
+public final class FileKeyCodec<K> {
+
+  public static final String VALUE_EXTENSION = ".json";
+  public static final String KEY_EXTENSION = ".key";
+  public static final int MAX_NAME_LENGTH = 128;
+
+  private static final String ENCODED_PREFIX = "~";
+  private static final String HASHED_PREFIX = "#";
+  private static final String UNSAFE_CHARACTERS = "/\\:*?\"<>|";
+
+  private final Class<K> keyType;
+  private final StringSerializer serializer;
+
+  public FileKeyCodec(Class<K> keyType, StringSerializer serializer) {
+    this.keyType = keyType;
+    this.serializer = serializer;
+  }
+
+  private static boolean hasUnsafeCharacters(String name) {
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c < 0x20 || UNSAFE_CHARACTERS.indexOf(c) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks if a string can be used as its own name.
+   * Names starting with {@code ~} or {@code #} stay plain unless they would be mistaken for an encoded or hashed name.
+   */
+  private static boolean isPlainName(String name) {
+    return !hasUnsafeCharacters(name) && !isHashed(name) && decodeEscaped(name) == null;
+  }
+
+  /**
+   * Decodes a name created by escaping a string.
+   *
+   * @return The string or null if the name is a plain string that just starts with {@code ~}.
+   */
+  private static String decodeEscaped(String name) {
+    if (!name.startsWith(ENCODED_PREFIX)) {
+      return null;
+    }
+    String encoded = name.substring(ENCODED_PREFIX.length());
+    String decoded;
+    try {
+      byte[] bytes = Base64.getUrlDecoder().decode(encoded);
+      decoded = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes)).toString();
+    } catch (IllegalArgumentException | CharacterCodingException e) {
+      return null;
+    }
+    return encodeBase64(decoded).equals(encoded) && !isPlainName(decoded) ? decoded : null;
+  }
+
+  private static String hash(String name) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(name.getBytes(StandardCharsets.UTF_8));
+      return HASHED_PREFIX + HexFormat.of().formatHex(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String encodeBase64(String string) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(string.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String decodeBase64(String encoded) {
+    // Older versions used the standard alphabet with padding.
+    String urlSafe = encoded.replace('+', '-').replace('/', '_').replace("=", "");
+    return new String(Base64.getUrlDecoder().decode(urlSafe), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Encodes a key to its full name, which may exceed {@link #MAX_NAME_LENGTH}.
+   *
+   * @param key The key to encode.
+   * @return The full name of the key.
+   */
+  public String encode(K key) {
+    if (key instanceof Integer || key instanceof Long || key instanceof Double || key instanceof Float
+        || key instanceof Short || key instanceof Byte || key instanceof Boolean || key instanceof UUID) {
+      return String.valueOf(key);
+    } else if (key instanceof Character character && !hasUnsafeCharacters(String.valueOf(character))) {
+      return String.valueOf(character);
+    } else if (key instanceof String string) {
+      return isPlainName(string) ? string : ENCODED_PREFIX + encodeBase64(string);
+    }
+    return encodeBase64(this.serializer.serialize(key));
+  }
+
+  /**
+   * Decodes a full name created by {@link #encode(Object)}.
+   *
+   * @param name The full name of the key.
+   * @return The decoded key.
+   */
+  @SuppressWarnings("unchecked")
+  public K decode(String name) {
+    if (this.keyType == UUID.class) {
+      return (K) UUID.fromString(name);
+    } else if (this.keyType == String.class) {
+      String decoded = decodeEscaped(name);
+      return (K) (decoded != null ? decoded : name);
+    }
+    Object primitive = this.decodePrimitive(name);
+    if (primitive != null) {
+      return (K) primitive;
+    }
+    // Complex keys, unsafe characters and boxed primitives written by older versions.
+    return this.serializer.deserialize(decodeBase64(name), this.keyType);
+  }
+
+  /**
+   * Parses the plain name of a boxed primitive key.
+   *
+   * @return The key or null if the key type is not a primitive or the name is not plain.
+   */
+  private Object decodePrimitive(String name) {
+    try {
+      if (this.keyType == int.class || this.keyType == Integer.class) {
+        return Integer.valueOf(name);
+      } else if (this.keyType == long.class || this.keyType == Long.class) {
+        return Long.valueOf(name);
+      } else if (this.keyType == double.class || this.keyType == Double.class) {
+        return Double.valueOf(name);
+      } else if (this.keyType == float.class || this.keyType == Float.class) {
+        return Float.valueOf(name);
+      } else if (this.keyType == short.class || this.keyType == Short.class) {
+        return Short.valueOf(name);
+      } else if (this.keyType == byte.class || this.keyType == Byte.class) {
+        return Byte.valueOf(name);
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    if ((this.keyType == char.class || this.keyType == Character.class) && name.length() == 1) {
+      return name.charAt(0);
+    } else if ((this.keyType == boolean.class || this.keyType == Boolean.class) && (name.equals("true") || name.equals("false"))) {
+      return Boolean.valueOf(name);
+    }
+    return null;
+  }
+
+  /**
+   * Gets the name of the value file of a key, without extension.
+   * Long names are hashed.
+   *
+   * @param key The key.
+   * @return The file name of the key.
+   */
+  public String fileName(K key) {
+    return this.fileName(this.encode(key));
+  }
+
+  /**
+   * Gets the file name for a full name, without extension.
+   *
+   * @param name The full name of a key.
+   * @return The name itself or its hash, if it is too long.
+   */
+  public String fileName(String name) {
+    return name.length() > MAX_NAME_LENGTH ? hash(name) : name;
+  }
+
+  public static boolean isHashed(String fileName) {
+    if (fileName.length() != HASHED_PREFIX.length() + 64 || !fileName.startsWith(HASHED_PREFIX)) {
+      return false;
+    }
+    for (int i = HASHED_PREFIX.length(); i < fileName.length(); i++) {
+      if (!HexFormat.isHexDigit(fileName.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the sidecar file holding the full name of a hashed value file.
+   *
+   * @param valuePath The path of the value file.
+   * @return The path of the sidecar file.
+   */
+  public static Path sidecar(Path valuePath) {
+    String fileName = valuePath.getFileName().toString();
+    return valuePath.resolveSibling(fileName.substring(0, fileName.length() - VALUE_EXTENSION.length()) + KEY_EXTENSION);
+  }
+
+  /**
+   * Reads the full name of the key stored in a value file.
+   *
+   * @param valuePath The path of the value file.
+   * @return The full name of the key or null if a hashed file has no sidecar.
+   */
+  public static String readName(Path valuePath) {
+    String fileName = valuePath.getFileName().toString();
+    String name = fileName.substring(0, fileName.length() - VALUE_EXTENSION.length());
+    if (!isHashed(name)) {
+      return name;
+    }
+    try {
+      return Files.readString(sidecar(valuePath));
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Decodes the key stored in a value file.
+   *
+   * @param valuePath The path of the value file.
+   * @return The key or null if a hashed file has no sidecar.
+   */
+  public K decodeFile(Path valuePath) {
+    String name = readName(valuePath);
+    return name == null ? null : this.decode(name);
+  }
+}
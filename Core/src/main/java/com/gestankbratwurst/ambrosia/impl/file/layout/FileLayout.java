@@ -0,0 +1,118 @@
+package com.gestankbratwurst.ambrosia.impl.file.layout;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Describes where the files of a map are placed inside its folder, either directly
+ * or nested in subfolders derived from a hash of the file name.
+ */
+public final class FileLayout {
+
+  private static final FileLayout FLAT = new FileLayout(0, 1);
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  public static FileLayout flat() {
+    return FLAT;
+  }
+
+  /**
+   * Creates a sharded layout.
+   * With depth 2 and fan-out 256 a file is stored as {@code <folder>/3f/a2/<name>.json}.
+   *
+   * @param depth  The amount of nested subfolders, between 1 and 4.
+   * @param fanOut The amount of subfolders per level, between 2 and 4096.
+   * @return The sharded layout.
+   */
+  public static FileLayout sharded(int depth, int fanOut) {
+    if (depth < 1 || depth > 4) {
+      throw new IllegalArgumentException("Shard depth must be between 1 and 4.");
+    }
+    if (fanOut < 2 || fanOut > 4096) {
+      throw new IllegalArgumentException("Shard fan-out must be between 2 and 4096.");
+    }
+    return new FileLayout(depth, fanOut);
+  }
+
+  private final int depth;
+  private final int fanOut;
+  private final String shardFormat;
+
+  private FileLayout(int depth, int fanOut) {
+    this.depth = depth;
+    this.fanOut = fanOut;
+    int hexDigits = Math.max(1, (Integer.toHexString(fanOut - 1)).length());
+    this.shardFormat = "%0" + hexDigits + "x";
+  }
+
+  /**
+   * Stable 64-bit FNV-1a hash, so the shard of a file never changes between runs.
+   */
+  private static long hash(String fileName) {
+    long hash = FNV_OFFSET_BASIS;
+    for (byte b : fileName.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b & 0xff;
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /**
+   * Resolves the path of a file inside the folder of a map.
+   *
+   * @param folder   The folder of the map.
+   * @param fileName The name of the file.
+   * @return The path of the file.
+   */
+  public Path resolve(Path folder, String fileName) {
+    if (this.depth == 0) {
+      return folder.resolve(fileName);
+    }
+    long hash = hash(fileName);
+    Path path = folder;
+    for (int level = 0; level < this.depth; level++) {
+      path = path.resolve(String.format(this.shardFormat, Long.remainderUnsigned(hash, this.fanOut)));
+      hash = Long.divideUnsigned(hash, this.fanOut);
+    }
+    return path.resolve(fileName);
+  }
+
+  /**
+   * Lists all files with the given extension inside the folder of a map.
+   *
+   * @param folder    The folder of the map.
+   * @param extension The extension of the files.
+   * @return The paths of all matching files.
+   */
+  public List<Path> list(Path folder, String extension) {
+    try (Stream<Path> files = this.depth == 0 ? Files.list(folder) : Files.walk(folder, this.depth + 1)) {
+      return files.filter(path -> path.getFileName().toString().endsWith(extension))
+          .filter(Files::isRegularFile)
+          .collect(Collectors.toList());
+    } catch (NoSuchFileException e) {
+      return List.of();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public int getDepth() {
+    return this.depth;
+  }
+
+  public boolean isFlat() {
+    return this.depth == 0;
+  }
+
+  @Override
+  public String toString() {
+    return this.isFlat() ? "FileLayout{flat}" : "FileLayout{depth=" + this.depth + ", fanOut=" + this.fanOut + "}";
+  }
+}
@@ -0,0 +1,98 @@
+package com.gestankbratwurst.ambrosia.impl.file.layout;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Moves the files of a map folder into another layout in place.
+ * Also renames files written by older versions, e.g. keys encoded with the standard Base64 alphabet.
+ * No map view of the folder may be open while migrating.
+ */
+public final class FileLayoutMigration {
+
+  private FileLayoutMigration() {
+  }
+
+  /**
+   * Migrates all value files of a map folder, regardless of their current layout, to the target layout.
+   *
+   * @param folder The folder of the map.
+   * @param codec  The key codec of the map.
+   * @param target The layout to migrate to.
+   * @param <K>    The type of the keys.
+   * @return The amount of moved files.
+   */
+  public static <K> int migrate(Path folder, FileKeyCodec<K> codec, FileLayout target) {
+    int moved = 0;
+    try {
+      for (Path path : listValueFiles(folder)) {
+        String name = FileKeyCodec.readName(path);
+        if (name == null) {
+          continue;
+        }
+        K key = codec.decode(name);
+        String fileName = codec.fileName(key);
+        Path targetPath = target.resolve(folder, fileName + FileKeyCodec.VALUE_EXTENSION);
+        if (targetPath.equals(path)) {
+          continue;
+        }
+
+        Files.createDirectories(targetPath.getParent());
+        if (FileKeyCodec.isHashed(fileName)) {
+          Files.writeString(FileKeyCodec.sidecar(targetPath), codec.encode(key));
+        }
+        move(path, targetPath);
+        Path oldSidecar = FileKeyCodec.sidecar(path);
+        if (!oldSidecar.equals(FileKeyCodec.sidecar(targetPath))) {
+          Files.deleteIfExists(oldSidecar);
+        }
+        moved++;
+      }
+      deleteEmptyFolders(folder);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to migrate folder: " + folder, e);
+    }
+    return moved;
+  }
+
+  private static List<Path> listValueFiles(Path folder) throws IOException {
+    try (Stream<Path> files = Files.walk(folder)) {
+      return files.filter(path -> path.getFileName().toString().endsWith(FileKeyCodec.VALUE_EXTENSION))
+          .filter(Files::isRegularFile)
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static void move(Path source, Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static void deleteEmptyFolders(Path folder) throws IOException {
+    List<Path> subFolders;
+    try (Stream<Path> paths = Files.walk(folder)) {
+      subFolders = paths.filter(Files::isDirectory)
+          .filter(path -> !path.equals(folder))
+          .sorted(Comparator.comparingInt(Path::getNameCount).reversed())
+          .collect(Collectors.toList());
+    }
+    for (Path subFolder : subFolders) {
+      try (DirectoryStream<Path> content = Files.newDirectoryStream(subFolder)) {
+        if (!content.iterator().hasNext()) {
+          Files.delete(subFolder);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,427 @@
+package com.gestankbratwurst.ambrosia.impl.file.options;
+
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileLayout;
+import com.gestankbratwurst.ambrosia.impl.file.storage.AsyncFileWriter;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Options for file backed map views.
+ * Can be set for all maps on the {@link com.gestankbratwurst.ambrosia.impl.file.FileAmbrosia.Builder} or per map.
+ */
+public final class FileMapOptions {
+
+  public static FileMapOptions defaults() {
+    return new FileMapOptions();
+  }
+
+  private FsyncPolicy fsyncPolicy = FsyncPolicy.NEVER;
+  private int fsyncBatchSize = 64;
+  private boolean watchExternalChanges;
+  private FileLayout layout = FileLayout.flat();
+  private StorageEngine engine = StorageEngine.FOLDER;
+  private long maxSegmentSize = 64L * 1024 * 1024;
+  private double compactionThreshold = 0.5;
+  private Duration compactionInterval = Duration.ofMinutes(1);
+  private boolean memoryMappedReads;
+  private int maxMappedFiles = 256;
+  private Executor loadExecutor;
+  private int loadBatchSize = 256;
+  private StorageFormat format = StorageFormat.JSON;
+  private int compressionThreshold = 512;
+  private final Map<String, IndexType> indexes = new LinkedHashMap<>();
+  private int lockStripes = 64;
+  private AsyncFileWriter asyncWriter;
+  private Duration expirySweepInterval = Duration.ofSeconds(1);
+  private int expirySweepBatchSize = 256;
+
+  private FileMapOptions() {
+  }
+
+  /**
+   * Sets when written files are forced to the storage device.
+   *
+   * @param fsyncPolicy The fsync policy.
+   * @return This options instance.
+   */
+  public FileMapOptions fsyncPolicy(FsyncPolicy fsyncPolicy) {
+    this.fsyncPolicy = fsyncPolicy;
+    return this;
+  }
+
+  /**
+   * Sets the amount of writes after which pending files are forced with {@link FsyncPolicy#BATCHED}.
+   *
+   * @param fsyncBatchSize The amount of writes per fsync batch.
+   * @return This options instance.
+   */
+  public FileMapOptions fsyncBatchSize(int fsyncBatchSize) {
+    if (fsyncBatchSize < 1) {
+      throw new IllegalArgumentException("Fsync batch size must be positive.");
+    }
+    this.fsyncBatchSize = fsyncBatchSize;
+    return this;
+  }
+
+  /**
+   * Sets whether the key index of a map follows files that are created or deleted by other processes.
+   * Without watching, the index only reflects the folder content at creation and changes made through the map.
+   *
+   * @param watchExternalChanges True if the folder should be watched.
+   * @return This options instance.
+   */
+  public FileMapOptions watchExternalChanges(boolean watchExternalChanges) {
+    this.watchExternalChanges = watchExternalChanges;
+    return this;
+  }
+
+  /**
+   * Sets where the files of a map are placed inside its folder.
+   * Changing the layout of an existing map requires a migration with
+   * {@link com.gestankbratwurst.ambrosia.impl.file.FileAmbrosia#migrateLayout(String, Class, FileLayout)}.
+   *
+   * @param layout The file layout.
+   * @return This options instance.
+   */
+  public FileMapOptions layout(FileLayout layout) {
+    this.layout = layout;
+    return this;
+  }
+
+  /**
+   * Sets how the values of a map are stored.
+   * Layout and external change watching only apply to {@link StorageEngine#FOLDER}.
+   *
+   * @param engine The storage engine.
+   * @return This options instance.
+   */
+  public FileMapOptions engine(StorageEngine engine) {
+    this.engine = engine;
+    return this;
+  }
+
+  /**
+   * Sets the size after which a new segment is started with {@link StorageEngine#LOG}.
+   *
+   * @param maxSegmentSize The maximum segment size in bytes.
+   * @return This options instance.
+   */
+  public FileMapOptions maxSegmentSize(long maxSegmentSize) {
+    if (maxSegmentSize < 1) {
+      throw new IllegalArgumentException("Max segment size must be positive.");
+    }
+    this.maxSegmentSize = maxSegmentSize;
+    return this;
+  }
+
+  /**
+   * Sets the share of overwritten and deleted bytes in old segments that triggers a compaction with {@link StorageEngine#LOG}.
+   *
+   * @param compactionThreshold The threshold between 0 and 1.
+   * @return This options instance.
+   */
+  public FileMapOptions compactionThreshold(double compactionThreshold) {
+    if (compactionThreshold < 0 || compactionThreshold > 1) {
+      throw new IllegalArgumentException("Compaction threshold must be between 0 and 1.");
+    }
+    this.compactionThreshold = compactionThreshold;
+    return this;
+  }
+
+  /**
+   * Sets how often the compaction threshold is checked with {@link StorageEngine#LOG}.
+   *
+   * @param compactionInterval The check interval.
+   * @return This options instance.
+   */
+  public FileMapOptions compactionInterval(Duration compactionInterval) {
+    if (compactionInterval.isNegative() || compactionInterval.isZero()) {
+      throw new IllegalArgumentException("Compaction interval must be positive.");
+    }
+    this.compactionInterval = compactionInterval;
+    return this;
+  }
+
+  /**
+   * Sets whether values are read through memory mappings of the stored files instead of copying them.
+   * Mainly pays off for the segments of {@link StorageEngine#LOG}. On Windows, mapped files can not be
+   * replaced while a read is in progress, so concurrent reads and writes of the same key may fail there.
+   *
+   * @param memoryMappedReads True if reads should use memory mappings.
+   * @return This options instance.
+   */
+  public FileMapOptions memoryMappedReads(boolean memoryMappedReads) {
+    this.memoryMappedReads = memoryMappedReads;
+    return this;
+  }
+
+  /**
+   * Sets how many files are kept mapped at most. The least recently used mapping is released first.
+   *
+   * @param maxMappedFiles The maximum amount of mapped files.
+   * @return This options instance.
+   */
+  public FileMapOptions maxMappedFiles(int maxMappedFiles) {
+    if (maxMappedFiles < 1) {
+      throw new IllegalArgumentException("Max mapped files must be positive.");
+    }
+    this.maxMappedFiles = maxMappedFiles;
+    return this;
+  }
+
+  /**
+   * Sets the executor that reads and parses values when a whole map is loaded asynchronously.
+   * Without an executor, a shared pool with one thread per processor is used.
+   *
+   * @param loadExecutor The executor for bulk loads.
+   * @return This options instance.
+   */
+  public FileMapOptions loadExecutor(Executor loadExecutor) {
+    this.loadExecutor = loadExecutor;
+    return this;
+  }
+
+  /**
+   * Sets how many values one task of a bulk load reads.
+   *
+   * @param loadBatchSize The amount of values per task.
+   * @return This options instance.
+   */
+  public FileMapOptions loadBatchSize(int loadBatchSize) {
+    if (loadBatchSize < 1) {
+      throw new IllegalArgumentException("Load batch size must be positive.");
+    }
+    this.loadBatchSize = loadBatchSize;
+    return this;
+  }
+
+  /**
+   * Sets the format new values are written in. Values are read in whatever format they were written,
+   * so the format of an existing map can be changed at any time.
+   *
+   * @param format The storage format.
+   * @return This options instance.
+   */
+  public FileMapOptions format(StorageFormat format) {
+    this.format = format;
+    return this;
+  }
+
+  /**
+   * Sets the serialized size below which values stay plain json with {@link StorageFormat#GZIP} and {@link StorageFormat#DEFLATE}.
+   *
+   * @param compressionThreshold The minimum size in bytes for compression.
+   * @return This options instance.
+   */
+  public FileMapOptions compressionThreshold(int compressionThreshold) {
+    if (compressionThreshold < 0) {
+      throw new IllegalArgumentException("Compression threshold must not be negative.");
+    }
+    this.compressionThreshold = compressionThreshold;
+    return this;
+  }
+
+  /**
+   * Declares an index on a property of the values, which answers property queries without parsing every file.
+   * Nested properties are separated by dots.
+   *
+   * @param property The property to index.
+   * @param type     The type of the index.
+   * @return This options instance.
+   */
+  public FileMapOptions index(String property, IndexType type) {
+    this.indexes.put(property, type);
+    return this;
+  }
+
+  /**
+   * Sets the amount of read write locks shared by the keys of a map. Keys of different stripes are accessed in parallel.
+   *
+   * @param lockStripes The amount of lock stripes, rounded up to a power of two.
+   * @return This options instance.
+   */
+  public FileMapOptions lockStripes(int lockStripes) {
+    if (lockStripes < 1) {
+      throw new IllegalArgumentException("Lock stripes must be positive.");
+    }
+    this.lockStripes = lockStripes;
+    return this;
+  }
+
+  /**
+   * Sets the writer that applies and commits async writes like {@code putAsync}.
+   * Maps without their own writer share a default writer with 2 threads and a commit interval of 10 ms.
+   *
+   * @param asyncWriter The async writer or null for the shared one.
+   * @return This options instance.
+   */
+  public FileMapOptions asyncWriter(AsyncFileWriter asyncWriter) {
+    this.asyncWriter = asyncWriter;
+    return this;
+  }
+
+  /**
+   * Sets how often expired entries are deleted in the background.
+   *
+   * @param expirySweepInterval The delay between two sweeps.
+   * @return This options instance.
+   */
+  public FileMapOptions expirySweepInterval(Duration expirySweepInterval) {
+    if (expirySweepInterval.isNegative() || expirySweepInterval.isZero()) {
+      throw new IllegalArgumentException("Expiry sweep interval must be positive.");
+    }
+    this.expirySweepInterval = expirySweepInterval;
+    return this;
+  }
+
+  /**
+   * Sets the maximum amount of expired entries deleted per sweep, which limits the I/O of the sweeper.
+   *
+   * @param expirySweepBatchSize The maximum amount of deletions per sweep.
+   * @return This options instance.
+   */
+  public FileMapOptions expirySweepBatchSize(int expirySweepBatchSize) {
+    if (expirySweepBatchSize < 1) {
+      throw new IllegalArgumentException("Expiry sweep batch size must be positive.");
+    }
+    this.expirySweepBatchSize = expirySweepBatchSize;
+    return this;
+  }
+
+  public FsyncPolicy getFsyncPolicy() {
+    return this.fsyncPolicy;
+  }
+
+  public int getFsyncBatchSize() {
+    return this.fsyncBatchSize;
+  }
+
+  public boolean isWatchExternalChanges() {
+    return this.watchExternalChanges;
+  }
+
+  public FileLayout getLayout() {
+    return this.layout;
+  }
+
+  public StorageEngine getEngine() {
+    return this.engine;
+  }
+
+  public long getMaxSegmentSize() {
+    return this.maxSegmentSize;
+  }
+
+  public double getCompactionThreshold() {
+    return this.compactionThreshold;
+  }
+
+  public Duration getCompactionInterval() {
+    return this.compactionInterval;
+  }
+
+  public boolean isMemoryMappedReads() {
+    return this.memoryMappedReads;
+  }
+
+  public int getMaxMappedFiles() {
+    return this.maxMappedFiles;
+  }
+
+  public Executor getLoadExecutor() {
+    return this.loadExecutor;
+  }
+
+  public int getLoadBatchSize() {
+    return this.loadBatchSize;
+  }
+
+  public StorageFormat getFormat() {
+    return this.format;
+  }
+
+  public int getCompressionThreshold() {
+    return this.compressionThreshold;
+  }
+
+  public Map<String, IndexType> getIndexes() {
+    return Collections.unmodifiableMap(this.indexes);
+  }
+
+  public int getLockStripes() {
+    return this.lockStripes;
+  }
+
+  public AsyncFileWriter getAsyncWriter() {
+    return this.asyncWriter;
+  }
+
+  public Duration getExpirySweepInterval() {
+    return this.expirySweepInterval;
+  }
+
+  public int getExpirySweepBatchSize() {
+    return this.expirySweepBatchSize;
+  }
+
+  public enum IndexType {
+    /**
+     * Answers exact property lookups.
+     */
+    EQUALITY,
+    /**
+     * Keeps the property values in order, so it also answers range and top list queries.
+     */
+    SORTED
+  }
+
+  public enum StorageFormat {
+    /**
+     * Plain json text.
+     */
+    JSON,
+    /**
+     * Gzip compressed json.
+     */
+    GZIP,
+    /**
+     * Deflate compressed json with a zlib header.
+     */
+    DEFLATE,
+    /**
+     * Compact binary encoded json. Requires a serializer that produces json.
+     */
+    BINARY
+  }
+
+  public enum StorageEngine {
+    /**
+     * Every value is stored as its own json file.
+     */
+    FOLDER,
+    /**
+     * All values are appended to a few segment files, which are compacted in the background.
+     */
+    LOG
+  }
+
+  public enum FsyncPolicy {
+    /**
+     * Files are never forced. The operating system decides when data reaches the disk.
+     */
+    NEVER,
+    /**
+     * Every write is forced before it becomes visible.
+     */
+    PER_WRITE,
+    /**
+     * Written files are forced together after a number of writes or on an explicit flush.
+     * The folder engine still forces every value file before moving it into place and only batches the folders.
+     */
+    BATCHED
+  }
+}
@@ -1,6 +1,13 @@
 package com.gestankbratwurst.ambrosia.impl.file.serializer;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 
 public class GsonStringSerializer implements StringSerializer {
 
@@ -19,4 +26,36 @@ public class GsonStringSerializer implements StringSerializer {
   public <T> T deserialize(String string, Class<T> type) {
     return gson.fromJson(string, type);
   }
+
+  @Override
+  public void serialize(Object object, Writer writer) {
+    try {
+      JsonWriter jsonWriter = gson.newJsonWriter(writer);
+      gson.toJson(object, object == null ? Object.class : object.getClass(), jsonWriter);
+      jsonWriter.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public <T> T deserialize(Reader reader, Class<T> type) {
+    JsonReader jsonReader = gson.newJsonReader(reader);
+    return gson.fromJson(jsonReader, type);
+  }
+
+  @Override
+  public void serialize(Object object, JsonWriter writer) {
+    try {
+      gson.toJson(object, object == null ? Object.class : object.getClass(), writer);
+      writer.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public <T> T deserialize(JsonElement tree, Class<T> type) {
+    return gson.fromJson(tree, type);
+  }
 }
@@ -1,9 +1,108 @@
 package com.gestankbratwurst.ambrosia.impl.file.serializer;
 
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
 public interface StringSerializer {
 
   String serialize(Object object);
 
   <T> T deserialize(String string, Class<T> type);
 
+  /**
+   * Serializes an object to a writer. Serializers that can write streams should override this,
+   * the default implementation builds the whole string first.
+   *
+   * @param object The object to serialize.
+   * @param writer The writer to write to. It is flushed, but not closed.
+   */
+  default void serialize(Object object, Writer writer) {
+    try {
+      writer.write(this.serialize(object));
+      writer.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Serializes an object as UTF-8 to an output stream.
+   *
+   * @param object       The object to serialize.
+   * @param outputStream The stream to write to. It is flushed, but not closed.
+   */
+  default void serialize(Object object, OutputStream outputStream) {
+    this.serialize(object, new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Deserializes an object from a reader. Serializers that can parse streams should override this,
+   * the default implementation reads everything into a string first.
+   *
+   * @param reader The reader to read from.
+   * @param type   The type of the object.
+   * @param <T>    The type of the object.
+   * @return The deserialized object.
+   */
+  default <T> T deserialize(Reader reader, Class<T> type) {
+    StringWriter writer = new StringWriter();
+    try {
+      reader.transferTo(writer);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this.deserialize(writer.toString(), type);
+  }
+
+  /**
+   * Deserializes an object from UTF-8 encoded input.
+   *
+   * @param inputStream The stream to read from.
+   * @param type        The type of the object.
+   * @param <T>         The type of the object.
+   * @return The deserialized object.
+   */
+  default <T> T deserialize(InputStream inputStream, Class<T> type) {
+    return this.deserialize(new InputStreamReader(inputStream, StandardCharsets.UTF_8), type);
+  }
+
+  /**
+   * Serializes an object to a json writer, for example one that encodes binary json.
+   * Serializers that can write json tokens should override this, the default implementation builds the whole string first.
+   *
+   * @param object The object to serialize.
+   * @param writer The writer to write to. It is flushed, but not closed.
+   */
+  default void serialize(Object object, JsonWriter writer) {
+    try {
+      writer.jsonValue(this.serialize(object));
+      writer.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Deserializes an object from a json tree. Serializers that can read trees should override this,
+   * the default implementation writes the tree as a string first.
+   *
+   * @param tree The json tree.
+   * @param type The type of the object.
+   * @param <T>  The type of the object.
+   * @return The deserialized object.
+   */
+  default <T> T deserialize(JsonElement tree, Class<T> type) {
+    return this.deserialize(tree.toString(), type);
+  }
+
 }
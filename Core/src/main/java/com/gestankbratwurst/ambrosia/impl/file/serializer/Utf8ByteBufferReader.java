@@ -0,0 +1,99 @@
+package com.gestankbratwurst.ambrosia.impl.file.serializer;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes UTF-8 straight from a byte buffer, without copying the bytes or building an intermediate string.
+ * Malformed sequences are replaced with U+FFFD.
+ */
+public class Utf8ByteBufferReader extends Reader {
+
+  private static final char replacement = '\uFFFD';
+
+  private final ByteBuffer buffer;
+  private int pendingLowSurrogate = -1;
+
+  public Utf8ByteBufferReader(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  @Override
+  public int read(char[] chars, int offset, int length) {
+    if (length == 0) {
+      return 0;
+    }
+    int end = offset + length;
+    int position = offset;
+    if (this.pendingLowSurrogate >= 0) {
+      chars[position++] = (char) this.pendingLowSurrogate;
+      this.pendingLowSurrogate = -1;
+    }
+    ByteBuffer buffer = this.buffer;
+    while (position < end && buffer.hasRemaining()) {
+      int b = buffer.get();
+      if (b >= 0) {
+        chars[position++] = (char) b;
+        continue;
+      }
+      int codePoint = this.decodeMultiByte(b & 0xFF);
+      if (codePoint < 0x10000) {
+        chars[position++] = (char) codePoint;
+      } else {
+        chars[position++] = Character.highSurrogate(codePoint);
+        char low = Character.lowSurrogate(codePoint);
+        if (position < end) {
+          chars[position++] = low;
+        } else {
+          this.pendingLowSurrogate = low;
+        }
+      }
+    }
+    return position == offset ? -1 : position - offset;
+  }
+
+  private int decodeMultiByte(int lead) {
+    int continuationBytes;
+    int codePoint;
+    int min;
+    if ((lead & 0xE0) == 0xC0) {
+      continuationBytes = 1;
+      codePoint = lead & 0x1F;
+      min = 0x80;
+    } else if ((lead & 0xF0) == 0xE0) {
+      continuationBytes = 2;
+      codePoint = lead & 0x0F;
+      min = 0x800;
+    } else if ((lead & 0xF8) == 0xF0) {
+      continuationBytes = 3;
+      codePoint = lead & 0x07;
+      min = 0x10000;
+    } else {
+      return replacement;
+    }
+    for (int i = 0; i < continuationBytes; i++) {
+      if (!this.buffer.hasRemaining()) {
+        return replacement;
+      }
+      int next = this.buffer.get(this.buffer.position()) & 0xFF;
+      if ((next & 0xC0) != 0x80) {
+        return replacement;
+      }
+      this.buffer.get();
+      codePoint = (codePoint << 6) | (next & 0x3F);
+    }
+    if (codePoint < min || codePoint > Character.MAX_CODE_POINT || (codePoint >= 0xD800 && codePoint <= 0xDFFF)) {
+      return replacement;
+    }
+    return codePoint;
+  }
+
+  @Override
+  public boolean ready() {
+    return this.pendingLowSurrogate >= 0 || this.buffer.hasRemaining();
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,109 @@
+package com.gestankbratwurst.ambrosia.impl.file.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes snapshot archives and restores folders from them.
+ * An archive is a zip file holding the changed files and the manifest of the snapshot.
+ */
+public final class SnapshotArchive {
+
+  private SnapshotArchive() {
+  }
+
+  /**
+   * Archives the linked files of a snapshot. Written to a temporary file first, so a failed snapshot never
+   * replaces an existing archive.
+   *
+   * @param staging The folder holding the linked files.
+   * @param base    The manifest of the previous snapshot or null for a full snapshot.
+   * @param archive The archive to write.
+   * @return The manifest of the snapshot.
+   */
+  public static SnapshotManifest write(Path staging, SnapshotManifest base, Path archive) throws IOException {
+    SnapshotManifest manifest = SnapshotManifest.scan(staging);
+    Path tempArchive = archive.resolveSibling(archive.getFileName() + ".tmp");
+    try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tempArchive), 1 << 16))) {
+      zip.setLevel(Deflater.BEST_SPEED);
+      for (String name : manifest.getFiles()) {
+        if (manifest.isChanged(name, base)) {
+          zip.putNextEntry(new ZipEntry(name));
+          Files.copy(staging.resolve(name), zip);
+          zip.closeEntry();
+        }
+      }
+      zip.putNextEntry(new ZipEntry(SnapshotManifest.ENTRY_NAME));
+      manifest.write(zip);
+      zip.closeEntry();
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(tempArchive);
+      throw e;
+    }
+    try {
+      Files.move(tempArchive, archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tempArchive, archive, StandardCopyOption.REPLACE_EXISTING);
+    }
+    return manifest;
+  }
+
+  /**
+   * Restores a folder from a full snapshot and the incremental snapshots taken after it, in order.
+   * Files that are not part of the last snapshot are deleted, so the folder must not be used for anything else.
+   * No map of the folder may be open while restoring.
+   *
+   * @param folder   The folder to restore into.
+   * @param archives The full snapshot followed by its incremental snapshots.
+   */
+  public static void restore(Path folder, List<Path> archives) {
+    try {
+      Files.createDirectories(folder);
+      Path root = folder.toAbsolutePath().normalize();
+      for (Path archive : archives) {
+        SnapshotManifest manifest;
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+          manifest = SnapshotManifest.read(archive);
+          Enumeration<? extends ZipEntry> entries = zipFile.entries();
+          while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.getName().equals(SnapshotManifest.ENTRY_NAME)) {
+              continue;
+            }
+            Path target = root.resolve(entry.getName()).normalize();
+            if (!target.startsWith(root)) {
+              throw new IllegalArgumentException("Snapshot entry outside of the folder: " + entry.getName());
+            }
+            Files.createDirectories(target.getParent());
+            try (InputStream inputStream = zipFile.getInputStream(entry)) {
+              Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+          }
+        }
+        for (Path path : SnapshotFiles.listFiles(root)) {
+          if (!manifest.getFiles().contains(SnapshotFiles.relativeName(root, path))) {
+            Files.delete(path);
+          }
+        }
+        for (String name : manifest.getFiles()) {
+          if (!Files.exists(root.resolve(name))) {
+            throw new IllegalStateException("Missing file " + name + ", restore the previous snapshots of " + archive + " first.");
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to restore snapshot into: " + folder, e);
+    }
+  }
+}
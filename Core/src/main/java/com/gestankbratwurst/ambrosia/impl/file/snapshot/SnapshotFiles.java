@@ -0,0 +1,74 @@
+package com.gestankbratwurst.ambrosia.impl.file.snapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * File helpers for snapshots. Files are hard linked where possible, which takes no time and no space.
+ * Every storage replaces files instead of changing them, so a link keeps the content it had when it was created.
+ */
+public final class SnapshotFiles {
+
+  private static final String tempExtension = ".tmp";
+
+  private SnapshotFiles() {
+  }
+
+  /**
+   * Hard links a file, or copies it if links are not supported.
+   *
+   * @param source The file to link.
+   * @param target The link to create. Missing parent folders are created.
+   */
+  public static void linkOrCopy(Path source, Path target) throws IOException {
+    Files.createDirectories(target.getParent());
+    try {
+      Files.createLink(target, source);
+    } catch (UnsupportedOperationException | IOException e) {
+      Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+  }
+
+  /**
+   * Links all files of a folder, except for temporary files.
+   *
+   * @param source The folder to link.
+   * @param target The folder to link into.
+   */
+  public static void linkTree(Path source, Path target) throws IOException {
+    for (Path path : listFiles(source)) {
+      if (!path.getFileName().toString().endsWith(tempExtension)) {
+        linkOrCopy(path, target.resolve(source.relativize(path)));
+      }
+    }
+  }
+
+  static List<Path> listFiles(Path folder) throws IOException {
+    try (Stream<Path> files = Files.walk(folder)) {
+      return files.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+  }
+
+  public static void deleteTree(Path folder) {
+    if (!Files.exists(folder)) {
+      return;
+    }
+    try (Stream<Path> files = Files.walk(folder)) {
+      for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(path);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to delete folder: " + folder, e);
+    }
+  }
+
+  static String relativeName(Path folder, Path path) {
+    return folder.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+  }
+}
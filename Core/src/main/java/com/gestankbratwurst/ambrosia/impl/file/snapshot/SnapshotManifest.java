@@ -0,0 +1,102 @@
+package com.gestankbratwurst.ambrosia.impl.file.snapshot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Lists every file of a snapshot with a version made of its size, modification time and file key.
+ * Incremental snapshots only contain the files whose version differs from the manifest of the previous snapshot.
+ */
+public final class SnapshotManifest {
+
+  public static final String ENTRY_NAME = "ambrosia-snapshot.manifest";
+
+  private final Map<String, String> versions;
+
+  private SnapshotManifest(Map<String, String> versions) {
+    this.versions = versions;
+  }
+
+  /**
+   * Reads the manifest of a snapshot archive.
+   *
+   * @param archive The snapshot archive.
+   * @return The manifest of the archive.
+   */
+  public static SnapshotManifest read(Path archive) {
+    try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+      ZipEntry entry = zipFile.getEntry(ENTRY_NAME);
+      if (entry == null) {
+        throw new IllegalArgumentException("Not a snapshot archive: " + archive);
+      }
+      try (InputStream inputStream = zipFile.getInputStream(entry)) {
+        return parse(inputStream);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  static SnapshotManifest scan(Path folder) throws IOException {
+    Map<String, String> versions = new TreeMap<>();
+    for (Path path : SnapshotFiles.listFiles(folder)) {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      Object fileKey = attributes.fileKey();
+      String version = attributes.size() + "-" + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+          + "-" + (fileKey == null ? "" : fileKey.toString().replace(' ', '_'));
+      versions.put(SnapshotFiles.relativeName(folder, path), version);
+    }
+    return new SnapshotManifest(versions);
+  }
+
+  static SnapshotManifest parse(InputStream inputStream) throws IOException {
+    Map<String, String> versions = new TreeMap<>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      int separator = line.indexOf(' ');
+      if (separator > 0) {
+        versions.put(line.substring(separator + 1), line.substring(0, separator));
+      }
+    }
+    return new SnapshotManifest(versions);
+  }
+
+  void write(OutputStream outputStream) throws IOException {
+    StringBuilder builder = new StringBuilder();
+    this.versions.forEach((name, version) -> builder.append(version).append(' ').append(name).append('\n'));
+    outputStream.write(builder.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Checks if a file changed since a previous snapshot.
+   *
+   * @param name The name of the file.
+   * @param base The manifest of the previous snapshot or null for full snapshots.
+   * @return True if the file is new or changed.
+   */
+  boolean isChanged(String name, SnapshotManifest base) {
+    return base == null || !this.versions.get(name).equals(base.versions.get(name));
+  }
+
+  /**
+   * @return The names of all files in the snapshot, including unchanged files of incremental snapshots.
+   */
+  public Set<String> getFiles() {
+    return Collections.unmodifiableSet(this.versions.keySet());
+  }
+}
@@ -0,0 +1,110 @@
+package com.gestankbratwurst.ambrosia.impl.file.storage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Applies writes on a small pool of I/O threads and forces them in groups, once per commit interval.
+ * A single writer can be shared by many maps.
+ */
+public class AsyncFileWriter implements AutoCloseable {
+
+  private final ScheduledExecutorService executor;
+  private final Queue<Commit<?>> commitGroup;
+
+  public AsyncFileWriter(int threads, Duration commitInterval) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Writer threads must be positive.");
+    }
+    AtomicInteger counter = new AtomicInteger();
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+      Thread thread = new Thread(runnable, "Ambrosia-FileWriter-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    this.executor = executor;
+    this.commitGroup = new ConcurrentLinkedQueue<>();
+    long interval = Math.max(1, commitInterval.toMillis());
+    this.executor.scheduleWithFixedDelay(this::commit, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  private record Commit<K>(FileStorage<K> storage, K key, CompletableFuture<Void> future) {
+  }
+
+  /**
+   * Applies a write on an I/O thread and completes its future once it is durable.
+   *
+   * @param storage The storage that is written to.
+   * @param key     The written key.
+   * @param write   Applies the write. Returns false if the write was superseded and is completed elsewhere.
+   * @param future  Completed once the write is durable, or exceptionally if it failed.
+   * @param <K>     The type of the keys.
+   */
+  public <K> void submit(FileStorage<K> storage, K key, BooleanSupplier write, CompletableFuture<Void> future) {
+    try {
+      this.executor.execute(() -> {
+        try {
+          if (write.getAsBoolean()) {
+            this.commitGroup.add(new Commit<>(storage, key, future));
+          }
+        } catch (RuntimeException e) {
+          future.completeExceptionally(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(new IllegalStateException("Async file writer is closed.", e));
+    }
+  }
+
+  /**
+   * Forces all writes applied since the last commit, grouped by their storage.
+   */
+  private void commit() {
+    Map<FileStorage<?>, List<Commit<?>>> commits = new IdentityHashMap<>();
+    Commit<?> commit;
+    while ((commit = this.commitGroup.poll()) != null) {
+      commits.computeIfAbsent(commit.storage(), ignored -> new ArrayList<>()).add(commit);
+    }
+    commits.values().forEach(AsyncFileWriter::sync);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K> void sync(List<Commit<?>> commits) {
+    List<Commit<K>> typedCommits = (List<Commit<K>>) (List<?>) commits;
+    try {
+      typedCommits.get(0).storage().sync(typedCommits.stream().map(Commit::key).toList());
+      typedCommits.forEach(commit -> commit.future().complete(null));
+    } catch (RuntimeException e) {
+      typedCommits.forEach(commit -> commit.future().completeExceptionally(e));
+    }
+  }
+
+  /**
+   * Applies all submitted writes, commits them and stops the I/O threads.
+   */
+  @Override
+  public void close() {
+    this.executor.shutdown();
+    try {
+      if (!this.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        throw new IllegalStateException("Timed out waiting for async writes.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    this.commit();
+  }
+}
@@ -0,0 +1,132 @@
+package com.gestankbratwurst.ambrosia.impl.file.storage;
+
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileKeyCodec;
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Stores the serialized values of a {@link com.gestankbratwurst.ambrosia.impl.file.collections.FileMap}.
+ * Every storage keeps all of its keys in memory.
+ *
+ * @param <K> The type of the keys.
+ */
+public interface FileStorage<K> extends AutoCloseable {
+
+  /**
+   * Opens the storage engine selected in the options.
+   *
+   * @param folder   The folder of the map.
+   * @param keyCodec The key codec of the map.
+   * @param options  The options of the map.
+   * @param <K>      The type of the keys.
+   * @return The opened storage.
+   */
+  static <K> FileStorage<K> open(Path folder, FileKeyCodec<K> keyCodec, FileMapOptions options) {
+    return switch (options.getEngine()) {
+      case FOLDER -> new FolderStorage<>(folder, keyCodec, options);
+      case LOG -> new LogStorage<>(folder, keyCodec, options);
+    };
+  }
+
+  /**
+   * Reads the stored bytes of a key and decodes them.
+   * The buffer may be memory mapped and must not be used after the decoder returns.
+   *
+   * @param key     The key to read.
+   * @param decoder Decodes the bytes of the value.
+   * @param <T>     The type of the decoded value.
+   * @return The decoded value or null if the key does not exist.
+   */
+  <T> T read(K key, Function<ByteBuffer, T> decoder);
+
+  /**
+   * Reads a copy of the stored bytes of a key.
+   *
+   * @param key The key to read.
+   * @return The bytes of the value or null if the key does not exist.
+   */
+  default ByteBuffer read(K key) {
+    return this.read(key, buffer -> ByteBuffer.allocate(buffer.remaining()).put(buffer).flip());
+  }
+
+  /**
+   * Writes a value, replacing the previous value.
+   * The value is streamed into the storage, so it is never held as a whole if the storage doesn't need to.
+   *
+   * @param key    The key to write.
+   * @param writer Writes the bytes of the value.
+   */
+  void write(K key, ValueWriter writer);
+
+  /**
+   * Writes the bytes of a value, replacing the previous value.
+   *
+   * @param key   The key to write.
+   * @param value The bytes of the value.
+   */
+  default void write(K key, byte[] value) {
+    this.write(key, outputStream -> outputStream.write(value));
+  }
+
+  /**
+   * Deletes the value of a key.
+   *
+   * @param key The key to delete.
+   * @return True if the key existed.
+   */
+  boolean delete(K key);
+
+  boolean contains(K key);
+
+  /**
+   * @return The folder of the map, which also holds sidecar files like indexes.
+   */
+  Path getFolder();
+
+  /**
+   * @return An unmodifiable live view of all keys.
+   */
+  Set<K> keys();
+
+  int size();
+
+  void clear();
+
+  /**
+   * Forces all pending writes to the storage device.
+   */
+  void flush();
+
+  /**
+   * Forces the values of some keys to the storage device, regardless of the fsync policy.
+   * Deleted keys are forced as well, so their removal is durable.
+   *
+   * @param keys The keys to force.
+   */
+  void sync(Collection<K> keys);
+
+  /**
+   * Links all stored files into an empty folder, or copies them where links are not supported.
+   * Stored files are replaced instead of changed in place, so the links keep their content while the storage changes.
+   * Writes must be paused while the files are linked.
+   *
+   * @param target The folder to link the files into.
+   */
+  void snapshot(Path target);
+
+  @Override
+  void close();
+
+  @FunctionalInterface
+  interface ValueWriter {
+    void writeTo(OutputStream outputStream) throws IOException;
+  }
+
+}
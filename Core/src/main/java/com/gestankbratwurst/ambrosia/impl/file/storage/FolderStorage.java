@@ -0,0 +1,386 @@
+package com.gestankbratwurst.ambrosia.impl.file.storage;
+
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileKeyCodec;
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileLayout;
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
+import com.gestankbratwurst.ambrosia.impl.file.snapshot.SnapshotFiles;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Stores every value as its own file, placed according to the {@link FileLayout} of the map
+ * and named by its {@link FileKeyCodec}.
+ * The key index is built once on creation and updated on every write through this storage.
+ *
+ * @param <K> The type of the keys.
+ */
+public class FolderStorage<K> implements FileStorage<K> {
+
+  private static final String jsonExtension = FileKeyCodec.VALUE_EXTENSION;
+  private static final String tempExtension = ".tmp";
+  private static final AtomicLong tempCounter = new AtomicLong();
+
+  private final Path folder;
+  private final FileKeyCodec<K> keyCodec;
+  private final FileLayout layout;
+  private final FileMapOptions.FsyncPolicy fsyncPolicy;
+  private final int fsyncBatchSize;
+  private final Set<Path> unsyncedFiles;
+  private final Set<K> keyIndex;
+  private final FolderWatcher folderWatcher;
+  private final MappedFileCache<Path> mappedFiles;
+
+  public FolderStorage(Path folder, FileKeyCodec<K> keyCodec, FileMapOptions options) {
+    this.folder = folder;
+    this.keyCodec = keyCodec;
+    this.layout = options.getLayout();
+    this.fsyncPolicy = options.getFsyncPolicy();
+    this.fsyncBatchSize = options.getFsyncBatchSize();
+    this.unsyncedFiles = ConcurrentHashMap.newKeySet();
+    this.keyIndex = ConcurrentHashMap.newKeySet();
+    this.mappedFiles = options.isMemoryMappedReads() ? new MappedFileCache<>(options.getMaxMappedFiles()) : null;
+    this.deleteTempFiles();
+    this.rebuildKeyIndex();
+    if (options.isWatchExternalChanges()) {
+      this.folderWatcher = new FolderWatcher(folder, this.layout.getDepth(), this::onExternalChange, this::rebuildKeyIndex);
+    } else {
+      this.folderWatcher = null;
+    }
+  }
+
+  /**
+   * Removes temporary files left behind by writes that were interrupted by a crash.
+   */
+  private void deleteTempFiles() {
+    for (Path tempFile : this.layout.list(this.folder, tempExtension)) {
+      this.deleteFile(tempFile);
+    }
+  }
+
+  /**
+   * Rebuilds the key index from the files in the folder.
+   */
+  private void rebuildKeyIndex() {
+    Set<K> keys = new HashSet<>();
+    for (Path path : this.layout.list(this.folder, jsonExtension)) {
+      K key = this.keyCodec.decodeFile(path);
+      if (key != null) {
+        keys.add(key);
+      }
+    }
+    this.keyIndex.retainAll(keys);
+    this.keyIndex.addAll(keys);
+  }
+
+  private void onExternalChange(Path path) {
+    if (!path.getFileName().toString().endsWith(jsonExtension)) {
+      return;
+    }
+    K key = this.keyCodec.decodeFile(path);
+    if (key == null) {
+      // The sidecar of a hashed file is already gone, so the key can only be found by a full scan.
+      this.rebuildKeyIndex();
+      return;
+    }
+    // Events may arrive late, so the file system is the source of truth.
+    if (Files.exists(path)) {
+      this.keyIndex.add(key);
+    } else {
+      this.keyIndex.remove(key);
+    }
+  }
+
+  /**
+   * Stops watching the folder for external changes, if enabled, and flushes pending writes.
+   */
+  @Override
+  public void close() {
+    if (this.folderWatcher != null) {
+      this.folderWatcher.close();
+    }
+    if (this.mappedFiles != null) {
+      this.mappedFiles.close();
+    }
+    this.flush();
+  }
+
+  private Path getPath(K key) {
+    return this.layout.resolve(this.folder, this.keyCodec.fileName(key) + jsonExtension);
+  }
+
+  /**
+   * Identifies a version of a file. Replacing a file always creates a new one, so its file key changes.
+   */
+  private record FileStamp(Object fileKey, FileTime modified, long size) {
+  }
+
+  /**
+   * Reads the file of a key without checking for its existence first.
+   * The file is read even if the key is not indexed, so files added by other processes are found
+   * and the index is corrected on the fly.
+   *
+   * @param key     The key to read.
+   * @param decoder Decodes the content of the file.
+   * @return The decoded content of the file or null if it does not exist.
+   */
+  @Override
+  public <T> T read(K key, Function<ByteBuffer, T> decoder) {
+    Path path = this.getPath(key);
+    try {
+      T value;
+      if (this.mappedFiles == null) {
+        value = decoder.apply(ByteBuffer.wrap(Files.readAllBytes(path)));
+      } else {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        FileStamp stamp = new FileStamp(attributes.fileKey(), attributes.lastModifiedTime(), attributes.size());
+        value = this.mappedFiles.read(path, stamp, attributes.size(), () -> {
+          try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+          }
+        }, decoder);
+      }
+      this.keyIndex.add(key);
+      return value;
+    } catch (NoSuchFileException e) {
+      this.keyIndex.remove(key);
+      if (this.mappedFiles != null) {
+        this.mappedFiles.invalidate(path);
+      }
+      return null;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Writes the value of a key. Hashed file names get a sidecar holding the full key name,
+   * which is written before the value so a value file can always be traced back to its key.
+   *
+   * @param key    The key of the value.
+   * @param writer Writes the content of the file.
+   */
+  @Override
+  public void write(K key, ValueWriter writer) {
+    String name = this.keyCodec.encode(key);
+    String fileName = this.keyCodec.fileName(name);
+    Path path = this.layout.resolve(this.folder, fileName + jsonExtension);
+    if (FileKeyCodec.isHashed(fileName)) {
+      Path sidecar = FileKeyCodec.sidecar(path);
+      if (!Files.exists(sidecar)) {
+        this.writeFile(sidecar, outputStream -> outputStream.write(name.getBytes(StandardCharsets.UTF_8)));
+      }
+    }
+    if (this.mappedFiles != null) {
+      this.mappedFiles.invalidate(path);
+    }
+    this.writeFile(path, writer);
+    this.keyIndex.add(key);
+  }
+
+  /**
+   * Writes the content to a temporary file in the same folder and moves it over the target file.
+   * Readers either see the old or the new content, but never a missing or truncated file.
+   * Missing shard folders are created on demand.
+   *
+   * @param path   The target file.
+   * @param writer Writes the content, streamed through a buffer into the temporary file.
+   */
+  private void writeFile(Path path, ValueWriter writer) {
+    Path tempPath = path.resolveSibling(path.getFileName() + "." + tempCounter.incrementAndGet() + tempExtension);
+    try {
+      try (FileChannel channel = this.openTempFile(tempPath)) {
+        // Not closed, as that would close the channel before it is forced.
+        OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(channel), 8192);
+        writer.writeTo(outputStream);
+        outputStream.flush();
+        // Forced before the move, so a crash can't leave a renamed but empty file behind. Batches only defer the folder.
+        if (this.fsyncPolicy != FileMapOptions.FsyncPolicy.NEVER) {
+          channel.force(false);
+        }
+      }
+      try {
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException | RuntimeException e) {
+      try {
+        Files.deleteIfExists(tempPath);
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e);
+    }
+
+    if (this.fsyncPolicy == FileMapOptions.FsyncPolicy.PER_WRITE) {
+      this.forceFolder(path.getParent());
+    } else if (this.fsyncPolicy == FileMapOptions.FsyncPolicy.BATCHED) {
+      this.unsyncedFiles.add(path);
+      if (this.unsyncedFiles.size() >= this.fsyncBatchSize) {
+        this.flush();
+      }
+    }
+  }
+
+  private FileChannel openTempFile(Path tempPath) throws IOException {
+    try {
+      return FileChannel.open(tempPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    } catch (NoSuchFileException e) {
+      Files.createDirectories(tempPath.getParent());
+      return FileChannel.open(tempPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+  }
+
+  /**
+   * Forces a folder itself, so renames and deletions are persisted.
+   * Not every platform supports this, in which case it is skipped.
+   *
+   * @param folder The folder to force.
+   */
+  private void forceFolder(Path folder) {
+    try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException ignored) {
+      // Opening directories is not supported on every platform.
+    }
+  }
+
+  /**
+   * Forces the folders of all files written since the last flush, so their renames are persisted.
+   * The files themselves are already forced before they are moved into place.
+   * Only has an effect with {@link FileMapOptions.FsyncPolicy#BATCHED}.
+   */
+  @Override
+  public void flush() {
+    if (this.unsyncedFiles.isEmpty()) {
+      return;
+    }
+    Set<Path> folders = new LinkedHashSet<>();
+    for (Path path : this.unsyncedFiles) {
+      this.unsyncedFiles.remove(path);
+      folders.add(path.getParent());
+    }
+    folders.forEach(this::forceFolder);
+  }
+
+  /**
+   * Forces the files of some keys and their folders, so written and deleted files are both persisted.
+   *
+   * @param keys The keys to force.
+   */
+  @Override
+  public void sync(Collection<K> keys) {
+    Set<Path> folders = new LinkedHashSet<>();
+    for (K key : keys) {
+      String fileName = this.keyCodec.fileName(key);
+      Path path = this.layout.resolve(this.folder, fileName + jsonExtension);
+      this.unsyncedFiles.remove(path);
+      folders.add(path.getParent());
+      if (FileKeyCodec.isHashed(fileName)) {
+        this.forceFile(FileKeyCodec.sidecar(path));
+      }
+      this.forceFile(path);
+    }
+    folders.forEach(this::forceFolder);
+  }
+
+  @Override
+  public void snapshot(Path target) {
+    try {
+      for (Path path : this.layout.list(this.folder, jsonExtension)) {
+        Path relativePath = this.folder.relativize(path);
+        SnapshotFiles.linkOrCopy(path, target.resolve(relativePath));
+        Path sidecar = FileKeyCodec.sidecar(path);
+        if (Files.exists(sidecar)) {
+          SnapshotFiles.linkOrCopy(sidecar, target.resolve(this.folder.relativize(sidecar)));
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to snapshot folder storage: " + this.folder, e);
+    }
+  }
+
+  private void forceFile(Path path) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.force(false);
+    } catch (NoSuchFileException ignored) {
+      // Removed since it was written.
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public boolean delete(K key) {
+    Path path = this.getPath(key);
+    if (this.mappedFiles != null) {
+      this.mappedFiles.invalidate(path);
+    }
+    boolean deleted = this.deleteFile(path);
+    this.deleteFile(FileKeyCodec.sidecar(path));
+    this.keyIndex.remove(key);
+    return deleted;
+  }
+
+  private boolean deleteFile(Path path) {
+    try {
+      return Files.deleteIfExists(path);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to delete file: " + path, e);
+    }
+  }
+
+  @Override
+  public Path getFolder() {
+    return this.folder;
+  }
+
+  @Override
+  public boolean contains(K key) {
+    return this.keyIndex.contains(key);
+  }
+
+  @Override
+  public Set<K> keys() {
+    return Collections.unmodifiableSet(this.keyIndex);
+  }
+
+  @Override
+  public int size() {
+    return this.keyIndex.size();
+  }
+
+  @Override
+  public void clear() {
+    if (this.mappedFiles != null) {
+      this.mappedFiles.invalidateAll();
+    }
+    for (Path path : this.layout.list(this.folder, jsonExtension)) {
+      this.deleteFile(path);
+      this.deleteFile(FileKeyCodec.sidecar(path));
+    }
+    this.keyIndex.clear();
+  }
+}
@@ -0,0 +1,117 @@
+package com.gestankbratwurst.ambrosia.impl.file.storage;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Watches a folder and its subfolders up to a given depth for files created or deleted by other processes.
+ * Events are handled on a daemon thread until the watcher is closed.
+ */
+class FolderWatcher implements AutoCloseable {
+
+  private final Path root;
+  private final int depth;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> watchedFolders;
+  private final Thread thread;
+
+  /**
+   * @param root            The folder to watch.
+   * @param depth           The depth of subfolders to watch, 0 to only watch the folder itself.
+   * @param changeHandler   Called with the path of every created, deleted or modified file.
+   * @param overflowHandler Called if events were lost and the folder needs to be rescanned.
+   */
+  FolderWatcher(Path root, int depth, Consumer<Path> changeHandler, Runnable overflowHandler) {
+    this.root = root;
+    this.depth = depth;
+    this.watchedFolders = new ConcurrentHashMap<>();
+    try {
+      this.watchService = root.getFileSystem().newWatchService();
+      this.registerAll(root);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to watch folder: " + root, e);
+    }
+    this.thread = new Thread(() -> this.run(changeHandler, overflowHandler), "Ambrosia-FolderWatcher-" + root.getFileName());
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  private int level(Path path) {
+    return path.equals(this.root) ? 0 : this.root.relativize(path).getNameCount();
+  }
+
+  /**
+   * Registers a folder and all its subfolders within the watched depth.
+   *
+   * @param folder The folder to register.
+   * @return All files found in the registered folders.
+   */
+  private List<Path> registerAll(Path folder) throws IOException {
+    int level = this.level(folder);
+    if (level > this.depth) {
+      return List.of();
+    }
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(folder, this.depth - level + 1)) {
+      paths = walk.collect(Collectors.toList());
+    }
+    for (Path path : paths) {
+      if (Files.isDirectory(path) && this.level(path) <= this.depth) {
+        WatchKey key = path.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watchedFolders.put(key, path);
+      }
+    }
+    return paths.stream().filter(Files::isRegularFile).collect(Collectors.toList());
+  }
+
+  private void run(Consumer<Path> changeHandler, Runnable overflowHandler) {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        WatchKey key = this.watchService.take();
+        Path folder = this.watchedFolders.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW || folder == null) {
+            overflowHandler.run();
+            continue;
+          }
+          Path path = folder.resolve((Path) event.context());
+          if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+            // Files might have been moved in before the new folder was registered.
+            this.registerAll(path).forEach(changeHandler);
+          } else {
+            changeHandler.accept(path);
+          }
+        }
+        if (!key.reset()) {
+          this.watchedFolders.remove(key);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException ignored) {
+      // Watcher was closed.
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    this.thread.interrupt();
+    try {
+      this.watchService.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,847 @@
+package com.gestankbratwurst.ambrosia.impl.file.storage;
+
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileKeyCodec;
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
+import com.gestankbratwurst.ambrosia.impl.file.snapshot.SnapshotFiles;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Appends all values of a map to segment files, similar to Bitcask.
+ * Records are laid out as {@code crc32 | key length | value length | key | value}, where -1 marks a deletion.
+ * Sealed segments get a hint file for fast startup and are compacted in the background.
+ *
+ * @param <K> The type of the keys.
+ */
+public class LogStorage<K> implements FileStorage<K> {
+
+  private static final String segmentExtension = ".seg";
+  private static final String hintExtension = ".hint";
+  private static final String tempExtension = ".tmp";
+  private static final int headerSize = 12;
+  private static final int tombstone = -1;
+  private static final long hintTrailer = -1;
+
+  private final Path folder;
+  private final FileKeyCodec<K> keyCodec;
+  private final FileMapOptions.FsyncPolicy fsyncPolicy;
+  private final int fsyncBatchSize;
+  private final long maxSegmentSize;
+  private final double compactionThreshold;
+  private final Map<K, Location> index;
+  private final NavigableMap<Long, Segment> segments;
+  private final ReadWriteLock segmentLock;
+  private final Object appendLock;
+  private final Object compactionLock;
+  private final ScheduledExecutorService executor;
+  private final MappedFileCache<Long> mappedSegments;
+  private volatile Segment activeSegment;
+  private volatile boolean closed;
+  private int unsyncedWrites;
+  private long unsyncedSegmentId;
+
+  public LogStorage(Path folder, FileKeyCodec<K> keyCodec, FileMapOptions options) {
+    this.folder = folder;
+    this.keyCodec = keyCodec;
+    this.fsyncPolicy = options.getFsyncPolicy();
+    this.fsyncBatchSize = options.getFsyncBatchSize();
+    this.maxSegmentSize = options.getMaxSegmentSize();
+    this.compactionThreshold = options.getCompactionThreshold();
+    this.index = new ConcurrentHashMap<>();
+    this.segments = new ConcurrentSkipListMap<>();
+    this.segmentLock = new ReentrantReadWriteLock();
+    this.appendLock = new Object();
+    this.compactionLock = new Object();
+    this.mappedSegments = options.isMemoryMappedReads() ? new MappedFileCache<>(options.getMaxMappedFiles()) : null;
+    this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "Ambrosia-LogStorage-" + folder.getFileName());
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      Files.createDirectories(folder);
+      this.load();
+    } catch (IOException e) {
+      this.executor.shutdownNow();
+      for (Segment segment : this.segments.values()) {
+        try {
+          segment.channel.close();
+        } catch (IOException suppressed) {
+          e.addSuppressed(suppressed);
+        }
+      }
+      throw new RuntimeException("Failed to open log storage: " + folder, e);
+    }
+    long interval = options.getCompactionInterval().toMillis();
+    this.executor.scheduleWithFixedDelay(this::compactIfNeeded, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  private record Location(long segmentId, long offset, int keyLength, int valueLength) {
+
+    private int recordSize() {
+      return headerSize + this.keyLength + Math.max(this.valueLength, 0);
+    }
+  }
+
+  private static final class Segment {
+
+    private final long id;
+    private final Path path;
+    private final FileChannel channel;
+    private final AtomicLong deadBytes;
+    private volatile long size;
+
+    private Segment(long id, Path path, FileChannel channel, long size) {
+      this.id = id;
+      this.path = path;
+      this.channel = channel;
+      this.deadBytes = new AtomicLong();
+      this.size = size;
+    }
+  }
+
+  @FunctionalInterface
+  private interface RecordVisitor {
+    void visit(long offset, byte[] key, byte[] value) throws IOException;
+  }
+
+  private Path segmentPath(long id) {
+    return this.folder.resolve(String.format("%010d", id) + segmentExtension);
+  }
+
+  private Path hintPath(long id) {
+    return this.folder.resolve(String.format("%010d", id) + hintExtension);
+  }
+
+  private Segment openSegment(long id) throws IOException {
+    Path path = this.segmentPath(id);
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    Segment segment = new Segment(id, path, channel, channel.size());
+    this.segments.put(id, segment);
+    return segment;
+  }
+
+  /**
+   * Opens all segments and rebuilds the index, from hint files where possible.
+   * A torn record at the end of the newest segment, left behind by a crash, is cut off.
+   * A corrupt record in an older segment fails the load instead.
+   */
+  private void load() throws IOException {
+    List<Long> ids;
+    try (Stream<Path> files = Files.list(this.folder)) {
+      List<Path> paths = files.collect(Collectors.toList());
+      for (Path path : paths) {
+        if (path.getFileName().toString().endsWith(tempExtension)) {
+          Files.delete(path);
+        }
+      }
+      ids = paths.stream()
+          .map(path -> path.getFileName().toString())
+          .filter(name -> name.endsWith(segmentExtension))
+          .map(name -> Long.parseLong(name.substring(0, name.length() - segmentExtension.length())))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+
+    for (int i = 0; i < ids.size(); i++) {
+      Segment segment = this.openSegment(ids.get(i));
+      boolean newest = i == ids.size() - 1;
+      if (newest) {
+        // The newest segment is appended to, so its hint would be outdated once it is sealed again.
+        Files.deleteIfExists(this.hintPath(segment.id));
+      } else if (Files.exists(this.hintPath(segment.id)) && this.loadHint(segment)) {
+        continue;
+      }
+      long validSize = this.scan(segment, (offset, key, value) -> this.indexRecord(segment, offset, key, value == null ? tombstone : value.length));
+      if (validSize < segment.size) {
+        if (!newest) {
+          // Only the newest segment can end in a torn write. Cutting a sealed one would bring back older values.
+          throw new IOException("Corrupt record in sealed segment " + segment.path + " at offset " + validSize);
+        }
+        segment.channel.truncate(validSize);
+        segment.size = validSize;
+      }
+      if (!newest) {
+        this.executor.execute(() -> this.writeHint(segment));
+      }
+    }
+
+    this.activeSegment = ids.isEmpty() ? this.openSegment(0) : this.segments.lastEntry().getValue();
+    if (this.activeSegment.size >= this.maxSegmentSize) {
+      this.roll();
+    }
+  }
+
+  private void indexRecord(Segment segment, long offset, byte[] key, int valueLength) {
+    K decodedKey = this.keyCodec.decode(new String(key, StandardCharsets.UTF_8));
+    Location location = new Location(segment.id, offset, key.length, valueLength);
+    Location old;
+    if (valueLength == tombstone) {
+      old = this.index.remove(decodedKey);
+      segment.deadBytes.addAndGet(location.recordSize());
+    } else {
+      old = this.index.put(decodedKey, location);
+    }
+    if (old != null) {
+      this.markDead(old);
+    }
+  }
+
+  private void markDead(Location location) {
+    Segment segment = this.segments.get(location.segmentId());
+    if (segment != null) {
+      segment.deadBytes.addAndGet(location.recordSize());
+    }
+  }
+
+  /**
+   * Reads all valid records of a segment in order.
+   *
+   * @return The size of the valid part of the segment.
+   */
+  private long scan(Segment segment, RecordVisitor visitor) throws IOException {
+    long offset = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.path), 1 << 16))) {
+      while (true) {
+        int checksum;
+        int keyLength;
+        int valueLength;
+        byte[] key;
+        byte[] value;
+        try {
+          checksum = in.readInt();
+          keyLength = in.readInt();
+          valueLength = in.readInt();
+          if (keyLength < 0 || valueLength < tombstone || offset + headerSize + keyLength + Math.max(valueLength, 0) > segment.size) {
+            return offset;
+          }
+          key = new byte[keyLength];
+          in.readFully(key);
+          value = valueLength == tombstone ? null : new byte[valueLength];
+          if (value != null) {
+            in.readFully(value);
+          }
+        } catch (EOFException e) {
+          return offset;
+        }
+        if (checksum(keyLength, valueLength, key, value) != checksum) {
+          return offset;
+        }
+        visitor.visit(offset, key, value);
+        offset += headerSize + keyLength + Math.max(valueLength, 0);
+      }
+    }
+  }
+
+  private static int checksum(int keyLength, int valueLength, byte[] key, byte[] value) {
+    CRC32 crc = new CRC32();
+    crc.update(ByteBuffer.allocate(8).putInt(keyLength).putInt(valueLength).flip());
+    crc.update(key);
+    if (value != null) {
+      crc.update(value);
+    }
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Collects a record in one growing array. Header and key are reserved up front,
+   * so a streamed value lands right behind them without being copied again.
+   */
+  private static final class RecordBuffer extends ByteArrayOutputStream {
+
+    private final int keyLength;
+
+    private RecordBuffer(byte[] key, int expectedValueLength) {
+      super(headerSize + key.length + expectedValueLength);
+      this.keyLength = key.length;
+      this.write(new byte[headerSize], 0, headerSize);
+      this.write(key, 0, key.length);
+    }
+
+    private int valueLength() {
+      return this.count - headerSize - this.keyLength;
+    }
+
+    private ByteBuffer finish(int valueLength) {
+      ByteBuffer record = ByteBuffer.wrap(this.buf, 0, this.count);
+      record.putInt(4, this.keyLength).putInt(8, valueLength);
+      CRC32 crc = new CRC32();
+      crc.update(this.buf, 4, this.count - 4);
+      record.putInt(0, (int) crc.getValue());
+      return record;
+    }
+  }
+
+  private static ByteBuffer encodeRecord(byte[] key, byte[] value) {
+    RecordBuffer buffer = new RecordBuffer(key, value == null ? 0 : value.length);
+    if (value != null) {
+      buffer.write(value, 0, value.length);
+    }
+    return buffer.finish(value == null ? tombstone : value.length);
+  }
+
+  private record HintEntry(long offset, byte[] key, int valueLength) {
+  }
+
+  /**
+   * Indexes the records listed in the hint file of a segment.
+   * The hint is only trusted once all of it is read and its trailer matches, otherwise nothing is indexed.
+   *
+   * @return If the hint was valid.
+   */
+  private boolean loadHint(Segment segment) throws IOException {
+    List<HintEntry> entries = new ArrayList<>();
+    CRC32 crc = new CRC32();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.hintPath(segment.id)), 1 << 16))) {
+      DataInputStream checkedIn = new DataInputStream(new CheckedInputStream(in, crc));
+      while (true) {
+        long offset = checkedIn.readLong();
+        if (offset == hintTrailer) {
+          int checksum = (int) crc.getValue();
+          int count = in.readInt();
+          if (in.readInt() != checksum || count != entries.size() || in.read() != -1) {
+            return false;
+          }
+          break;
+        }
+        int keyLength = checkedIn.readInt();
+        int valueLength = checkedIn.readInt();
+        if (offset < 0 || keyLength < 0 || valueLength < tombstone
+            || offset + headerSize + keyLength + Math.max(valueLength, 0) > segment.size) {
+          return false;
+        }
+        byte[] key = new byte[keyLength];
+        checkedIn.readFully(key);
+        entries.add(new HintEntry(offset, key, valueLength));
+      }
+    } catch (EOFException e) {
+      // Torn or empty, for example after a crash while it was written.
+      return false;
+    }
+    for (HintEntry entry : entries) {
+      this.indexRecord(segment, entry.offset(), entry.key(), entry.valueLength());
+    }
+    return true;
+  }
+
+  /**
+   * Writes the hint file of an immutable segment. Runs on the background thread.
+   * It ends with a trailer of the entry count and a checksum and is forced before it is moved into place,
+   * so a hint torn by a crash is detected and the segment is scanned instead.
+   */
+  private void writeHint(Segment segment) {
+    synchronized (this.compactionLock) {
+      if (this.closed || this.segments.get(segment.id) != segment) {
+        return;
+      }
+      Path hintPath = this.hintPath(segment.id);
+      Path tempPath = hintPath.resolveSibling(hintPath.getFileName() + tempExtension);
+      try {
+        try (FileOutputStream fileOut = new FileOutputStream(tempPath.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16))) {
+          CRC32 crc = new CRC32();
+          DataOutputStream checkedOut = new DataOutputStream(new CheckedOutputStream(out, crc));
+          int[] count = {0};
+          this.scan(segment, (offset, key, value) -> {
+            checkedOut.writeLong(offset);
+            checkedOut.writeInt(key.length);
+            checkedOut.writeInt(value == null ? tombstone : value.length);
+            checkedOut.write(key);
+            count[0]++;
+          });
+          checkedOut.writeLong(hintTrailer);
+          out.writeInt(count[0]);
+          out.writeInt((int) crc.getValue());
+          out.flush();
+          fileOut.getChannel().force(false);
+        }
+        move(tempPath, hintPath);
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to write hint file: " + hintPath, e);
+      }
+    }
+  }
+
+  private static void move(Path source, Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException();
+      }
+      position += read;
+    }
+  }
+
+  private void ensureOpen() {
+    if (this.closed) {
+      throw new IllegalStateException("Log storage is closed: " + this.folder);
+    }
+  }
+
+  /**
+   * Appends a record to the active segment. Must be called while holding the append lock.
+   */
+  private Location append(ByteBuffer record, int keyLength, int valueLength) {
+    this.ensureOpen();
+    Segment segment = this.activeSegment;
+    long offset = segment.size;
+    int recordLength = record.remaining();
+    try {
+      writeFully(segment.channel, record, offset);
+      segment.size = offset + recordLength;
+      if (this.fsyncPolicy == FileMapOptions.FsyncPolicy.PER_WRITE) {
+        segment.channel.force(false);
+      } else if (++this.unsyncedWrites >= this.fsyncBatchSize && this.fsyncPolicy == FileMapOptions.FsyncPolicy.BATCHED) {
+        segment.channel.force(false);
+        this.unsyncedWrites = 0;
+      }
+      if (segment.size >= this.maxSegmentSize) {
+        this.roll();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return new Location(segment.id, offset, keyLength, valueLength);
+  }
+
+  /**
+   * Seals the active segment and starts a new one. Must be called while holding the append lock.
+   */
+  private void roll() throws IOException {
+    Segment sealed = this.activeSegment;
+    if (this.fsyncPolicy != FileMapOptions.FsyncPolicy.NEVER) {
+      sealed.channel.force(false);
+      this.unsyncedWrites = 0;
+    }
+    this.activeSegment = this.openSegment(sealed.id + 1);
+    this.executor.execute(() -> this.writeHint(sealed));
+  }
+
+  @Override
+  public <T> T read(K key, Function<ByteBuffer, T> decoder) {
+    Lock lock = this.segmentLock.readLock();
+    lock.lock();
+    try {
+      Location location = this.index.get(key);
+      if (location == null) {
+        return null;
+      }
+      Segment segment = this.segments.get(location.segmentId());
+      long end = location.offset() + location.recordSize();
+      if (this.mappedSegments == null || segment.size > Integer.MAX_VALUE) {
+        ByteBuffer record = ByteBuffer.allocate(location.recordSize());
+        readFully(segment.channel, record, location.offset());
+        return decoder.apply(verifiedValue(record.flip(), location));
+      }
+      // The stamp is the segment itself, so a segment replaced by compaction is mapped again.
+      return this.mappedSegments.read(segment.id, segment, end,
+          () -> segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size),
+          mapped -> decoder.apply(verifiedValue(mapped.limit((int) end).position((int) location.offset()).slice(), location)));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static ByteBuffer verifiedValue(ByteBuffer record, Location location) {
+    CRC32 crc = new CRC32();
+    crc.update(record.duplicate().position(4));
+    if ((int) crc.getValue() != record.getInt(0)) {
+      throw new IllegalStateException("Corrupt record in segment " + location.segmentId() + " at offset " + location.offset());
+    }
+    return record.position(headerSize + location.keyLength()).slice();
+  }
+
+  /**
+   * Serializes the value into a record buffer before taking the append lock, so writers don't wait on each other's serialization.
+   */
+  @Override
+  public void write(K key, ValueWriter writer) {
+    byte[] keyBytes = this.keyCodec.encode(key).getBytes(StandardCharsets.UTF_8);
+    RecordBuffer buffer = new RecordBuffer(keyBytes, 256);
+    try {
+      writer.writeTo(buffer);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    int valueLength = buffer.valueLength();
+    ByteBuffer record = buffer.finish(valueLength);
+    synchronized (this.appendLock) {
+      Location old = this.index.put(key, this.append(record, keyBytes.length, valueLength));
+      if (old != null) {
+        this.markDead(old);
+      }
+    }
+  }
+
+  @Override
+  public boolean delete(K key) {
+    if (!this.index.containsKey(key)) {
+      return false;
+    }
+    byte[] keyBytes = this.keyCodec.encode(key).getBytes(StandardCharsets.UTF_8);
+    synchronized (this.appendLock) {
+      if (!this.index.containsKey(key)) {
+        return false;
+      }
+      this.markDead(this.append(encodeRecord(keyBytes, null), keyBytes.length, tombstone));
+      this.markDead(this.index.remove(key));
+      return true;
+    }
+  }
+
+  @Override
+  public Path getFolder() {
+    return this.folder;
+  }
+
+  @Override
+  public boolean contains(K key) {
+    return this.index.containsKey(key);
+  }
+
+  @Override
+  public Set<K> keys() {
+    return Collections.unmodifiableSet(this.index.keySet());
+  }
+
+  @Override
+  public int size() {
+    return this.index.size();
+  }
+
+  private void compactIfNeeded() {
+    try {
+      long size = 0;
+      long deadBytes = 0;
+      for (Segment segment : this.segments.headMap(this.activeSegment.id, false).values()) {
+        size += segment.size;
+        deadBytes += segment.deadBytes.get();
+      }
+      if (deadBytes > 0 && deadBytes >= size * this.compactionThreshold) {
+        this.compact();
+      }
+    } catch (RuntimeException e) {
+      // Keep the schedule alive, but don't swallow the failure.
+      Thread thread = Thread.currentThread();
+      thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+  }
+
+  /**
+   * Merges all sealed segments into one, keeping only the newest record of every key.
+   * The merged segment replaces the newest old segment, so a crash at any point leaves readable segments behind.
+   */
+  public void compact() {
+    synchronized (this.compactionLock) {
+      if (this.closed) {
+        return;
+      }
+      List<Segment> inputs;
+      synchronized (this.appendLock) {
+        inputs = new ArrayList<>(this.segments.headMap(this.activeSegment.id, false).values());
+      }
+      if (inputs.isEmpty()) {
+        return;
+      }
+
+      long targetId = inputs.get(inputs.size() - 1).id;
+      Path tempPath = this.folder.resolve(this.segmentPath(targetId).getFileName() + tempExtension);
+      Map<K, Location> copied = new HashMap<>();
+      Map<K, Location> relocated = new HashMap<>();
+      Map<K, byte[]> tombstones = new HashMap<>();
+      Set<K> overwritten = new HashSet<>();
+      long tombstoneBytes = 0;
+
+      try {
+        try (FileChannel output = FileChannel.open(tempPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+          long[] position = {0};
+          for (Segment input : inputs) {
+            long validSize = this.scan(input, (offset, key, value) -> {
+              K decodedKey = this.keyCodec.decode(new String(key, StandardCharsets.UTF_8));
+              if (value == null) {
+                tombstones.put(decodedKey, key);
+                return;
+              }
+              Location current = new Location(input.id, offset, key.length, value.length);
+              if (!current.equals(this.index.get(decodedKey))) {
+                overwritten.add(decodedKey);
+                return;
+              }
+              ByteBuffer record = encodeRecord(key, value);
+              int recordLength = record.remaining();
+              copied.put(decodedKey, current);
+              relocated.put(decodedKey, new Location(targetId, position[0], key.length, value.length));
+              writeFully(output, record, position[0]);
+              position[0] += recordLength;
+            });
+            if (validSize < input.size) {
+              throw new IOException("Corrupt record in segment " + input.path + " at offset " + validSize);
+            }
+          }
+          // Tombstones are only needed while an older put of the same key could still be read, which is the case
+          // until all old segments are deleted.
+          for (Map.Entry<K, byte[]> entry : tombstones.entrySet()) {
+            if (overwritten.contains(entry.getKey()) && !this.index.containsKey(entry.getKey())) {
+              ByteBuffer record = encodeRecord(entry.getValue(), null);
+              int recordLength = record.remaining();
+              writeFully(output, record, position[0]);
+              position[0] += recordLength;
+              tombstoneBytes += recordLength;
+            }
+          }
+          output.force(false);
+        }
+
+        Segment compacted;
+        synchronized (this.appendLock) {
+          Lock lock = this.segmentLock.writeLock();
+          lock.lock();
+          try {
+            for (Segment input : inputs) {
+              if (this.mappedSegments != null) {
+                this.mappedSegments.invalidate(input.id);
+              }
+              input.channel.close();
+              Files.deleteIfExists(this.hintPath(input.id));
+            }
+            move(tempPath, this.segmentPath(targetId));
+            for (Segment input : inputs) {
+              this.segments.remove(input.id);
+              if (input.id != targetId) {
+                Files.deleteIfExists(input.path);
+              }
+            }
+            compacted = this.openSegment(targetId);
+            compacted.deadBytes.addAndGet(tombstoneBytes);
+            for (Map.Entry<K, Location> entry : copied.entrySet()) {
+              Location location = relocated.get(entry.getKey());
+              if (!this.index.replace(entry.getKey(), entry.getValue(), location)) {
+                // Overwritten while compacting.
+                compacted.deadBytes.addAndGet(location.recordSize());
+              }
+            }
+          } finally {
+            lock.unlock();
+          }
+        }
+        this.executor.execute(() -> this.writeHint(compacted));
+      } catch (IOException e) {
+        try {
+          Files.deleteIfExists(tempPath);
+        } catch (IOException suppressed) {
+          e.addSuppressed(suppressed);
+        }
+        throw new RuntimeException("Failed to compact log storage: " + this.folder, e);
+      }
+    }
+  }
+
+  @Override
+  public void clear() {
+    synchronized (this.compactionLock) {
+      synchronized (this.appendLock) {
+        this.ensureOpen();
+        Lock lock = this.segmentLock.writeLock();
+        lock.lock();
+        try {
+          if (this.mappedSegments != null) {
+            this.mappedSegments.invalidateAll();
+          }
+          for (Segment segment : this.segments.values()) {
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+            Files.deleteIfExists(this.hintPath(segment.id));
+          }
+          this.segments.clear();
+          this.index.clear();
+          this.unsyncedWrites = 0;
+          this.unsyncedSegmentId = 0;
+          this.activeSegment = this.openSegment(0);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+  }
+
+  /**
+   * Forces all appended records to the storage device.
+   */
+  @Override
+  public void flush() {
+    synchronized (this.appendLock) {
+      if (this.closed || this.unsyncedWrites == 0) {
+        return;
+      }
+      try {
+        this.activeSegment.channel.force(false);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      this.unsyncedWrites = 0;
+    }
+  }
+
+  /**
+   * Forces every segment appended to since the last sync, regardless of the fsync policy.
+   * Records of all keys end up in these segments, so the keys are not needed.
+   *
+   * @param keys The keys to force.
+   */
+  @Override
+  public void sync(Collection<K> keys) {
+    synchronized (this.appendLock) {
+      if (this.closed) {
+        return;
+      }
+      Lock lock = this.segmentLock.readLock();
+      lock.lock();
+      try {
+        for (Segment segment : this.segments.tailMap(this.unsyncedSegmentId, true).values()) {
+          segment.channel.force(false);
+        }
+        this.unsyncedSegmentId = this.activeSegment.id;
+        this.unsyncedWrites = 0;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Seals the active segment, so every segment is immutable, and links all segments and their hints.
+   * Compaction waits until all segments are linked.
+   *
+   * @param target The folder to link the files into.
+   */
+  @Override
+  public void snapshot(Path target) {
+    synchronized (this.compactionLock) {
+      synchronized (this.appendLock) {
+        this.ensureOpen();
+        try {
+          if (this.activeSegment.size > 0) {
+            this.roll();
+          }
+          for (Segment segment : this.segments.values()) {
+            if (segment == this.activeSegment) {
+              continue;
+            }
+            SnapshotFiles.linkOrCopy(segment.path, target.resolve(segment.path.getFileName()));
+            Path hintPath = this.hintPath(segment.id);
+            if (Files.exists(hintPath)) {
+              SnapshotFiles.linkOrCopy(hintPath, target.resolve(hintPath.getFileName()));
+            }
+          }
+        } catch (IOException e) {
+          throw new RuntimeException("Failed to snapshot log storage: " + this.folder, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops background compaction, flushes pending writes and closes all segments.
+   */
+  @Override
+  public void close() {
+    this.executor.shutdown();
+    this.flush();
+    synchronized (this.compactionLock) {
+      synchronized (this.appendLock) {
+        Lock lock = this.segmentLock.writeLock();
+        lock.lock();
+        try {
+          this.closed = true;
+          if (this.mappedSegments != null) {
+            this.mappedSegments.close();
+          }
+          for (Segment segment : this.segments.values()) {
+            segment.channel.close();
+          }
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the amount of segment files, including the active one.
+   *
+   * @return The amount of segments.
+   */
+  public int getSegmentCount() {
+    return this.segments.size();
+  }
+
+  /**
+   * Gets the amount of bytes taken by overwritten and deleted records, which compaction would free.
+   *
+   * @return The amount of reclaimable bytes.
+   */
+  public long getReclaimableBytes() {
+    return this.segments.values().stream().mapToLong(segment -> segment.deadBytes.get()).sum();
+  }
+}
@@ -0,0 +1,156 @@
+package com.gestankbratwurst.ambrosia.impl.file.storage;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Keeps the most recently used memory mappings of storage files.
+ * Evicted or invalidated mappings are unmapped as soon as no reader uses them anymore,
+ * instead of waiting for the garbage collector.
+ *
+ * @param <T> The type identifying a mapped file.
+ */
+final class MappedFileCache<T> implements AutoCloseable {
+
+  private static final Object unsafe;
+  private static final Method invokeCleaner;
+
+  static {
+    Object foundUnsafe = null;
+    Method foundCleaner = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      foundUnsafe = field.get(null);
+      foundCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (ReflectiveOperationException | RuntimeException ignored) {
+      // Mappings are released by the garbage collector instead.
+    }
+    unsafe = foundUnsafe;
+    invokeCleaner = foundCleaner;
+  }
+
+  private static void unmap(MappedByteBuffer buffer) {
+    if (invokeCleaner == null) {
+      return;
+    }
+    try {
+      invokeCleaner.invoke(unsafe, buffer);
+    } catch (ReflectiveOperationException ignored) {
+      // Released by the garbage collector instead.
+    }
+  }
+
+  @FunctionalInterface
+  interface Mapper {
+    MappedByteBuffer map() throws IOException;
+  }
+
+  private static final class Mapping {
+
+    private final MappedByteBuffer buffer;
+    private final Object stamp;
+    private int readers;
+    private boolean retired;
+
+    private Mapping(MappedByteBuffer buffer, Object stamp) {
+      this.buffer = buffer;
+      this.stamp = stamp;
+    }
+
+    private void retire() {
+      this.retired = true;
+      if (this.readers == 0) {
+        unmap(this.buffer);
+      }
+    }
+  }
+
+  private final Map<T, Mapping> mappings;
+
+  MappedFileCache(int maxMappings) {
+    this.mappings = new LinkedHashMap<>(16, 0.75F, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<T, Mapping> eldest) {
+        if (this.size() > maxMappings) {
+          eldest.getValue().retire();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Reads from the mapping of a file. The file is mapped again if it is not cached,
+   * its stamp changed or the cached mapping is smaller than required.
+   * The buffer passed to the reader must not be used after it returns.
+   *
+   * @param id      The id of the file.
+   * @param stamp   Identifies the current version of the file.
+   * @param minSize The size the mapping needs to cover.
+   * @param mapper  Maps the file.
+   * @param reader  Reads from the mapped buffer.
+   * @param <R>     The type of the read result.
+   * @return The result of the reader.
+   */
+  <R> R read(T id, Object stamp, long minSize, Mapper mapper, Function<ByteBuffer, R> reader) throws IOException {
+    Mapping mapping = this.acquire(id, stamp, minSize, mapper);
+    try {
+      return reader.apply(mapping.buffer.duplicate());
+    } finally {
+      this.release(mapping);
+    }
+  }
+
+  private synchronized Mapping acquire(T id, Object stamp, long minSize, Mapper mapper) throws IOException {
+    Mapping mapping = this.mappings.get(id);
+    if (mapping == null || !Objects.equals(mapping.stamp, stamp) || mapping.buffer.capacity() < minSize) {
+      if (mapping != null) {
+        this.mappings.remove(id);
+        mapping.retire();
+      }
+      mapping = new Mapping(mapper.map(), stamp);
+      this.mappings.put(id, mapping);
+    }
+    mapping.readers++;
+    return mapping;
+  }
+
+  private synchronized void release(Mapping mapping) {
+    if (--mapping.readers == 0 && mapping.retired) {
+      unmap(mapping.buffer);
+    }
+  }
+
+  /**
+   * Drops the mapping of a file, e.g. before it is replaced or deleted.
+   *
+   * @param id The id of the file.
+   */
+  synchronized void invalidate(T id) {
+    Mapping mapping = this.mappings.remove(id);
+    if (mapping != null) {
+      mapping.retire();
+    }
+  }
+
+  synchronized void invalidateAll() {
+    new ArrayList<>(this.mappings.values()).forEach(Mapping::retire);
+    this.mappings.clear();
+  }
+
+  @Override
+  public void close() {
+    this.invalidateAll();
+  }
+}
@@ -1,13 +1,29 @@
 package com.gestankbratwurst.ambrosia.impl.redisson;
 
 import com.gestankbratwurst.ambrosia.Ambrosia;
+import com.gestankbratwurst.ambrosia.impl.redisson.batch.RedissonBatch;
 import com.gestankbratwurst.ambrosia.impl.redisson.codec.RedissonGsonCodec;
+import com.gestankbratwurst.ambrosia.impl.redisson.collections.RedissonExpiringMap;
+import com.gestankbratwurst.ambrosia.impl.redisson.collections.RedissonExplodedMap;
+import com.gestankbratwurst.ambrosia.impl.redisson.collections.RedissonLeaderboardMap;
+import com.gestankbratwurst.ambrosia.impl.redisson.collections.RedissonLocalCachedMap;
+import com.gestankbratwurst.ambrosia.impl.redisson.options.ExpiringMapOptions;
+import com.gestankbratwurst.ambrosia.impl.redisson.options.LocalCacheOptions;
+import com.gestankbratwurst.ambrosia.impl.redisson.codec.TypedGsonCodec;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.BatchResult;
+import org.redisson.api.EvictionMode;
+import org.redisson.api.RBatch;
 import org.redisson.api.RMap;
+import org.redisson.api.RMapCache;
+import org.redisson.api.RScoredSortedSet;
 import org.redisson.api.RedissonClient;
 import org.redisson.client.codec.BaseCodec;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 public class RedissonAmbrosia extends Ambrosia<RedissonClient, RMap<?, ?>> {
@@ -17,21 +33,195 @@ public class RedissonAmbrosia extends Ambrosia<RedissonClient, RMap<?, ?>> {
   }
 
   private final BaseCodec codec;
+  private final Gson gson;
+  private final boolean typedCodecs;
+  private final Map<CodecKey, BaseCodec> codecCache;
 
   public RedissonAmbrosia(RedissonClient backbone, BaseCodec codec) {
+    this(backbone, codec, null);
+  }
+
+  public RedissonAmbrosia(RedissonClient backbone, BaseCodec codec, Gson gson) {
+    this(backbone, codec, gson, false);
+  }
+
+  public RedissonAmbrosia(RedissonClient backbone, BaseCodec codec, Gson gson, boolean typedCodecs) {
     super(backbone);
     this.codec = codec;
+    this.gson = gson;
+    this.typedCodecs = typedCodecs;
+    this.codecCache = new ConcurrentHashMap<>();
   }
 
+  /**
+   * Creates a map view backed by a redis hash.
+   * If typed codecs are enabled, the map uses a codec bound to the key and value type.
+   * Otherwise, the shared codec is used.
+   *
+   * @param mapName   The name of the redis hash.
+   * @param keyType   The type of the keys.
+   * @param valueType The type of the values.
+   * @return The map view.
+   */
   @Override
   public <K, V> RMap<K, V> createMapView(String mapName, Class<K> keyType, Class<V> valueType) {
-    return getBackbone().getMap(mapName, codec);
+    return getBackbone().getMap(mapName, this.getCodec(keyType, valueType));
+  }
+
+  /**
+   * Creates a map view backed by a redis hash with a local near-cache.
+   * Uses the same codec as {@link #createMapView(String, Class, Class)}, so both views can share a hash.
+   *
+   * @param mapName   The name of the redis hash.
+   * @param keyType   The type of the keys.
+   * @param valueType The type of the values.
+   * @param options   The options of the local cache.
+   * @return The locally cached map view.
+   */
+  public <K, V> RedissonLocalCachedMap<K, V> createLocalCachedMapView(String mapName, Class<K> keyType, Class<V> valueType, LocalCacheOptions options) {
+    return new RedissonLocalCachedMap<>(getBackbone().getLocalCachedMap(options.<K, V>toRedisson(mapName).codec(this.getCodec(keyType, valueType))));
+  }
+
+  public <K, V> RedissonLocalCachedMap<K, V> createLocalCachedMapView(String mapName, Class<K> keyType, Class<V> valueType) {
+    return this.createLocalCachedMapView(mapName, keyType, valueType, LocalCacheOptions.defaults());
+  }
+
+  /**
+   * Creates a map view whose entries can expire after a time to live or an idle timeout.
+   * The max size of the options is applied to the redis map on creation, replacing any earlier limit.
+   *
+   * @param mapName   The name of the redis map.
+   * @param keyType   The type of the keys.
+   * @param valueType The type of the values.
+   * @param options   The default expiry and eviction settings.
+   * @return The expiring map view.
+   */
+  public <K, V> RedissonExpiringMap<K, V> createExpiringMapView(String mapName, Class<K> keyType, Class<V> valueType, ExpiringMapOptions options) {
+    RMapCache<K, V> mapCache = getBackbone().getMapCache(mapName, this.getCodec(keyType, valueType));
+    // Also applied without a limit, as 0 clears a limit persisted by an earlier view.
+    mapCache.setMaxSize(options.getMaxSize(), EvictionMode.valueOf(options.getEvictionMode().name()));
+    return new RedissonExpiringMap<>(mapCache, options.getTimeToLive(), options.getMaxIdle());
+  }
+
+  public <K, V> RedissonExpiringMap<K, V> createExpiringMapView(String mapName, Class<K> keyType, Class<V> valueType) {
+    return this.createExpiringMapView(mapName, keyType, valueType, ExpiringMapOptions.defaults());
+  }
+
+  /**
+   * Creates a map view that stores every object in its own redis hash, with the top level fields as hash fields.
+   * This allows reading, writing and incrementing single fields without rewriting the whole object.
+   * Requires an instance backed by Gson.
+   *
+   * @param mapName   The name of the map, used as prefix for the object hashes.
+   * @param keyType   The type of the keys.
+   * @param valueType The type of the values.
+   * @return The exploded map view.
+   */
+  public <K, V> RedissonExplodedMap<K, V> createExplodedMapView(String mapName, Class<K> keyType, Class<V> valueType) {
+    if (this.gson == null) {
+      throw new IllegalStateException("Exploded map views require a Gson backed RedissonAmbrosia.");
+    }
+    return new RedissonExplodedMap<>(getBackbone(), this.gson, mapName, keyType, valueType);
+  }
+
+  /**
+   * Creates a map view that ranks its keys by a numeric property of the values, in the sorted set
+   * {@code {mapName}:ranking:<property>}. Requires an instance backed by Gson.
+   *
+   * @param mapName   The name of the redis hash.
+   * @param keyType   The type of the keys.
+   * @param valueType The type of the values.
+   * @param property  The numeric property to rank by. Nested properties are separated by dots.
+   * @param ascending True if the lowest score should be ranked first.
+   * @return The leaderboard map view.
+   */
+  public <K, V> RedissonLeaderboardMap<K, V> createLeaderboardMapView(String mapName, Class<K> keyType, Class<V> valueType, String property, boolean ascending) {
+    if (this.gson == null) {
+      throw new IllegalStateException("Leaderboard map views require a Gson backed RedissonAmbrosia.");
+    }
+    RMap<K, V> map = this.createMapView(mapName, keyType, valueType);
+    String rankingName = RedissonLeaderboardMap.rankingName(mapName, property);
+    RScoredSortedSet<K> ranking = getBackbone().getScoredSortedSet(rankingName, TypedGsonCodec.forElements(this.gson, keyType));
+    RedissonLeaderboardMap<K, V> leaderboard = new RedissonLeaderboardMap<>(map, ranking, getBackbone(), this.gson, keyType, valueType, property, ascending);
+    String legacyRankingName = mapName + ":ranking:" + property;
+    if (!legacyRankingName.equals(rankingName) && getBackbone().getKeys().delete(legacyRankingName) > 0) {
+      // The old ranking may be in another cluster slot, so it can't be renamed.
+      leaderboard.rebuildRanking();
+    }
+    return leaderboard;
+  }
+
+  public <K, V> RedissonLeaderboardMap<K, V> createLeaderboardMapView(String mapName, Class<K> keyType, Class<V> valueType, String property) {
+    return this.createLeaderboardMapView(mapName, keyType, valueType, property, false);
+  }
+
+  /**
+   * Queues operations on one or more map views and sends them to redis in one pipelined execution.
+   * The result holds the responses of all operations in the order they were queued.
+   *
+   * @param options    The options of the batch.
+   * @param operations The consumer queueing the operations.
+   * @return The responses of all queued operations.
+   */
+  public BatchResult<?> batch(BatchOptions options, Consumer<RedissonBatch> operations) {
+    RBatch batch = getBackbone().createBatch(options);
+    operations.accept(new RedissonBatch(this, batch));
+    return batch.execute();
+  }
+
+  public BatchResult<?> batch(Consumer<RedissonBatch> operations) {
+    return this.batch(BatchOptions.defaults(), operations);
+  }
+
+  /**
+   * Gets the codec used for maps of the given key and value type.
+   * Typed codecs are created once per type pair and cached.
+   *
+   * @param keyType   The type of the keys.
+   * @param valueType The type of the values.
+   * @return The typed codec, or the shared codec if typed codecs are disabled.
+   */
+  public BaseCodec getCodec(Class<?> keyType, Class<?> valueType) {
+    if (this.gson == null || !this.typedCodecs) {
+      return this.codec;
+    }
+    return this.codecCache.computeIfAbsent(new CodecKey(keyType, valueType), key -> new TypedGsonCodec(this.gson, keyType, valueType));
+  }
+
+  /**
+   * Rewrites a redis hash written with the shared codec in the format of the typed codec of its types.
+   * The hash is replaced in one MULTI/EXEC, so other clients see either the old or the new format.
+   * Only needed for hashes written before typed codecs were enabled. Expiring maps keep their own format.
+   *
+   * @param mapName   The name of the redis hash.
+   * @param keyType   The type of the keys.
+   * @param valueType The type of the values.
+   * @return The amount of migrated entries.
+   */
+  public <K, V> int migrateToTypedCodec(String mapName, Class<K> keyType, Class<V> valueType) {
+    if (this.gson == null || !this.typedCodecs) {
+      throw new IllegalStateException("Typed codecs are not enabled.");
+    }
+    Map<K, V> entries = getBackbone().<K, V>getMap(mapName, this.codec).readAllMap();
+    if (entries.isEmpty()) {
+      return 0;
+    }
+    RBatch batch = getBackbone().createBatch(BatchOptions.defaults().executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+    batch.getMap(mapName, this.codec).deleteAsync();
+    batch.<K, V>getMap(mapName, this.getCodec(keyType, valueType)).putAllAsync(entries);
+    batch.execute();
+    return entries.size();
+  }
+
+  private record CodecKey(Class<?> keyType, Class<?> valueType) {
   }
 
   public static sealed class Builder<SELF extends Builder<SELF>> permits AmbrosiaCodecBuilder, AmbrosiaGsonBuilder, AmbrosiaGsonConstructBuilder {
 
     protected BaseCodec codec;
+    protected Gson gson;
     protected RedissonClient redissonClient;
+    protected boolean typedCodecs;
 
     private Builder() {
     }
@@ -58,6 +248,18 @@ public class RedissonAmbrosia extends Ambrosia<RedissonClient, RMap<?, ?>> {
       return this.self();
     }
 
+    /**
+     * Binds the codecs of Gson backed map views to their key and value type. Disabled by default,
+     * as hashes written with the shared codec must be migrated first, see {@link RedissonAmbrosia#migrateToTypedCodec}.
+     *
+     * @param typedCodecs True to use typed codecs.
+     * @return This builder.
+     */
+    public SELF typedCodecs(boolean typedCodecs) {
+      this.typedCodecs = typedCodecs;
+      return this.self();
+    }
+
     public RedissonAmbrosia build() {
       if (this.codec == null) {
         throw new IllegalStateException("Codec is not set.");
@@ -65,7 +267,7 @@ public class RedissonAmbrosia extends Ambrosia<RedissonClient, RMap<?, ?>> {
       if (this.redissonClient == null) {
         throw new IllegalStateException("RedissonClient is not set.");
       }
-      return new RedissonAmbrosia(this.redissonClient, this.codec);
+      return new RedissonAmbrosia(this.redissonClient, this.codec, this.gson, this.typedCodecs);
     }
 
   }
@@ -80,8 +282,6 @@ public class RedissonAmbrosia extends Ambrosia<RedissonClient, RMap<?, ?>> {
 
   public static final class AmbrosiaGsonBuilder extends Builder<AmbrosiaGsonBuilder> {
 
-    private final Gson gson;
-
     private AmbrosiaGsonBuilder(Gson gson) {
       this.gson = gson;
     }
@@ -108,7 +308,8 @@ public class RedissonAmbrosia extends Ambrosia<RedissonClient, RMap<?, ?>> {
 
     @Override
     public RedissonAmbrosia build() {
-      this.codec = new RedissonGsonCodec(this.gsonBuilder.create());
+      this.gson = this.gsonBuilder.create();
+      this.codec = new RedissonGsonCodec(this.gson);
       return super.build();
     }
   }
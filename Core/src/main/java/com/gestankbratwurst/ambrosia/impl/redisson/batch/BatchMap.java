@@ -0,0 +1,100 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.batch;
+
+import org.redisson.api.RFuture;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RMapCacheAsync;
+import org.redisson.misc.CompletableFutureWrapper;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A map inside a {@link RedissonBatch}. Operations are only queued, and their futures complete once the batch is executed.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class BatchMap<K, V> {
+
+  private final RMapAsync<K, V> backbone;
+  private final Duration defaultTimeToLive;
+  private final Duration defaultMaxIdle;
+
+  BatchMap(RMapAsync<K, V> backbone) {
+    this(backbone, Duration.ZERO, Duration.ZERO);
+  }
+
+  BatchMap(RMapAsync<K, V> backbone, Duration defaultTimeToLive, Duration defaultMaxIdle) {
+    this.backbone = backbone;
+    this.defaultTimeToLive = defaultTimeToLive;
+    this.defaultMaxIdle = defaultMaxIdle;
+  }
+
+  private RMapCacheAsync<K, V> getExpiringBackbone() {
+    if (this.defaultTimeToLive.isZero() && this.defaultMaxIdle.isZero()) {
+      return null;
+    }
+    return (RMapCacheAsync<K, V>) this.backbone;
+  }
+
+  public RFuture<V> get(K key) {
+    return this.backbone.getAsync(key);
+  }
+
+  public RFuture<Map<K, V>> getAll(Set<K> keys) {
+    return this.backbone.getAllAsync(keys);
+  }
+
+  public RFuture<V> put(K key, V value) {
+    RMapCacheAsync<K, V> expiring = this.getExpiringBackbone();
+    if (expiring == null) {
+      return this.backbone.putAsync(key, value);
+    }
+    return expiring.putAsync(key, value, this.defaultTimeToLive.toMillis(), TimeUnit.MILLISECONDS,
+        this.defaultMaxIdle.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  public RFuture<Boolean> fastPut(K key, V value) {
+    RMapCacheAsync<K, V> expiring = this.getExpiringBackbone();
+    if (expiring == null) {
+      return this.backbone.fastPutAsync(key, value);
+    }
+    return expiring.fastPutAsync(key, value, this.defaultTimeToLive.toMillis(), TimeUnit.MILLISECONDS,
+        this.defaultMaxIdle.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  public RFuture<Void> putAll(Map<? extends K, ? extends V> map) {
+    RMapCacheAsync<K, V> expiring = this.getExpiringBackbone();
+    if (expiring == null) {
+      return this.backbone.putAllAsync(map);
+    }
+    if (this.defaultMaxIdle.isZero()) {
+      return expiring.putAllAsync(map, this.defaultTimeToLive.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    CompletableFuture<?>[] puts = map.entrySet().stream()
+        .map(entry -> this.fastPut(entry.getKey(), entry.getValue()).toCompletableFuture())
+        .toArray(CompletableFuture[]::new);
+    return new CompletableFutureWrapper<>(CompletableFuture.allOf(puts));
+  }
+
+  public RFuture<V> remove(K key) {
+    return this.backbone.removeAsync(key);
+  }
+
+  @SuppressWarnings("unchecked")
+  public RFuture<Long> fastRemove(K key) {
+    return this.backbone.fastRemoveAsync(key);
+  }
+
+  /**
+   * Gets the wrapped asynchronous map of the batch for operations not covered by this class.
+   *
+   * @return The wrapped asynchronous map.
+   */
+  public RMapAsync<K, V> getBackbone() {
+    return this.backbone;
+  }
+}
@@ -0,0 +1,83 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.batch;
+
+import com.gestankbratwurst.ambrosia.impl.redisson.RedissonAmbrosia;
+import com.gestankbratwurst.ambrosia.impl.redisson.collections.RedissonExpiringMap;
+import com.gestankbratwurst.ambrosia.impl.redisson.collections.RedissonLeaderboardMap;
+import com.gestankbratwurst.ambrosia.impl.redisson.collections.RedissonMapView;
+import org.redisson.api.RBatch;
+import org.redisson.api.RLocalCachedMap;
+import org.redisson.api.RMap;
+import org.redisson.api.RMapCache;
+
+/**
+ * Collects operations on one or more map views, which are sent to redis in one pipelined execution.
+ * Local cached maps and leaderboard maps can't be batched, since their caches and rankings would not be updated.
+ */
+public class RedissonBatch {
+
+  private final RedissonAmbrosia ambrosia;
+  private final RBatch batch;
+
+  public RedissonBatch(RedissonAmbrosia ambrosia, RBatch batch) {
+    this.ambrosia = ambrosia;
+    this.batch = batch;
+  }
+
+  /**
+   * Gets a map inside this batch, using the same codec as {@link RedissonAmbrosia#createMapView(String, Class, Class)}.
+   *
+   * @param mapName   The name of the redis hash.
+   * @param keyType   The type of the keys.
+   * @param valueType The type of the values.
+   * @return The map inside this batch.
+   */
+  public <K, V> BatchMap<K, V> map(String mapName, Class<K> keyType, Class<V> valueType) {
+    return new BatchMap<>(this.batch.getMap(mapName, this.ambrosia.getCodec(keyType, valueType)));
+  }
+
+  /**
+   * Gets a map inside this batch that targets the same redis hash with the same codec as the given map view.
+   *
+   * @param view The map view.
+   * @return The map inside this batch.
+   * @throws IllegalArgumentException If the map is a local cached map.
+   */
+  public <K, V> BatchMap<K, V> map(RMap<K, V> view) {
+    if (view instanceof RLocalCachedMap<?, ?>) {
+      throw new IllegalArgumentException("Local cached maps can't be batched, their caches would not be invalidated: " + view.getName());
+    }
+    if (view instanceof RMapCache<?, ?>) {
+      return new BatchMap<>(this.batch.getMapCache(view.getName(), view.getCodec()));
+    }
+    return new BatchMap<>(this.batch.getMap(view.getName(), view.getCodec()));
+  }
+
+  /**
+   * Gets a map inside this batch that targets the same redis hash with the same codec as the given map view.
+   * Puts into a {@link RedissonExpiringMap} use its default time to live and max idle time.
+   *
+   * @param view The map view.
+   * @return The map inside this batch.
+   * @throws IllegalArgumentException If the map view is a local cached map or a leaderboard map.
+   */
+  public <K, V> BatchMap<K, V> map(RedissonMapView<K, V, ?> view) {
+    if (view instanceof RedissonLeaderboardMap<?, ?>) {
+      throw new IllegalArgumentException("Leaderboard maps can't be batched, their ranking would not be updated: " + view.getName());
+    }
+    RMap<K, V> backbone = view.getBackbone();
+    if (view instanceof RedissonExpiringMap<?, ?> expiringMap) {
+      return new BatchMap<>(this.batch.getMapCache(backbone.getName(), backbone.getCodec()),
+          expiringMap.getDefaultTimeToLive(), expiringMap.getDefaultMaxIdle());
+    }
+    return this.map(backbone);
+  }
+
+  /**
+   * Gets the underlying redisson batch for operations on other redis objects.
+   *
+   * @return The redisson batch.
+   */
+  public RBatch getBackbone() {
+    return this.batch;
+  }
+}
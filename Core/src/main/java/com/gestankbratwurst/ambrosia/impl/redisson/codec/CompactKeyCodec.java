@@ -0,0 +1,80 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.redisson.client.handler.State;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Encodes well known key types in a compact binary form instead of json.
+ * UUIDs are stored as 16 raw bytes, strings as plain UTF-8 and primitives in their fixed width.
+ */
+public final class CompactKeyCodec implements Encoder, Decoder<Object> {
+
+  private static final Map<Class<?>, CompactKeyCodec> CODECS = Map.ofEntries(
+      Map.entry(UUID.class, new CompactKeyCodec(16,
+          (key, buf) -> buf.writeLong(((UUID) key).getMostSignificantBits()).writeLong(((UUID) key).getLeastSignificantBits()),
+          buf -> new UUID(buf.readLong(), buf.readLong()))),
+      Map.entry(String.class, new CompactKeyCodec(32,
+          (key, buf) -> buf.writeCharSequence((String) key, StandardCharsets.UTF_8),
+          buf -> buf.readCharSequence(buf.readableBytes(), StandardCharsets.UTF_8).toString())),
+      Map.entry(Integer.class, new CompactKeyCodec(4, (key, buf) -> buf.writeInt((Integer) key), ByteBuf::readInt)),
+      Map.entry(Long.class, new CompactKeyCodec(8, (key, buf) -> buf.writeLong((Long) key), ByteBuf::readLong)),
+      Map.entry(Short.class, new CompactKeyCodec(2, (key, buf) -> buf.writeShort((Short) key), ByteBuf::readShort)),
+      Map.entry(Byte.class, new CompactKeyCodec(1, (key, buf) -> buf.writeByte((Byte) key), ByteBuf::readByte)),
+      Map.entry(Character.class, new CompactKeyCodec(2, (key, buf) -> buf.writeChar((Character) key), ByteBuf::readChar)),
+      Map.entry(Boolean.class, new CompactKeyCodec(1, (key, buf) -> buf.writeBoolean((Boolean) key), ByteBuf::readBoolean)),
+      Map.entry(Float.class, new CompactKeyCodec(4, (key, buf) -> buf.writeFloat((Float) key), ByteBuf::readFloat)),
+      Map.entry(Double.class, new CompactKeyCodec(8, (key, buf) -> buf.writeDouble((Double) key), ByteBuf::readDouble))
+  );
+
+  private static final Map<Class<?>, Class<?>> PRIMITIVE_WRAPPERS = Map.of(
+      int.class, Integer.class,
+      long.class, Long.class,
+      short.class, Short.class,
+      byte.class, Byte.class,
+      char.class, Character.class,
+      boolean.class, Boolean.class,
+      float.class, Float.class,
+      double.class, Double.class
+  );
+
+  /**
+   * Looks up the compact codec for a key type.
+   *
+   * @param keyType The type of the keys.
+   * @return The compact codec or null if the type has no compact representation.
+   */
+  public static CompactKeyCodec forType(Class<?> keyType) {
+    return CODECS.get(PRIMITIVE_WRAPPERS.getOrDefault(keyType, keyType));
+  }
+
+  private final int initialCapacity;
+  private final BiConsumer<Object, ByteBuf> writer;
+  private final Function<ByteBuf, Object> reader;
+
+  private CompactKeyCodec(int initialCapacity, BiConsumer<Object, ByteBuf> writer, Function<ByteBuf, Object> reader) {
+    this.initialCapacity = initialCapacity;
+    this.writer = writer;
+    this.reader = reader;
+  }
+
+  @Override
+  public ByteBuf encode(Object in) {
+    ByteBuf out = ByteBufAllocator.DEFAULT.buffer(this.initialCapacity);
+    this.writer.accept(in, out);
+    return out;
+  }
+
+  @Override
+  public Object decode(ByteBuf buf, State state) {
+    return this.reader.apply(buf);
+  }
+}
@@ -0,0 +1,85 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.codec;
+
+import com.google.gson.Gson;
+import org.redisson.client.codec.BaseCodec;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
+
+/**
+ * A codec bound to a fixed key and value type.
+ * Unlike the {@link RedissonGsonCodec} no class names are written, as both types are known on decode.
+ * Keys with a compact representation (see {@link CompactKeyCodec}) skip json entirely.
+ */
+public class TypedGsonCodec extends BaseCodec {
+
+  /**
+   * Creates a codec for sets and sorted sets whose elements are map keys.
+   * Elements use the same encoding as the map keys of {@link #TypedGsonCodec(Gson, Class, Class)}.
+   *
+   * @param gson        The gson instance used for types without compact representation.
+   * @param elementType The type of the elements.
+   * @return The element codec.
+   */
+  public static TypedGsonCodec forElements(Gson gson, Class<?> elementType) {
+    Encoder elementEncoder = keyEncoder(gson, elementType);
+    Decoder<Object> elementDecoder = keyDecoder(gson, elementType);
+    return new TypedGsonCodec(elementEncoder, elementDecoder, elementEncoder, elementDecoder, gson.getClass().getClassLoader());
+  }
+
+  private static Encoder keyEncoder(Gson gson, Class<?> keyType) {
+    CompactKeyCodec compactKeyCodec = CompactKeyCodec.forType(keyType);
+    return compactKeyCodec != null ? compactKeyCodec : new TypedGsonEncoder(gson, keyType);
+  }
+
+  private static Decoder<Object> keyDecoder(Gson gson, Class<?> keyType) {
+    CompactKeyCodec compactKeyCodec = CompactKeyCodec.forType(keyType);
+    return compactKeyCodec != null ? compactKeyCodec : new TypedGsonDecoder(gson, keyType);
+  }
+
+  private final Encoder keyEncoder;
+  private final Decoder<Object> keyDecoder;
+  private final Encoder valueEncoder;
+  private final Decoder<Object> valueDecoder;
+  private final ClassLoader classLoader;
+
+  private TypedGsonCodec(Encoder keyEncoder, Decoder<Object> keyDecoder, Encoder valueEncoder, Decoder<Object> valueDecoder, ClassLoader classLoader) {
+    this.keyEncoder = keyEncoder;
+    this.keyDecoder = keyDecoder;
+    this.valueEncoder = valueEncoder;
+    this.valueDecoder = valueDecoder;
+    this.classLoader = classLoader;
+  }
+
+  public TypedGsonCodec(Gson gson, Class<?> keyType, Class<?> valueType, ClassLoader classLoader) {
+    this(keyEncoder(gson, keyType), keyDecoder(gson, keyType), new TypedGsonEncoder(gson, valueType), new TypedGsonDecoder(gson, valueType), classLoader);
+  }
+
+  public TypedGsonCodec(Gson gson, Class<?> keyType, Class<?> valueType) {
+    this(gson, keyType, valueType, gson.getClass().getClassLoader());
+  }
+
+  @Override
+  public Decoder<Object> getMapKeyDecoder() {
+    return this.keyDecoder;
+  }
+
+  @Override
+  public Encoder getMapKeyEncoder() {
+    return this.keyEncoder;
+  }
+
+  @Override
+  public Decoder<Object> getValueDecoder() {
+    return this.valueDecoder;
+  }
+
+  @Override
+  public Encoder getValueEncoder() {
+    return this.valueEncoder;
+  }
+
+  @Override
+  public ClassLoader getClassLoader() {
+    return this.classLoader;
+  }
+}
@@ -0,0 +1,34 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.codec;
+
+import com.google.gson.Gson;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import org.redisson.client.handler.State;
+import org.redisson.client.protocol.Decoder;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes plain UTF-8 json straight into a fixed type.
+ * Counterpart of the {@link TypedGsonEncoder}.
+ */
+public class TypedGsonDecoder implements Decoder<Object> {
+
+  private final Gson gson;
+  private final Class<?> type;
+
+  public TypedGsonDecoder(Gson gson, Class<?> type) {
+    this.gson = gson;
+    this.type = type;
+  }
+
+  @Override
+  public Object decode(ByteBuf buf, State state) throws IOException {
+    try (Reader reader = new InputStreamReader(new ByteBufInputStream(buf), StandardCharsets.UTF_8)) {
+      return this.gson.fromJson(reader, this.type);
+    }
+  }
+}
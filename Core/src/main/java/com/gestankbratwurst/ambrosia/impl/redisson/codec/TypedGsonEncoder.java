@@ -0,0 +1,39 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.codec;
+
+import com.google.gson.Gson;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import org.redisson.client.protocol.Encoder;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes values as plain UTF-8 json without any type information.
+ * The type is known up front by the matching {@link TypedGsonDecoder}.
+ */
+public class TypedGsonEncoder implements Encoder {
+
+  private final Gson gson;
+  private final Class<?> type;
+
+  public TypedGsonEncoder(Gson gson, Class<?> type) {
+    this.gson = gson;
+    this.type = type;
+  }
+
+  @Override
+  public ByteBuf encode(Object in) throws IOException {
+    ByteBuf out = ByteBufAllocator.DEFAULT.buffer();
+    try (Writer writer = new OutputStreamWriter(new ByteBufOutputStream(out), StandardCharsets.UTF_8)) {
+      this.gson.toJson(in, this.type, writer);
+    } catch (Exception e) {
+      out.release();
+      throw new IOException(e);
+    }
+    return out;
+  }
+}
@@ -0,0 +1,159 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.collections;
+
+import org.jetbrains.annotations.NotNull;
+import org.redisson.api.RMapCache;
+import org.redisson.api.map.event.EntryExpiredListener;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * A redis map view whose entries can expire after a time to live or an idle timeout.
+ * Expired entries are removed by redis, so no manual cleanup is needed.
+ * Puts without an explicit duration use the defaults this view was created with.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class RedissonExpiringMap<K, V> extends RedissonMapView<K, V, RMapCache<K, V>> {
+
+  private final Duration defaultTimeToLive;
+  private final Duration defaultMaxIdle;
+
+  public RedissonExpiringMap(RMapCache<K, V> backbone, Duration defaultTimeToLive, Duration defaultMaxIdle) {
+    super(backbone);
+    this.defaultTimeToLive = defaultTimeToLive;
+    this.defaultMaxIdle = defaultMaxIdle;
+  }
+
+  /**
+   * Gets the time to live of puts without an explicit duration.
+   *
+   * @return The default time to live or {@link Duration#ZERO} if entries are kept.
+   */
+  public Duration getDefaultTimeToLive() {
+    return this.defaultTimeToLive;
+  }
+
+  /**
+   * Gets the max idle time of puts without an explicit duration.
+   *
+   * @return The default max idle time or {@link Duration#ZERO} if idle entries are kept.
+   */
+  public Duration getDefaultMaxIdle() {
+    return this.defaultMaxIdle;
+  }
+
+  private boolean hasDefaults() {
+    return !this.defaultTimeToLive.isZero() || !this.defaultMaxIdle.isZero();
+  }
+
+  @Override
+  public V put(K key, V value) {
+    if (!this.hasDefaults()) {
+      return super.put(key, value);
+    }
+    return this.put(key, value, this.defaultTimeToLive, this.defaultMaxIdle);
+  }
+
+  /**
+   * Puts a value into the map that expires after the given time to live.
+   *
+   * @param key        The key to put the value under.
+   * @param value      The value to put.
+   * @param timeToLive The time to live or {@link Duration#ZERO} to keep the entry.
+   * @return The old value associated with the key or null if the key did not exist.
+   */
+  public V put(K key, V value, Duration timeToLive) {
+    return this.put(key, value, timeToLive, this.defaultMaxIdle);
+  }
+
+  /**
+   * Puts a value into the map that expires after the given time to live or
+   * if it was not accessed for the given idle time, whichever comes first.
+   *
+   * @param key        The key to put the value under.
+   * @param value      The value to put.
+   * @param timeToLive The time to live or {@link Duration#ZERO} to keep the entry.
+   * @param maxIdle    The max idle time or {@link Duration#ZERO} to keep the idle entry.
+   * @return The old value associated with the key or null if the key did not exist.
+   */
+  public V put(K key, V value, Duration timeToLive, Duration maxIdle) {
+    return this.getBackbone().put(key, value, timeToLive.toMillis(), TimeUnit.MILLISECONDS, maxIdle.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void fastPut(K key, V value) {
+    if (!this.hasDefaults()) {
+      super.fastPut(key, value);
+      return;
+    }
+    this.fastPut(key, value, this.defaultTimeToLive, this.defaultMaxIdle);
+  }
+
+  /**
+   * Puts a value into the map that expires after the given time to live, without returning the old value.
+   *
+   * @param key        The key to put the value under.
+   * @param value      The value to put.
+   * @param timeToLive The time to live or {@link Duration#ZERO} to keep the entry.
+   */
+  public void fastPut(K key, V value, Duration timeToLive) {
+    this.fastPut(key, value, timeToLive, this.defaultMaxIdle);
+  }
+
+  /**
+   * Puts a value into the map that expires after the given time to live or idle time, without returning the old value.
+   *
+   * @param key        The key to put the value under.
+   * @param value      The value to put.
+   * @param timeToLive The time to live or {@link Duration#ZERO} to keep the entry.
+   * @param maxIdle    The max idle time or {@link Duration#ZERO} to keep the idle entry.
+   */
+  public void fastPut(K key, V value, Duration timeToLive, Duration maxIdle) {
+    this.getBackbone().fastPut(key, value, timeToLive.toMillis(), TimeUnit.MILLISECONDS, maxIdle.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void putAll(@NotNull Map<? extends K, ? extends V> map) {
+    if (!this.hasDefaults()) {
+      super.putAll(map);
+    } else if (this.defaultMaxIdle.isZero()) {
+      this.getBackbone().putAll(map, this.defaultTimeToLive.toMillis(), TimeUnit.MILLISECONDS);
+    } else {
+      map.forEach(this::fastPut);
+    }
+  }
+
+  /**
+   * Gets the remaining time to live of an entry.
+   *
+   * @param key The key of the entry.
+   * @return The remaining time to live, or null if the entry does not exist or does not expire.
+   */
+  public Duration getTimeToLive(K key) {
+    long millis = this.getBackbone().remainTimeToLive(key);
+    return millis < 0 ? null : Duration.ofMillis(millis);
+  }
+
+  /**
+   * Registers a listener that is called whenever an entry expires.
+   *
+   * @param listener The listener receiving the key and the expired value.
+   * @return The id of the listener, used to remove it again.
+   */
+  public int onExpire(BiConsumer<K, V> listener) {
+    return this.getBackbone().addListener((EntryExpiredListener<K, V>) event -> listener.accept(event.getKey(), event.getValue()));
+  }
+
+  /**
+   * Removes a listener registered with {@link #onExpire(BiConsumer)}.
+   *
+   * @param listenerId The id of the listener.
+   */
+  public void removeListener(int listenerId) {
+    this.getBackbone().removeListener(listenerId);
+  }
+}
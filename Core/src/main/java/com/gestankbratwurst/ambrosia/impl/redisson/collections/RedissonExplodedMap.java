@@ -0,0 +1,307 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.collections;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.internal.Primitives;
+import org.jetbrains.annotations.NotNull;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RMap;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RScript;
+import org.redisson.api.RSet;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * A map view that stores every object in its own redis hash {@code {mapName}:<key>}, with its top level fields as json.
+ * Single fields can be read and written without loading the whole object.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class RedissonExplodedMap<K, V> implements Map<K, V> {
+
+  private static final String INCREMENT_SCRIPT = "redis.call('SADD', KEYS[2], ARGV[3]); return redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])";
+  private static final String INCREMENT_FLOAT_SCRIPT = "redis.call('SADD', KEYS[2], ARGV[3]); return redis.call('HINCRBYFLOAT', KEYS[1], ARGV[1], ARGV[2])";
+  private static final String SET_FIELD_SCRIPT = "redis.call('SADD', KEYS[2], ARGV[3]); return redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])";
+
+  private final RedissonClient client;
+  private final Gson gson;
+  private final String indexName;
+  private final Class<K> keyType;
+  private final Class<V> valueType;
+
+  public RedissonExplodedMap(RedissonClient client, Gson gson, String mapName, Class<K> keyType, Class<V> valueType) {
+    this.client = client;
+    this.gson = gson;
+    this.indexName = "{" + mapName + "}";
+    // Boxed, as keys are always passed as objects.
+    this.keyType = Primitives.wrap(keyType);
+    this.valueType = valueType;
+  }
+
+  private String serializeKey(K key) {
+    if (this.keyType.isPrimitive() || key instanceof Number || key instanceof Boolean || key instanceof Character) {
+      return String.valueOf(key);
+    } else if (key instanceof String) {
+      return (String) key;
+    } else if (key instanceof UUID) {
+      return key.toString();
+    }
+    return this.gson.toJson(key);
+  }
+
+  private K deserializeKey(String serializedKey) {
+    if (this.keyType == String.class) {
+      return this.keyType.cast(serializedKey);
+    } else if (this.keyType == UUID.class) {
+      return this.keyType.cast(UUID.fromString(serializedKey));
+    }
+    // Plain numbers, booleans and json share the same representation.
+    return this.gson.fromJson(serializedKey, this.keyType);
+  }
+
+  private String hashName(String serializedKey) {
+    return this.indexName + ":" + serializedKey;
+  }
+
+  private RMap<String, String> getHash(String serializedKey) {
+    return this.client.getMap(this.hashName(serializedKey), StringCodec.INSTANCE);
+  }
+
+  private RSet<String> getIndex() {
+    return this.client.getSet(this.indexName, StringCodec.INSTANCE);
+  }
+
+  private V assemble(String serializedKey, Map<String, String> fields) {
+    if (fields.isEmpty() && !this.getIndex().contains(serializedKey)) {
+      return null;
+    }
+    JsonObject object = new JsonObject();
+    fields.forEach((field, json) -> object.add(field, JsonParser.parseString(json)));
+    return this.gson.fromJson(object, this.valueType);
+  }
+
+  private Map<String, String> explode(V value) {
+    JsonElement element = this.gson.toJsonTree(value, this.valueType);
+    if (!element.isJsonObject()) {
+      throw new IllegalArgumentException("Exploded map views can only store json objects, got: " + element);
+    }
+    Map<String, String> fields = new LinkedHashMap<>();
+    element.getAsJsonObject().asMap().forEach((field, json) -> fields.put(field, json.toString()));
+    return fields;
+  }
+
+  private V load(K key) {
+    String serializedKey = this.serializeKey(key);
+    return this.assemble(serializedKey, this.getHash(serializedKey).readAllMap());
+  }
+
+  /**
+   * Queries a single field of an object without loading the whole object.
+   *
+   * @param key   The key of the object.
+   * @param field The name of the top level field.
+   * @param type  The type of the field.
+   * @return The value of the field or null if the object or field does not exist.
+   */
+  public <E> E getField(K key, String field, Class<E> type) {
+    String json = this.getHash(this.serializeKey(key)).get(field);
+    return json == null ? null : this.gson.fromJson(json, type);
+  }
+
+  /**
+   * Writes a single field of an object without loading or rewriting the whole object.
+   * Creates the object if it does not exist.
+   *
+   * @param key   The key of the object.
+   * @param field The name of the top level field.
+   * @param value The new value of the field.
+   */
+  public void setField(K key, String field, Object value) {
+    String serializedKey = this.serializeKey(key);
+    this.client.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, SET_FIELD_SCRIPT, RScript.ReturnType.INTEGER,
+        List.of(this.hashName(serializedKey), this.indexName), field, this.gson.toJson(value), serializedKey);
+  }
+
+  /**
+   * Atomically increments an integer field of an object (HINCRBY).
+   * A missing field is treated as 0. Creates the object if it does not exist.
+   *
+   * @param key   The key of the object.
+   * @param field The name of the top level field.
+   * @param delta The amount to add.
+   * @return The value of the field after the increment.
+   */
+  public long incrementField(K key, String field, long delta) {
+    String serializedKey = this.serializeKey(key);
+    return this.client.getScript(StringCodec.INSTANCE).<Long>eval(RScript.Mode.READ_WRITE, INCREMENT_SCRIPT, RScript.ReturnType.INTEGER,
+        List.of(this.hashName(serializedKey), this.indexName), field, String.valueOf(delta), serializedKey);
+  }
+
+  /**
+   * Atomically increments a floating point field of an object (HINCRBYFLOAT).
+   * A missing field is treated as 0. Creates the object if it does not exist.
+   *
+   * @param key   The key of the object.
+   * @param field The name of the top level field.
+   * @param delta The amount to add.
+   * @return The value of the field after the increment.
+   */
+  public double incrementField(K key, String field, double delta) {
+    String serializedKey = this.serializeKey(key);
+    String result = this.client.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, INCREMENT_FLOAT_SCRIPT, RScript.ReturnType.VALUE,
+        List.of(this.hashName(serializedKey), this.indexName), field, String.valueOf(delta), serializedKey);
+    return Double.parseDouble(result);
+  }
+
+  @Override
+  public int size() {
+    return this.getIndex().size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return this.size() == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    if (!this.keyType.isInstance(key)) {
+      return false;
+    }
+    return this.getIndex().contains(this.serializeKey(this.keyType.cast(key)));
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    return this.values().contains(value);
+  }
+
+  @Override
+  public V get(Object key) {
+    if (!this.keyType.isInstance(key)) {
+      return null;
+    }
+    return this.load(this.keyType.cast(key));
+  }
+
+  @Override
+  public V put(K key, V value) {
+    V replaced = this.load(key);
+    this.fastPut(key, value);
+    return replaced;
+  }
+
+  /**
+   * Replaces the whole object atomically, without returning the old value.
+   *
+   * @param key   The key to put the value under.
+   * @param value The value to put.
+   */
+  public void fastPut(K key, V value) {
+    String serializedKey = this.serializeKey(key);
+    String hashName = this.hashName(serializedKey);
+    Map<String, String> fields = this.explode(value);
+
+    RBatch batch = this.client.createBatch(BatchOptions.defaults().executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+    batch.getKeys().deleteAsync(hashName);
+    if (!fields.isEmpty()) {
+      batch.getMap(hashName, StringCodec.INSTANCE).putAllAsync(fields);
+    }
+    batch.getSet(this.indexName, StringCodec.INSTANCE).addAsync(serializedKey);
+    batch.execute();
+  }
+
+  @Override
+  public V remove(Object key) {
+    if (!this.keyType.isInstance(key)) {
+      return null;
+    }
+    K typedKey = this.keyType.cast(key);
+    V removed = this.load(typedKey);
+    this.fastRemove(typedKey);
+    return removed;
+  }
+
+  public void fastRemove(K key) {
+    String serializedKey = this.serializeKey(key);
+    RBatch batch = this.client.createBatch(BatchOptions.defaults().executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+    batch.getKeys().deleteAsync(this.hashName(serializedKey));
+    batch.getSet(this.indexName, StringCodec.INSTANCE).removeAsync(serializedKey);
+    batch.execute();
+  }
+
+  @Override
+  public void putAll(@NotNull Map<? extends K, ? extends V> map) {
+    map.forEach(this::fastPut);
+  }
+
+  @Override
+  public void clear() {
+    Set<String> serializedKeys = this.getIndex().readAll();
+    List<String> names = new ArrayList<>(serializedKeys.size() + 1);
+    serializedKeys.forEach(serializedKey -> names.add(this.hashName(serializedKey)));
+    names.add(this.indexName);
+    this.client.getKeys().delete(names.toArray(String[]::new));
+  }
+
+  @NotNull
+  @Override
+  public Set<K> keySet() {
+    return this.getIndex().readAll().stream().map(this::deserializeKey).collect(Collectors.toSet());
+  }
+
+  /**
+   * Loads all objects with one pipelined request.
+   *
+   * @return A map of all objects by their serialized key.
+   */
+  private Map<String, V> loadAll() {
+    Set<String> serializedKeys = this.getIndex().readAll();
+    RBatch batch = this.client.createBatch();
+    Map<String, RFuture<Map<String, String>>> futures = new HashMap<>();
+    for (String serializedKey : serializedKeys) {
+      RMapAsync<String, String> hash = batch.getMap(this.hashName(serializedKey), StringCodec.INSTANCE);
+      futures.put(serializedKey, hash.readAllMapAsync());
+    }
+    batch.execute();
+
+    Map<String, V> values = new HashMap<>();
+    futures.forEach((serializedKey, future) -> {
+      Map<String, String> fields = future.toCompletableFuture().join();
+      JsonObject object = new JsonObject();
+      fields.forEach((field, json) -> object.add(field, JsonParser.parseString(json)));
+      values.put(serializedKey, this.gson.fromJson(object, this.valueType));
+    });
+    return values;
+  }
+
+  @NotNull
+  @Override
+  public Collection<V> values() {
+    return new ArrayList<>(this.loadAll().values());
+  }
+
+  @NotNull
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    return this.loadAll().entrySet().stream()
+        .map(entry -> Map.entry(this.deserializeKey(entry.getKey()), entry.getValue()))
+        .collect(Collectors.toSet());
+  }
+}
@@ -0,0 +1,246 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.collections;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.internal.Primitives;
+import org.jetbrains.annotations.NotNull;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RMap;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RScoredSortedSetAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.protocol.ScoredEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A redis map view that keeps a sorted set of its keys, scored by a numeric property of the values.
+ * Writes through this view update both atomically. Writes that bypass it need a {@link #rebuildRanking()}.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class RedissonLeaderboardMap<K, V> extends RedissonMapView<K, V, RMap<K, V>> {
+
+  private final RedissonClient client;
+  private final RScoredSortedSet<K> ranking;
+  private final Gson gson;
+  private final Class<K> keyType;
+  private final Class<V> valueType;
+  private final String[] propertyPath;
+  private final boolean ascending;
+
+  /**
+   * Names the sorted set of a ranking. Redis cluster only hashes the hash tag of a key, so the name hashes like the
+   * name of the map, unless the map name already has a hash tag, which is kept.
+   *
+   * @param mapName  The name of the redis hash.
+   * @param property The ranked property.
+   * @return The name of the sorted set.
+   */
+  public static String rankingName(String mapName, String property) {
+    int open = mapName.indexOf('{');
+    int close = open < 0 ? -1 : mapName.indexOf('}', open + 1);
+    String hashTagged = close > open + 1 ? mapName : "{" + mapName + "}";
+    return hashTagged + ":ranking:" + property;
+  }
+
+  /**
+   * @param backbone  The map holding the values.
+   * @param ranking   The sorted set holding the scored keys.
+   * @param client    The client used to create batches.
+   * @param gson      The gson instance used to extract the property.
+   * @param keyType   The type of the keys.
+   * @param valueType The type of the values.
+   * @param property  The numeric property to rank by. Nested properties are separated by dots.
+   * @param ascending True if the lowest score should be ranked first.
+   */
+  public RedissonLeaderboardMap(RMap<K, V> backbone, RScoredSortedSet<K> ranking, RedissonClient client, Gson gson,
+                                Class<K> keyType, Class<V> valueType, String property, boolean ascending) {
+    super(backbone);
+    this.client = client;
+    this.ranking = ranking;
+    this.gson = gson;
+    // Boxed, as keys are always passed as objects.
+    this.keyType = Primitives.wrap(keyType);
+    this.valueType = valueType;
+    this.propertyPath = property.split("\\.");
+    this.ascending = ascending;
+  }
+
+  private Double score(V value) {
+    JsonElement element = this.gson.toJsonTree(value, this.valueType);
+    for (String part : this.propertyPath) {
+      if (!element.isJsonObject()) {
+        return null;
+      }
+      element = element.getAsJsonObject().get(part);
+      if (element == null || element.isJsonNull()) {
+        return null;
+      }
+    }
+    if (!element.isJsonPrimitive() || !element.getAsJsonPrimitive().isNumber()) {
+      throw new IllegalArgumentException("Ranked property " + String.join(".", this.propertyPath) + " is not numeric: " + element);
+    }
+    return element.getAsDouble();
+  }
+
+  private RBatch createBatch() {
+    return this.client.createBatch(BatchOptions.defaults().executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+  }
+
+  private RMapAsync<K, V> getMap(RBatch batch) {
+    return batch.getMap(this.getName(), this.getBackbone().getCodec());
+  }
+
+  private RScoredSortedSetAsync<K> getRanking(RBatch batch) {
+    return batch.getScoredSortedSet(this.ranking.getName(), this.ranking.getCodec());
+  }
+
+  private void queueScore(RBatch batch, K key, V value) {
+    Double score = this.score(value);
+    if (score == null) {
+      this.getRanking(batch).removeAsync(key);
+    } else {
+      this.getRanking(batch).addAsync(score, key);
+    }
+  }
+
+  /**
+   * Puts a value into the map and updates its score.
+   *
+   * @param key   The key to put the value under.
+   * @param value The value to put.
+   * @return The old value associated with the key or null if the key did not exist.
+   */
+  @Override
+  public V put(K key, V value) {
+    RBatch batch = this.createBatch();
+    RFuture<V> replaced = this.getMap(batch).putAsync(key, value);
+    this.queueScore(batch, key, value);
+    batch.execute();
+    return replaced.toCompletableFuture().join();
+  }
+
+  /**
+   * Puts a value into the map and updates its score, without returning the old value.
+   *
+   * @param key   The key to put the value under.
+   * @param value The value to put.
+   */
+  @Override
+  public void fastPut(K key, V value) {
+    RBatch batch = this.createBatch();
+    this.getMap(batch).fastPutAsync(key, value);
+    this.queueScore(batch, key, value);
+    batch.execute();
+  }
+
+  @Override
+  public void putAll(@NotNull Map<? extends K, ? extends V> map) {
+    RBatch batch = this.createBatch();
+    this.getMap(batch).putAllAsync(map);
+    map.forEach((key, value) -> this.queueScore(batch, key, value));
+    batch.execute();
+  }
+
+  @Override
+  public V remove(Object key) {
+    if (!this.keyType.isInstance(key)) {
+      return null;
+    }
+    K typedKey = this.keyType.cast(key);
+    RBatch batch = this.createBatch();
+    RFuture<V> removed = this.getMap(batch).removeAsync(typedKey);
+    this.getRanking(batch).removeAsync(typedKey);
+    batch.execute();
+    return removed.toCompletableFuture().join();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void fastRemove(K key) {
+    RBatch batch = this.createBatch();
+    this.getMap(batch).fastRemoveAsync(key);
+    this.getRanking(batch).removeAsync(key);
+    batch.execute();
+  }
+
+  @Override
+  public void clear() {
+    RBatch batch = this.createBatch();
+    this.getMap(batch).deleteAsync();
+    this.getRanking(batch).deleteAsync();
+    batch.execute();
+  }
+
+  /**
+   * Recomputes the scores of all values in the map.
+   * This loads every value and should only be used after writes that bypassed this view.
+   */
+  public void rebuildRanking() {
+    Map<K, V> entries = this.getBackbone().readAllMap();
+    RBatch batch = this.createBatch();
+    this.getRanking(batch).deleteAsync();
+    entries.forEach((key, value) -> this.queueScore(batch, key, value));
+    batch.execute();
+  }
+
+  /**
+   * Gets the rank of a key, starting at 0 for the first place.
+   *
+   * @param key The key to query for.
+   * @return The rank of the key or null if the key is not ranked.
+   */
+  public Integer rankOf(K key) {
+    return this.ascending ? this.ranking.rank(key) : this.ranking.revRank(key);
+  }
+
+  /**
+   * Gets the score of a key.
+   *
+   * @param key The key to query for.
+   * @return The score of the key or null if the key is not ranked.
+   */
+  public Double scoreOf(K key) {
+    return this.ranking.getScore(key);
+  }
+
+  /**
+   * Gets the first n keys of the ranking with their scores.
+   *
+   * @param amount The amount of keys.
+   * @return The scored keys, ordered by rank.
+   */
+  public List<ScoredEntry<K>> top(int amount) {
+    if (amount <= 0) {
+      return List.of();
+    }
+    return this.range(0, amount - 1);
+  }
+
+  /**
+   * Gets the keys between two ranks with their scores.
+   *
+   * @param from The first rank, inclusive.
+   * @param to   The last rank, inclusive.
+   * @return The scored keys, ordered by rank.
+   */
+  public List<ScoredEntry<K>> range(int from, int to) {
+    return new ArrayList<>(this.ascending ? this.ranking.entryRange(from, to) : this.ranking.entryRangeReversed(from, to));
+  }
+
+  /**
+   * Gets the sorted set holding the ranking.
+   *
+   * @return The sorted set of scored keys.
+   */
+  public RScoredSortedSet<K> getRanking() {
+    return this.ranking;
+  }
+}
@@ -0,0 +1,102 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.collections;
+
+import org.redisson.api.RLocalCachedMap;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A redis map view with a local near-cache.
+ * Reads of cached entries are served without a round trip to redis.
+ * Hits and misses of {@link #get(Object)} are counted and exposed via {@link #getStatistics()}.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class RedissonLocalCachedMap<K, V> extends RedissonMapView<K, V, RLocalCachedMap<K, V>> {
+
+  private final Map<K, V> cachedMap;
+  private final LongAdder hits;
+  private final LongAdder misses;
+
+  public RedissonLocalCachedMap(RLocalCachedMap<K, V> backbone) {
+    super(backbone);
+    // A live view of the local cache, so it is only created once.
+    this.cachedMap = backbone.getCachedMap();
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+  }
+
+  /**
+   * Gets a value from the local cache or loads it from redis on a cache miss.
+   *
+   * @param key The key to query for.
+   * @return The value associated with the key or null if the key does not exist.
+   */
+  @Override
+  public V get(Object key) {
+    V cached = this.cachedMap.get(key);
+    if (cached != null) {
+      this.hits.increment();
+      return cached;
+    }
+    this.misses.increment();
+    // Redisson can only load through its cache, so a miss checks it once more before the round trip.
+    return this.getBackbone().get(key);
+  }
+
+  /**
+   * Loads all entries of the redis hash into the local cache.
+   */
+  public void preload() {
+    this.getBackbone().preloadCache();
+  }
+
+  /**
+   * Drops all entries of the local cache. The redis hash is not modified.
+   */
+  public void clearLocalCache() {
+    this.getBackbone().clearLocalCache();
+  }
+
+  /**
+   * Releases the local cache and its invalidation listeners. The redis hash is not modified.
+   * The view must not be used afterwards.
+   */
+  public void destroy() {
+    this.getBackbone().destroy();
+  }
+
+  /**
+   * Creates a snapshot of the cache statistics.
+   *
+   * @return The current cache statistics.
+   */
+  public LocalCacheStatistics getStatistics() {
+    return new LocalCacheStatistics(this.hits.sum(), this.misses.sum(), this.cachedMap.size());
+  }
+
+  /**
+   * Resets the hit and miss counters.
+   */
+  public void resetStatistics() {
+    this.hits.reset();
+    this.misses.reset();
+  }
+
+  /**
+   * A snapshot of the statistics of a local cache.
+   *
+   * @param hits          The amount of reads served by the local cache.
+   * @param misses        The amount of reads that required a round trip to redis.
+   * @param cachedEntries The amount of entries currently held by the local cache.
+   */
+  public record LocalCacheStatistics(long hits, long misses, int cachedEntries) {
+
+    public double hitRate() {
+      long requests = this.hits + this.misses;
+      return requests == 0 ? 0 : (double) this.hits / requests;
+    }
+
+  }
+}
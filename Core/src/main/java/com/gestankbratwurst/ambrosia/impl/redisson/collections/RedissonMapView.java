@@ -0,0 +1,127 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.collections;
+
+import org.jetbrains.annotations.NotNull;
+import org.redisson.api.RMap;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base class for map views that wrap a redisson map and add behaviour on top of it.
+ * All plain map operations are delegated to the backbone.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ * @param <M> The type of the wrapped redisson map.
+ */
+public abstract class RedissonMapView<K, V, M extends RMap<K, V>> implements Map<K, V> {
+
+  private final M backbone;
+
+  protected RedissonMapView(M backbone) {
+    this.backbone = backbone;
+  }
+
+  /**
+   * Gets the wrapped redisson map.
+   * Operations on the backbone bypass any behaviour added by this view.
+   *
+   * @return The wrapped redisson map.
+   */
+  public M getBackbone() {
+    return this.backbone;
+  }
+
+  /**
+   * Gets the name of the underlying redis object.
+   *
+   * @return The name of the redis object.
+   */
+  public String getName() {
+    return this.backbone.getName();
+  }
+
+  @Override
+  public int size() {
+    return this.backbone.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return this.backbone.isEmpty();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return this.backbone.containsKey(key);
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    return this.backbone.containsValue(value);
+  }
+
+  @Override
+  public V get(Object key) {
+    return this.backbone.get(key);
+  }
+
+  @Override
+  public V put(K key, V value) {
+    return this.backbone.put(key, value);
+  }
+
+  /**
+   * Puts a value into the map without returning the old value.
+   *
+   * @param key   The key to put the value under.
+   * @param value The value to put.
+   */
+  public void fastPut(K key, V value) {
+    this.backbone.fastPut(key, value);
+  }
+
+  @Override
+  public V remove(Object key) {
+    return this.backbone.remove(key);
+  }
+
+  /**
+   * Removes a value from the map without returning the old value.
+   *
+   * @param key The key to remove.
+   */
+  @SuppressWarnings("unchecked")
+  public void fastRemove(K key) {
+    this.backbone.fastRemove(key);
+  }
+
+  @Override
+  public void putAll(@NotNull Map<? extends K, ? extends V> map) {
+    this.backbone.putAll(map);
+  }
+
+  @Override
+  public void clear() {
+    this.backbone.clear();
+  }
+
+  @NotNull
+  @Override
+  public Set<K> keySet() {
+    return this.backbone.keySet();
+  }
+
+  @NotNull
+  @Override
+  public Collection<V> values() {
+    return this.backbone.values();
+  }
+
+  @NotNull
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    return this.backbone.entrySet();
+  }
+}
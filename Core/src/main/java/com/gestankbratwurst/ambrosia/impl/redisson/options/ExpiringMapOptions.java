@@ -0,0 +1,82 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.options;
+
+import java.time.Duration;
+
+/**
+ * Options for redis map views with expiring entries.
+ * By default, entries don't expire unless a time to live is passed on put.
+ */
+public final class ExpiringMapOptions {
+
+  public static ExpiringMapOptions defaults() {
+    return new ExpiringMapOptions();
+  }
+
+  private Duration timeToLive = Duration.ZERO;
+  private Duration maxIdle = Duration.ZERO;
+  private int maxSize;
+  private EvictionMode evictionMode = EvictionMode.LRU;
+
+  private ExpiringMapOptions() {
+  }
+
+  /**
+   * Sets the time to live used by puts that don't specify one.
+   *
+   * @param timeToLive The default time to live or {@link Duration#ZERO} to keep entries.
+   * @return This options instance.
+   */
+  public ExpiringMapOptions timeToLive(Duration timeToLive) {
+    this.timeToLive = timeToLive;
+    return this;
+  }
+
+  /**
+   * Sets the max idle time used by puts that don't specify one.
+   * Entries that are not accessed for this duration are removed.
+   *
+   * @param maxIdle The default max idle time or {@link Duration#ZERO} to keep idle entries.
+   * @return This options instance.
+   */
+  public ExpiringMapOptions maxIdle(Duration maxIdle) {
+    this.maxIdle = maxIdle;
+    return this;
+  }
+
+  /**
+   * Limits the amount of entries. Once reached, entries are evicted according to the eviction mode.
+   *
+   * @param maxSize      The maximum amount of entries or 0 for an unbounded map.
+   * @param evictionMode The mode used to pick evicted entries.
+   * @return This options instance.
+   */
+  public ExpiringMapOptions maxSize(int maxSize, EvictionMode evictionMode) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("Max size must not be negative.");
+    }
+    this.maxSize = maxSize;
+    this.evictionMode = evictionMode;
+    return this;
+  }
+
+  public Duration getTimeToLive() {
+    return this.timeToLive;
+  }
+
+  public Duration getMaxIdle() {
+    return this.maxIdle;
+  }
+
+  public int getMaxSize() {
+    return this.maxSize;
+  }
+
+  public EvictionMode getEvictionMode() {
+    return this.evictionMode;
+  }
+
+  public enum EvictionMode {
+    LRU,
+    LFU
+  }
+}
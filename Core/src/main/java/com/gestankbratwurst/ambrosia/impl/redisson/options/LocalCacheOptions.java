@@ -0,0 +1,123 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.options;
+
+import org.redisson.api.options.LocalCachedMapOptions;
+
+import java.time.Duration;
+
+/**
+ * Options for redis map views with a local near-cache.
+ * Unset values fall back to the redisson defaults.
+ */
+public final class LocalCacheOptions {
+
+  public static LocalCacheOptions defaults() {
+    return new LocalCacheOptions();
+  }
+
+  private int cacheSize;
+  private EvictionPolicy evictionPolicy = EvictionPolicy.NONE;
+  private SyncStrategy syncStrategy = SyncStrategy.INVALIDATE;
+  private Duration timeToLive = Duration.ZERO;
+  private Duration maxIdle = Duration.ZERO;
+
+  private LocalCacheOptions() {
+  }
+
+  /**
+   * Sets the maximum amount of locally cached entries.
+   *
+   * @param cacheSize The maximum amount of entries or 0 for an unbounded cache.
+   * @return This options instance.
+   */
+  public LocalCacheOptions cacheSize(int cacheSize) {
+    if (cacheSize < 0) {
+      throw new IllegalArgumentException("Cache size must not be negative.");
+    }
+    this.cacheSize = cacheSize;
+    return this;
+  }
+
+  /**
+   * Sets the policy used to evict entries once the cache size is reached.
+   *
+   * @param evictionPolicy The eviction policy.
+   * @return This options instance.
+   */
+  public LocalCacheOptions evictionPolicy(EvictionPolicy evictionPolicy) {
+    this.evictionPolicy = evictionPolicy;
+    return this;
+  }
+
+  /**
+   * Sets how other instances are notified about changed entries.
+   *
+   * @param syncStrategy The sync strategy.
+   * @return This options instance.
+   */
+  public LocalCacheOptions syncStrategy(SyncStrategy syncStrategy) {
+    this.syncStrategy = syncStrategy;
+    return this;
+  }
+
+  /**
+   * Sets the time after which a locally cached entry is dropped.
+   *
+   * @param timeToLive The time to live or {@link Duration#ZERO} to keep entries.
+   * @return This options instance.
+   */
+  public LocalCacheOptions timeToLive(Duration timeToLive) {
+    this.timeToLive = timeToLive;
+    return this;
+  }
+
+  /**
+   * Sets the time after which a locally cached entry is dropped if it was not accessed.
+   *
+   * @param maxIdle The max idle time or {@link Duration#ZERO} to keep entries.
+   * @return This options instance.
+   */
+  public LocalCacheOptions maxIdle(Duration maxIdle) {
+    this.maxIdle = maxIdle;
+    return this;
+  }
+
+  /**
+   * Converts these options to the redisson representation.
+   *
+   * @param name The name of the redis hash.
+   * @param <K>  The type of the keys.
+   * @param <V>  The type of the values.
+   * @return The redisson options.
+   */
+  public <K, V> LocalCachedMapOptions<K, V> toRedisson(String name) {
+    return LocalCachedMapOptions.<K, V>name(name)
+        .cacheSize(this.cacheSize)
+        .evictionPolicy(LocalCachedMapOptions.EvictionPolicy.valueOf(this.evictionPolicy.name()))
+        .syncStrategy(LocalCachedMapOptions.SyncStrategy.valueOf(this.syncStrategy.name()))
+        .timeToLive(this.timeToLive)
+        .maxIdle(this.maxIdle);
+  }
+
+  public enum EvictionPolicy {
+    NONE,
+    LRU,
+    LFU,
+    SOFT,
+    WEAK
+  }
+
+  public enum SyncStrategy {
+    /**
+     * Changes are not propagated to other instances.
+     */
+    NONE,
+    /**
+     * Other instances drop their cached entry on change.
+     */
+    INVALIDATE,
+    /**
+     * Other instances receive the new value on change.
+     */
+    UPDATE
+  }
+}
@@ -0,0 +1,44 @@
+package com.gestankbratwurst.ambrosia.impl.file;
+
+import com.gestankbratwurst.ambrosia.impl.file.collections.FileMap;
+import com.gestankbratwurst.ambrosia.impl.file.serializer.GsonStringSerializer;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileAmbrosiaTest {
+
+  @TempDir
+  File folder;
+
+  @Test
+  void mapIsOpenedOnce() {
+    try (FileAmbrosia ambrosia = new FileAmbrosia(this.folder, new GsonStringSerializer(new Gson()))) {
+      FileMap<String, Integer> first = ambrosia.createMapView("map", String.class, Integer.class);
+      FileMap<String, Integer> second = ambrosia.createMapView("map", String.class, Integer.class);
+      assertSame(first, second);
+      first.put("a", 1);
+      assertEquals(1, second.get("a"));
+      assertThrows(IllegalStateException.class, () -> ambrosia.createMapView("map", String.class, String.class));
+    }
+  }
+
+  @Test
+  void closedMapIsOpenedAgain() {
+    try (FileAmbrosia ambrosia = new FileAmbrosia(this.folder, new GsonStringSerializer(new Gson()))) {
+      FileMap<String, Integer> first = ambrosia.createMapView("map", String.class, Integer.class);
+      first.put("a", 1);
+      first.close();
+      FileMap<String, Integer> second = ambrosia.createMapView("map", String.class, Integer.class);
+      assertNotSame(first, second);
+      assertEquals(1, second.get("a"));
+    }
+  }
+}
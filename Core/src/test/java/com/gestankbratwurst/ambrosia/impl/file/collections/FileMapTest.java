@@ -0,0 +1,162 @@
+package com.gestankbratwurst.ambrosia.impl.file.collections;
+
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
+import com.gestankbratwurst.ambrosia.impl.file.serializer.GsonStringSerializer;
+import com.gestankbratwurst.ambrosia.impl.file.storage.AsyncFileWriter;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileMapTest {
+
+  record Player(String name, int score) {
+  }
+
+  @TempDir
+  Path folder;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @AfterEach
+  void shutdown() {
+    this.executor.shutdownNow();
+  }
+
+  private FileMap<String, Player> open(FileMapOptions options) {
+    return new FileMap<>(this.folder.toFile(), new GsonStringSerializer(new Gson()), String.class, Player.class, options);
+  }
+
+  private static void fill(FileMap<String, Player> map, int count) {
+    for (int i = 0; i < count; i++) {
+      map.fastPut("player-" + i, new Player("player-" + i, i));
+    }
+  }
+
+  @Test
+  void bulkLoadsReadEveryEntry() {
+    FileMap<String, Player> map = this.open(FileMapOptions.defaults().loadExecutor(this.executor).loadBatchSize(8));
+    fill(map, 100);
+
+    Map<String, Player> entries = map.loadAllAsync().join();
+    assertEquals(100, entries.size());
+    assertEquals(new Player("player-42", 42), entries.get("player-42"));
+
+    AtomicInteger scores = new AtomicInteger();
+    map.forEachAsync((key, player) -> scores.addAndGet(player.score())).join();
+    assertEquals(4950, scores.get());
+    assertEquals(4950, map.values().parallelStream().mapToInt(Player::score).sum());
+    map.close();
+  }
+
+  @Test
+  void propertyQueriesFollowWrites() {
+    FileMapOptions options = FileMapOptions.defaults()
+        .index("name", FileMapOptions.IndexType.EQUALITY)
+        .index("score", FileMapOptions.IndexType.SORTED);
+    FileMap<String, Player> map = this.open(options);
+    fill(map, 10);
+    map.put("player-3", new Player("renamed", 30));
+    map.remove("player-9");
+
+    assertEquals(List.of(new Player("renamed", 30)), map.findByProperty("name", "renamed"));
+    assertEquals(List.of(), map.findByProperty("name", "player-3"));
+    assertEquals(List.of(new Player("player-7", 7), new Player("player-8", 8), new Player("renamed", 30)),
+        map.findByPropertyRange("score", 7, null));
+    assertEquals(List.of(new Player("renamed", 30), new Player("player-8", 8)), map.queryToplist("score", 2, false));
+    map.close();
+
+    // Rebuilt from the files on open, and unindexed properties are scanned.
+    FileMap<String, Player> reopened = this.open(options);
+    assertEquals(List.of(new Player("player-0", 0), new Player("player-1", 1)), reopened.queryToplist("score", 2, true));
+    FileMap<String, Player> unindexed = this.open(FileMapOptions.defaults());
+    assertEquals(List.of(new Player("renamed", 30)), unindexed.findByProperty("name", "renamed"));
+    reopened.close();
+    unindexed.close();
+  }
+
+  @Test
+  void concurrentMergesAreNotLost() {
+    FileMap<String, Integer> counters = new FileMap<>(this.folder.toFile(), new GsonStringSerializer(new Gson()), String.class, Integer.class,
+        FileMapOptions.defaults().lockStripes(4));
+    List<CompletableFuture<Void>> workers = new ArrayList<>();
+    for (int thread = 0; thread < 4; thread++) {
+      workers.add(CompletableFuture.runAsync(() -> {
+        for (int i = 0; i < 200; i++) {
+          counters.merge("counter-" + (i % 3), 1, Integer::sum);
+          counters.compute("total", (key, value) -> value == null ? 1 : value + 1);
+        }
+      }, this.executor));
+    }
+    CompletableFuture.allOf(workers.toArray(CompletableFuture[]::new)).join();
+
+    assertEquals(800, counters.get("total"));
+    assertEquals(268, counters.get("counter-0"));
+    assertEquals(268, counters.get("counter-1"));
+    assertEquals(264, counters.get("counter-2"));
+    counters.close();
+  }
+
+  @Test
+  void asyncWritesAreVisibleAndDurable() {
+    try (AsyncFileWriter writer = new AsyncFileWriter(2, Duration.ofMillis(5))) {
+      FileMap<String, Player> map = this.open(FileMapOptions.defaults().asyncWriter(writer));
+      List<CompletableFuture<Void>> writes = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+        writes.add(map.putAsync("player", new Player("player", i)));
+      }
+      assertEquals(new Player("player", 49), map.get("player"));
+      CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).join();
+      map.close();
+
+      FileMap<String, Player> reopened = this.open(FileMapOptions.defaults().asyncWriter(writer));
+      assertEquals(new Player("player", 49), reopened.get("player"));
+      CompletableFuture<Void> removal = reopened.removeAsync("player");
+      assertNull(reopened.get("player"));
+      removal.join();
+      assertEquals(0, reopened.size());
+      reopened.close();
+    }
+  }
+
+  @Test
+  void expiredEntriesDisappearAndAreSwept() throws InterruptedException {
+    FileMapOptions options = FileMapOptions.defaults().expirySweepInterval(Duration.ofMillis(10));
+    FileMap<String, Player> map = this.open(options);
+    map.put("short", new Player("short", 1), Duration.ofMillis(50));
+    map.put("long", new Player("long", 2), Duration.ofHours(1));
+    map.put("permanent", new Player("permanent", 3), Duration.ofMillis(50));
+    map.put("permanent", new Player("permanent", 3));
+    assertNull(map.getTimeToLive("permanent"));
+    assertTrue(map.getTimeToLive("long").compareTo(Duration.ofMinutes(59)) > 0);
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (map.getStorage().contains("short") && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertNull(map.get("short"));
+    assertFalse(map.getStorage().contains("short"));
+    assertEquals(Set.of("long", "permanent"), map.keySet());
+    map.close();
+
+    FileMap<String, Player> reopened = this.open(options);
+    assertTrue(reopened.getTimeToLive("long").compareTo(Duration.ofMinutes(59)) > 0);
+    reopened.close();
+  }
+}
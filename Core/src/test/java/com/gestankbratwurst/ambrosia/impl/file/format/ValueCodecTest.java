@@ -0,0 +1,95 @@
+package com.gestankbratwurst.ambrosia.impl.file.format;
+
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
+import com.gestankbratwurst.ambrosia.impl.file.serializer.GsonStringSerializer;
+import com.gestankbratwurst.ambrosia.impl.file.serializer.StringSerializer;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ValueCodecTest {
+
+  static final class Sample {
+
+    String name = "sample";
+    String missing;
+    int count = -42;
+    long big = Long.MAX_VALUE;
+    float ratio = 0.1f;
+    double precise = 1.0 / 3;
+    BigDecimal exact = new BigDecimal("12345678901234567890.123456789");
+    boolean flag = true;
+    List<String> tags = List.of("a", "b");
+    Map<Integer, Sample> children = Map.of();
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Sample other && this.name.equals(other.name) && Objects.equals(this.missing, other.missing)
+          && this.count == other.count && this.big == other.big && this.ratio == other.ratio && this.precise == other.precise
+          && this.exact.equals(other.exact) && this.flag == other.flag && this.tags.equals(other.tags) && this.children.equals(other.children);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.name.hashCode();
+    }
+  }
+
+  private static Sample sample() {
+    Sample sample = new Sample();
+    Sample child = new Sample();
+    child.name = "child";
+    child.missing = "present";
+    sample.children = Map.of(7, child);
+    return sample;
+  }
+
+  private static byte[] write(ValueCodec codec, Object value) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    codec.write(value, out);
+    return out.toByteArray();
+  }
+
+  @Test
+  void everyFormatRoundTrips() throws IOException {
+    StringSerializer serializer = new GsonStringSerializer(new Gson());
+    for (FileMapOptions.StorageFormat format : FileMapOptions.StorageFormat.values()) {
+      ValueCodec codec = new ValueCodec(serializer, format, 0);
+      assertEquals(sample(), codec.read(ByteBuffer.wrap(write(codec, sample())), Sample.class), format.name());
+    }
+  }
+
+  @Test
+  void binaryWriterMatchesEncodedJson() throws IOException {
+    for (Gson gson : List.of(new Gson(), new GsonBuilder().serializeNulls().create())) {
+      ValueCodec codec = new ValueCodec(new GsonStringSerializer(gson), FileMapOptions.StorageFormat.BINARY, 0);
+      ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+      encoded.write(0xAB);
+      encoded.write(0x01);
+      BinaryJson.encode(new StringReader(gson.toJson(sample())), encoded);
+      assertArrayEquals(encoded.toByteArray(), write(codec, sample()));
+    }
+  }
+
+  @Test
+  void formatsAreDetectedOnRead() throws IOException {
+    StringSerializer serializer = new GsonStringSerializer(new Gson());
+    ValueCodec reader = new ValueCodec(serializer, FileMapOptions.StorageFormat.JSON, 0);
+    for (FileMapOptions.StorageFormat format : FileMapOptions.StorageFormat.values()) {
+      byte[] bytes = write(new ValueCodec(serializer, format, 0), sample());
+      assertEquals(sample(), reader.read(ByteBuffer.wrap(bytes), Sample.class), format.name());
+    }
+  }
+}
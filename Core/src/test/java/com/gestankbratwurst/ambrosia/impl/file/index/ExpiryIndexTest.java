@@ -0,0 +1,87 @@
+package com.gestankbratwurst.ambrosia.impl.file.index;
+
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileKeyCodec;
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
+import com.gestankbratwurst.ambrosia.impl.file.serializer.GsonStringSerializer;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ExpiryIndexTest {
+
+  @TempDir
+  Path folder;
+
+  private ExpiryIndex<Integer> open() {
+    FileMapOptions options = FileMapOptions.defaults().fsyncPolicy(FileMapOptions.FsyncPolicy.PER_WRITE);
+    return new ExpiryIndex<>(this.folder, new FileKeyCodec<>(Integer.class, new GsonStringSerializer(new Gson())), options);
+  }
+
+  private void appendRaw(String key, long expiresAt) throws IOException {
+    byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+    try (FileChannel channel = FileChannel.open(this.folder.resolve("expiry.log"), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.allocate(4 + bytes.length + 8).putInt(bytes.length).put(bytes).putLong(expiresAt).flip());
+    }
+  }
+
+  @Test
+  void expiryTimesSurviveReopening() {
+    ExpiryIndex<Integer> expiry = this.open();
+    expiry.set(1, 1000);
+    expiry.set(2, 2000);
+    expiry.remove(1);
+    expiry.close();
+
+    expiry = this.open();
+    assertNull(expiry.getExpiryTime(1));
+    assertEquals(2000, expiry.getExpiryTime(2));
+    expiry.close();
+  }
+
+  @Test
+  void undecodableKeysAreSkipped() throws IOException {
+    ExpiryIndex<Integer> expiry = this.open();
+    expiry.set(1, 1000);
+    expiry.close();
+    this.appendRaw("not a number", 2000);
+    this.appendRaw("3", 3000);
+
+    expiry = this.open();
+    assertEquals(1000, expiry.getExpiryTime(1));
+    assertEquals(3000, expiry.getExpiryTime(3));
+    expiry.close();
+  }
+
+  @Test
+  void tornRecordIsCutOff() throws IOException {
+    ExpiryIndex<Integer> expiry = this.open();
+    expiry.set(1, 1000);
+    expiry.close();
+    Path file = this.folder.resolve("expiry.log");
+    long validSize = Files.size(file);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.allocate(6).putInt(100).putShort((short) 1).flip());
+    }
+
+    expiry = this.open();
+    assertEquals(1000, expiry.getExpiryTime(1));
+    assertEquals(validSize, Files.size(file));
+    expiry.set(2, 2000);
+    expiry.close();
+
+    expiry = this.open();
+    assertEquals(2000, expiry.getExpiryTime(2));
+    expiry.close();
+  }
+}
@@ -0,0 +1,61 @@
+package com.gestankbratwurst.ambrosia.impl.file.layout;
+
+import com.gestankbratwurst.ambrosia.impl.file.serializer.GsonStringSerializer;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileKeyCodecTest {
+
+  @TempDir
+  Path folder;
+
+  private final FileKeyCodec<String> codec = new FileKeyCodec<>(String.class, new GsonStringSerializer(new Gson()));
+
+  private String fileName(String key) {
+    // Both overloads apply to String keys.
+    return ((FileKeyCodec<?>) this.codec).fileName(this.codec.encode(key));
+  }
+
+  @Test
+  void baselineNamesKeepTheirFileNames() throws IOException {
+    for (String key : List.of("~home", "#spawn", ".hidden", "~", "#", "", "~aGk")) {
+      assertEquals(key, this.fileName(key));
+      Path path = this.folder.resolve(key + FileKeyCodec.VALUE_EXTENSION);
+      Files.writeString(path, "{}");
+      assertEquals(key, this.codec.decodeFile(path));
+    }
+  }
+
+  @Test
+  void escapedNamesRoundTrip() {
+    String hashLike = "#" + "0".repeat(64);
+    for (String key : List.of("a/b", "C:\\x", hashLike, "~YS9i")) {
+      String name = this.codec.encode(key);
+      assertTrue(name.startsWith("~"), name);
+      assertEquals(key, this.codec.decode(name));
+    }
+    assertFalse(FileKeyCodec.isHashed("#spawn"));
+    assertTrue(FileKeyCodec.isHashed(hashLike));
+  }
+
+  @Test
+  void longNamesAreHashed() throws IOException {
+    String key = "~" + "x".repeat(200);
+    String fileName = this.fileName(key);
+    assertTrue(FileKeyCodec.isHashed(fileName));
+    Path path = this.folder.resolve(fileName + FileKeyCodec.VALUE_EXTENSION);
+    Files.writeString(path, "{}");
+    Files.writeString(FileKeyCodec.sidecar(path), this.codec.encode(key));
+    assertEquals(key, this.codec.decodeFile(path));
+  }
+}
@@ -0,0 +1,71 @@
+package com.gestankbratwurst.ambrosia.impl.file.layout;
+
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
+import com.gestankbratwurst.ambrosia.impl.file.serializer.GsonStringSerializer;
+import com.gestankbratwurst.ambrosia.impl.file.storage.FolderStorage;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileLayoutMigrationTest {
+
+  private static final Set<String> keys = Set.of("plain", "~home", "a/b", "x".repeat(200));
+
+  @TempDir
+  Path folder;
+
+  private final FileKeyCodec<String> codec = new FileKeyCodec<>(String.class, new GsonStringSerializer(new Gson()));
+
+  private FolderStorage<String> open(FileLayout layout) {
+    return new FolderStorage<>(this.folder, this.codec, FileMapOptions.defaults().layout(layout));
+  }
+
+  private List<Path> children() throws IOException {
+    try (Stream<Path> files = Files.list(this.folder)) {
+      return files.collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  void filesMoveBetweenLayouts() throws IOException {
+    FolderStorage<String> flat = this.open(FileLayout.flat());
+    for (String key : keys) {
+      flat.write(key, out -> out.write(key.getBytes(StandardCharsets.UTF_8)));
+    }
+    flat.close();
+
+    assertEquals(keys.size(), FileLayoutMigration.migrate(this.folder, this.codec, FileLayout.sharded(2, 16)));
+    assertTrue(this.children().stream().allMatch(Files::isDirectory));
+    FolderStorage<String> sharded = this.open(FileLayout.sharded(2, 16));
+    assertEquals(keys, sharded.keys());
+    for (String key : keys) {
+      assertEquals(key, sharded.read(key, buffer -> StandardCharsets.UTF_8.decode(buffer).toString()));
+    }
+    sharded.close();
+
+    assertEquals(keys.size(), FileLayoutMigration.migrate(this.folder, this.codec, FileLayout.flat()));
+    assertTrue(this.children().stream().allMatch(Files::isRegularFile));
+    assertEquals(keys, this.open(FileLayout.flat()).keys());
+  }
+
+  @Test
+  void legacyPrimitiveNamesAreRenamed() throws IOException {
+    Files.writeString(this.folder.resolve(Base64.getEncoder().encodeToString("5".getBytes()) + ".json"), "{}");
+    FileKeyCodec<Integer> integerCodec = new FileKeyCodec<>(Integer.class, new GsonStringSerializer(new Gson()));
+    assertEquals(1, FileLayoutMigration.migrate(this.folder, integerCodec, FileLayout.flat()));
+    assertEquals(List.of(this.folder.resolve("5.json")), this.children());
+  }
+}
@@ -0,0 +1,57 @@
+package com.gestankbratwurst.ambrosia.impl.file.serializer;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StringSerializerTest {
+
+  record Entry(String name, List<Integer> values) {
+  }
+
+  private static final Gson gson = new Gson();
+  private static final Entry entry = new Entry("Grüße ✓", List.of(1, 2, 3));
+
+  /**
+   * Only implements the string methods, so all streams go through the default methods.
+   */
+  private static final StringSerializer stringOnly = new StringSerializer() {
+    @Override
+    public String serialize(Object object) {
+      return gson.toJson(object);
+    }
+
+    @Override
+    public <T> T deserialize(String string, Class<T> type) {
+      return gson.fromJson(string, type);
+    }
+  };
+
+  private static byte[] write(StringSerializer serializer) {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    serializer.serialize(entry, outputStream);
+    return outputStream.toByteArray();
+  }
+
+  @Test
+  void streamsMatchTheStringMethods() {
+    for (StringSerializer serializer : List.of(stringOnly, new GsonStringSerializer(gson))) {
+      byte[] bytes = write(serializer);
+      assertArrayEquals(serializer.serialize(entry).getBytes(StandardCharsets.UTF_8), bytes);
+      assertEquals(entry, serializer.deserialize(new ByteArrayInputStream(bytes), Entry.class));
+      assertEquals(entry, serializer.deserialize(gson.toJsonTree(entry), Entry.class));
+    }
+  }
+
+  @Test
+  void streamedOutputIsIdenticalForBothSerializers() {
+    assertArrayEquals(write(stringOnly), write(new GsonStringSerializer(gson)));
+  }
+}
@@ -0,0 +1,70 @@
+package com.gestankbratwurst.ambrosia.impl.file.snapshot;
+
+import com.gestankbratwurst.ambrosia.impl.file.FileAmbrosia;
+import com.gestankbratwurst.ambrosia.impl.file.collections.FileMap;
+import com.gestankbratwurst.ambrosia.impl.file.serializer.GsonStringSerializer;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SnapshotArchiveTest {
+
+  @TempDir
+  Path folder;
+
+  private FileAmbrosia open(Path path) {
+    return new FileAmbrosia(path.toFile(), new GsonStringSerializer(new Gson()));
+  }
+
+  private static Map<String, String> entries(FileAmbrosia ambrosia) {
+    FileMap<String, String> map = ambrosia.createMapView("players", String.class, String.class);
+    return map.keySet().stream().collect(Collectors.toMap(key -> key, map::get));
+  }
+
+  private static Set<String> entryNames(Path archive) throws IOException {
+    try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+      return zipFile.stream().map(ZipEntry::getName).collect(Collectors.toSet());
+    }
+  }
+
+  @Test
+  void incrementalSnapshotsRestoreTheLatestState() throws IOException {
+    Path data = this.folder.resolve("data");
+    Path full = this.folder.resolve("full.zip");
+    Path incremental = this.folder.resolve("incremental.zip");
+    try (FileAmbrosia ambrosia = this.open(data)) {
+      FileMap<String, String> players = ambrosia.createMapView("players", String.class, String.class);
+      players.put("a", "1");
+      players.put("b", "2");
+      SnapshotManifest base = ambrosia.snapshot(full);
+
+      players.remove("a");
+      players.put("b", "3");
+      players.put("c", "4");
+      ambrosia.snapshot(incremental, base);
+    }
+
+    assertEquals(Set.of(SnapshotManifest.ENTRY_NAME, "players/b.json", "players/c.json"), entryNames(incremental));
+
+    Path restored = this.folder.resolve("restored");
+    SnapshotArchive.restore(restored, List.of(full));
+    try (FileAmbrosia ambrosia = this.open(restored)) {
+      assertEquals(Map.of("a", "1", "b", "2"), entries(ambrosia));
+    }
+    SnapshotArchive.restore(restored, List.of(full, incremental));
+    try (FileAmbrosia ambrosia = this.open(restored)) {
+      assertEquals(Map.of("b", "3", "c", "4"), entries(ambrosia));
+    }
+  }
+}
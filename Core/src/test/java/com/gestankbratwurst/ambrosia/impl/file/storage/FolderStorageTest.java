@@ -0,0 +1,108 @@
+package com.gestankbratwurst.ambrosia.impl.file.storage;
+
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileKeyCodec;
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
+import com.gestankbratwurst.ambrosia.impl.file.serializer.GsonStringSerializer;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FolderStorageTest {
+
+  @TempDir
+  Path folder;
+
+  private FolderStorage<String> open(FileMapOptions options) {
+    return new FolderStorage<>(this.folder, new FileKeyCodec<>(String.class, new GsonStringSerializer(new Gson())), options);
+  }
+
+  private static void put(FolderStorage<String> storage, String key, String value) {
+    storage.write(key, out -> out.write(value.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static String get(FolderStorage<String> storage, String key) {
+    return storage.read(key, buffer -> StandardCharsets.UTF_8.decode(buffer).toString());
+  }
+
+  private List<String> fileNames() throws IOException {
+    try (Stream<Path> files = Files.list(this.folder)) {
+      return files.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  void writesReplaceFilesWithoutTempFiles() throws IOException {
+    FolderStorage<String> storage = this.open(FileMapOptions.defaults());
+    put(storage, "a", "first");
+    put(storage, "a", "second");
+    assertEquals("second", get(storage, "a"));
+    assertEquals(List.of("a.json"), this.fileNames());
+  }
+
+  @Test
+  void failedWritesKeepTheOldValue() throws IOException {
+    FolderStorage<String> storage = this.open(FileMapOptions.defaults());
+    put(storage, "a", "old");
+    assertThrows(RuntimeException.class, () -> storage.write("a", out -> {
+      out.write("partial".getBytes(StandardCharsets.UTF_8));
+      throw new IOException("Serialization failed.");
+    }));
+    assertEquals("old", get(storage, "a"));
+    assertEquals(List.of("a.json"), this.fileNames());
+  }
+
+  @Test
+  void leftoverTempFilesAreDeletedOnOpen() throws IOException {
+    Files.writeString(this.folder.resolve("a.json.7.tmp"), "partial");
+    this.open(FileMapOptions.defaults());
+    assertEquals(List.of(), this.fileNames());
+  }
+
+  @Test
+  void keyIndexTracksWritesAndDeletes() {
+    FolderStorage<String> storage = this.open(FileMapOptions.defaults());
+    put(storage, "a", "1");
+    put(storage, "b", "2");
+    storage.delete("a");
+    assertEquals(Set.of("b"), storage.keys());
+    assertEquals(Set.of("b"), this.open(FileMapOptions.defaults()).keys());
+  }
+
+  @Test
+  void filesAddedByOthersAreIndexedOnRead() throws IOException {
+    FolderStorage<String> storage = this.open(FileMapOptions.defaults());
+    Files.writeString(this.folder.resolve("c.json"), "external");
+    assertFalse(storage.contains("c"));
+    assertEquals("external", get(storage, "c"));
+    assertTrue(storage.contains("c"));
+  }
+
+  @Test
+  void mappedReadsSeeReplacedFiles() {
+    FolderStorage<String> storage = this.open(FileMapOptions.defaults().memoryMappedReads(true).maxMappedFiles(1));
+    put(storage, "a", "first");
+    put(storage, "b", "other");
+    assertEquals("first", get(storage, "a"));
+    assertEquals("other", get(storage, "b"));
+    put(storage, "a", "second");
+    assertEquals("second", get(storage, "a"));
+    storage.delete("a");
+    assertNull(get(storage, "a"));
+    storage.close();
+  }
+}
@@ -0,0 +1,239 @@
+package com.gestankbratwurst.ambrosia.impl.file.storage;
+
+import com.gestankbratwurst.ambrosia.impl.file.layout.FileKeyCodec;
+import com.gestankbratwurst.ambrosia.impl.file.options.FileMapOptions;
+import com.gestankbratwurst.ambrosia.impl.file.serializer.GsonStringSerializer;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogStorageTest {
+
+  private static final int keyCount = 200;
+
+  @TempDir
+  Path folder;
+
+  private LogStorage<String> open(long maxSegmentSize) {
+    FileMapOptions options = FileMapOptions.defaults()
+        .engine(FileMapOptions.StorageEngine.LOG)
+        .maxSegmentSize(maxSegmentSize)
+        .compactionInterval(Duration.ofHours(1));
+    return new LogStorage<>(this.folder, new FileKeyCodec<>(String.class, new GsonStringSerializer(new Gson())), options);
+  }
+
+  private static void put(LogStorage<String> storage, String key, String value) {
+    storage.write(key, out -> out.write(value.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static String get(LogStorage<String> storage, String key) {
+    return storage.read(key, buffer -> StandardCharsets.UTF_8.decode(buffer).toString());
+  }
+
+  private static void fill(LogStorage<String> storage, String suffix) {
+    for (int i = 0; i < keyCount; i++) {
+      put(storage, "key-" + i, "value-" + i + suffix);
+    }
+  }
+
+  private static void assertFilled(LogStorage<String> storage, String suffix) {
+    assertEquals(keyCount, storage.size());
+    for (int i = 0; i < keyCount; i++) {
+      assertEquals("value-" + i + suffix, get(storage, "key-" + i));
+    }
+  }
+
+  private Set<Path> files(String extension) throws IOException {
+    try (Stream<Path> files = Files.list(this.folder)) {
+      return files.filter(path -> path.getFileName().toString().endsWith(extension)).collect(Collectors.toSet());
+    }
+  }
+
+  /**
+   * Waits until the background thread wrote the hints of all sealed segments.
+   */
+  private Set<Path> awaitHints(LogStorage<String> storage) throws Exception {
+    long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+    while (true) {
+      Set<Path> hints = this.files(".hint");
+      if (hints.size() == storage.getSegmentCount() - 1 && this.files(".tmp").isEmpty()) {
+        return hints;
+      }
+      assertTrue(System.nanoTime() < deadline, "Hint files were not written.");
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  void valuesSurviveReopening() {
+    LogStorage<String> storage = this.open(1024);
+    fill(storage, "");
+    for (int i = 0; i < keyCount; i += 2) {
+      assertTrue(storage.delete("key-" + i));
+    }
+    put(storage, "key-1", "changed");
+    storage.close();
+
+    storage = this.open(1024);
+    assertEquals(keyCount / 2, storage.size());
+    for (int i = 0; i < keyCount; i++) {
+      String expected = i % 2 == 0 ? null : i == 1 ? "changed" : "value-" + i;
+      assertEquals(expected, get(storage, "key-" + i));
+    }
+    storage.close();
+  }
+
+  @Test
+  void tornTailIsCutOff() throws IOException {
+    LogStorage<String> storage = this.open(1 << 20);
+    fill(storage, "");
+    storage.close();
+
+    Path segment = this.files(".seg").iterator().next();
+    long validSize = Files.size(segment);
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      // The header of a record whose key and value never made it to disk.
+      channel.write(ByteBuffer.allocate(12).putInt(42).putInt(5).putInt(100).flip());
+    }
+
+    storage = this.open(1 << 20);
+    assertFilled(storage, "");
+    assertEquals(validSize, Files.size(segment));
+    put(storage, "after", "crash");
+    storage.close();
+
+    storage = this.open(1 << 20);
+    assertEquals("crash", get(storage, "after"));
+    assertEquals(keyCount + 1, storage.size());
+    storage.close();
+  }
+
+  @Test
+  void corruptSealedSegmentFailsToOpen() throws Exception {
+    LogStorage<String> storage = this.open(1024);
+    fill(storage, "");
+    assertTrue(storage.getSegmentCount() > 2);
+    this.awaitHints(storage);
+    storage.close();
+
+    Path first = this.folder.resolve(String.format("%010d", 0) + ".seg");
+    byte[] bytes = Files.readAllBytes(first);
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(first, bytes);
+    Files.delete(this.folder.resolve(String.format("%010d", 0) + ".hint"));
+
+    assertThrows(RuntimeException.class, () -> this.open(1024));
+    assertEquals(bytes.length, Files.size(first));
+  }
+
+  @Test
+  void compactionKeepsNewestValues() throws Exception {
+    LogStorage<String> storage = this.open(1024);
+    fill(storage, "");
+    fill(storage, "-new");
+    for (int i = 0; i < 10; i++) {
+      assertTrue(storage.delete("key-" + i));
+    }
+    int segmentCount = storage.getSegmentCount();
+    storage.compact();
+    assertTrue(storage.getSegmentCount() < segmentCount);
+    for (int i = 0; i < keyCount; i++) {
+      assertEquals(i < 10 ? null : "value-" + i + "-new", get(storage, "key-" + i));
+    }
+    this.awaitHints(storage);
+    storage.close();
+
+    storage = this.open(1024);
+    assertEquals(keyCount - 10, storage.size());
+    for (int i = 0; i < keyCount; i++) {
+      assertEquals(i < 10 ? null : "value-" + i + "-new", get(storage, "key-" + i));
+    }
+    storage.close();
+  }
+
+  @Test
+  void emptyHintFallsBackToScan() throws Exception {
+    this.assertCorruptHintsIgnored(hint -> Files.write(hint, new byte[0]));
+  }
+
+  @Test
+  void tornHintFallsBackToScan() throws Exception {
+    this.assertCorruptHintsIgnored(hint -> {
+      byte[] bytes = Files.readAllBytes(hint);
+      Files.write(hint, Arrays.copyOf(bytes, bytes.length / 2));
+    });
+  }
+
+  @Test
+  void hintWithWrongChecksumFallsBackToScan() throws Exception {
+    this.assertCorruptHintsIgnored(hint -> {
+      byte[] bytes = Files.readAllBytes(hint);
+      // Points the first entry at another offset.
+      bytes[7] ^= 1;
+      Files.write(hint, bytes);
+    });
+  }
+
+  @FunctionalInterface
+  private interface HintCorruption {
+    void corrupt(Path hint) throws IOException;
+  }
+
+  private void assertCorruptHintsIgnored(HintCorruption corruption) throws Exception {
+    LogStorage<String> storage = this.open(1024);
+    fill(storage, "");
+    Set<Path> hints = this.awaitHints(storage);
+    assertTrue(hints.size() > 1);
+    storage.close();
+
+    for (Path hint : hints) {
+      corruption.corrupt(hint);
+    }
+
+    storage = this.open(1024);
+    assertFilled(storage, "");
+    // The scanned segments get valid hints again.
+    Set<Path> rewritten = new HashSet<>(this.awaitHints(storage));
+    storage.close();
+    assertEquals(hints, rewritten);
+
+    storage = this.open(1024);
+    assertFilled(storage, "");
+    storage.close();
+  }
+
+  @Test
+  void hintsMatchScannedIndex() throws Exception {
+    LogStorage<String> storage = this.open(1024);
+    fill(storage, "");
+    IntStream.range(0, keyCount / 2).forEach(i -> storage.delete("key-" + i));
+    this.awaitHints(storage);
+    storage.close();
+
+    LogStorage<String> reopened = this.open(1024);
+    assertEquals(keyCount / 2, reopened.size());
+    assertNull(get(reopened, "key-0"));
+    assertEquals("value-" + (keyCount - 1), get(reopened, "key-" + (keyCount - 1)));
+    reopened.close();
+  }
+}
@@ -0,0 +1,46 @@
+package com.gestankbratwurst.ambrosia.impl.redisson;
+
+import com.gestankbratwurst.ambrosia.impl.redisson.codec.RedissonGsonCodec;
+import com.gestankbratwurst.ambrosia.impl.redisson.codec.TypedGsonCodec;
+import com.google.gson.Gson;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.Test;
+import org.redisson.client.codec.BaseCodec;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RedissonAmbrosiaTest {
+
+  private final Gson gson = new Gson();
+
+  @Test
+  void sharedCodecIsKeptByDefault() {
+    RedissonGsonCodec codec = new RedissonGsonCodec(this.gson);
+    RedissonAmbrosia ambrosia = new RedissonAmbrosia(null, codec, this.gson);
+    assertSame(codec, ambrosia.getCodec(UUID.class, String.class));
+  }
+
+  @Test
+  void typedCodecsAreOptIn() throws Exception {
+    RedissonAmbrosia ambrosia = new RedissonAmbrosia(null, new RedissonGsonCodec(this.gson), this.gson, true);
+    BaseCodec codec = ambrosia.getCodec(UUID.class, String.class);
+    assertInstanceOf(TypedGsonCodec.class, codec);
+    assertSame(codec, ambrosia.getCodec(UUID.class, String.class));
+
+    UUID key = UUID.randomUUID();
+    ByteBuf keyBuf = codec.getMapKeyEncoder().encode(key);
+    ByteBuf valueBuf = codec.getValueEncoder().encode("value");
+    try {
+      assertEquals(16, keyBuf.readableBytes());
+      assertEquals(key, codec.getMapKeyDecoder().decode(keyBuf, null));
+      assertEquals("value", codec.getValueDecoder().decode(valueBuf, null));
+    } finally {
+      keyBuf.release();
+      valueBuf.release();
+    }
+  }
+}
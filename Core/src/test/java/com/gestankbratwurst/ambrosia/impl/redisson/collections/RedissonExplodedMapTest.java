@@ -0,0 +1,41 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.collections;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+
+import java.lang.reflect.Proxy;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RedissonExplodedMapTest {
+
+  /**
+   * Thrown by the client, to tell calls that reached redis from calls that were rejected up front.
+   */
+  static final class ReachedRedis extends RuntimeException {
+  }
+
+  static RedissonClient unreachableClient() {
+    return (RedissonClient) Proxy.newProxyInstance(RedissonClient.class.getClassLoader(), new Class<?>[]{RedissonClient.class},
+        (proxy, method, args) -> {
+          throw new ReachedRedis();
+        });
+  }
+
+  @Test
+  void primitiveKeysAreAccepted() {
+    RedissonExplodedMap<Integer, String> map = new RedissonExplodedMap<>(unreachableClient(), new Gson(), "map", int.class, String.class);
+    assertThrows(ReachedRedis.class, () -> map.get(1));
+    assertThrows(ReachedRedis.class, () -> map.containsKey(1));
+    assertThrows(ReachedRedis.class, () -> map.remove(1));
+  }
+
+  @Test
+  void keysOfOtherTypesAreIgnored() {
+    RedissonExplodedMap<Integer, String> map = new RedissonExplodedMap<>(unreachableClient(), new Gson(), "map", int.class, String.class);
+    assertNull(map.get("1"));
+    assertNull(map.remove(1L));
+  }
+}
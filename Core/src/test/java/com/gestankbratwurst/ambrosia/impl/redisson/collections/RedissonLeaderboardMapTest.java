@@ -0,0 +1,31 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.collections;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RedissonLeaderboardMapTest {
+
+  private static RedissonLeaderboardMap<Integer, String> createMap() {
+    return new RedissonLeaderboardMap<>(null, null, RedissonExplodedMapTest.unreachableClient(), new Gson(), int.class, String.class, "score", false);
+  }
+
+  @Test
+  void primitiveKeysAreRemoved() {
+    assertThrows(RedissonExplodedMapTest.ReachedRedis.class, () -> createMap().remove(1));
+  }
+
+  @Test
+  void keysOfOtherTypesAreIgnored() {
+    assertNull(createMap().remove("1"));
+  }
+
+  @Test
+  void rankingsShareTheSlotOfTheirMap() {
+    assertEquals("{stats}:ranking:kills", RedissonLeaderboardMap.rankingName("stats", "kills"));
+    assertEquals("{stats}:ranking:kills", RedissonLeaderboardMap.rankingName("{stats}", "kills"));
+  }
+}
@@ -0,0 +1,53 @@
+package com.gestankbratwurst.ambrosia.impl.redisson.collections;
+
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RLocalCachedMap;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RedissonLocalCachedMapTest {
+
+  private final Map<String, String> localCache = new HashMap<>();
+  private final List<String> calls = new ArrayList<>();
+
+  @SuppressWarnings("unchecked")
+  private RLocalCachedMap<String, String> backbone() {
+    return (RLocalCachedMap<String, String>) Proxy.newProxyInstance(RLocalCachedMap.class.getClassLoader(), new Class<?>[]{RLocalCachedMap.class},
+        (proxy, method, args) -> {
+          this.calls.add(method.getName());
+          return switch (method.getName()) {
+            case "getCachedMap" -> this.localCache;
+            case "get" -> this.localCache.get((String) args[0]);
+            default -> null;
+          };
+        });
+  }
+
+  @Test
+  void hitsOnlyQueryTheLocalCache() {
+    RedissonLocalCachedMap<String, String> map = new RedissonLocalCachedMap<>(this.backbone());
+    this.localCache.put("spawn", "value");
+    assertEquals("value", map.get("spawn"));
+    assertEquals("value", map.get("spawn"));
+    assertNull(map.get("missing"));
+
+    assertEquals(List.of("getCachedMap", "get"), this.calls);
+    RedissonLocalCachedMap.LocalCacheStatistics statistics = map.getStatistics();
+    assertEquals(2, statistics.hits());
+    assertEquals(1, statistics.misses());
+  }
+
+  @Test
+  void destroyReleasesTheBackbone() {
+    RedissonLocalCachedMap<String, String> map = new RedissonLocalCachedMap<>(this.backbone());
+    map.destroy();
+    assertEquals("destroy", this.calls.get(this.calls.size() - 1));
+  }
+}
@@ -1,6 +1,7 @@
 package com.gestankbratwurst.ambrosia;
 
 import com.gestankbratwurst.ambrosia.adapter.ConfigurationSerializableTypeAdapter;
+import com.gestankbratwurst.ambrosia.adapter.StructuredConfigurationSerializableTypeAdapter;
 import com.gestankbratwurst.ambrosia.impl.file.FileAmbrosia;
 import com.gestankbratwurst.ambrosia.impl.mongodb.MongoAmbrosia;
 import com.gestankbratwurst.ambrosia.impl.pdc.PDCAmbrosia;
@@ -8,37 +9,76 @@ import com.gestankbratwurst.ambrosia.impl.redisson.RedissonAmbrosia;
 import com.google.gson.GsonBuilder;
 import org.bukkit.configuration.serialization.ConfigurationSerializable;
 
+import java.util.function.Consumer;
+
 public class SpigotCapableAmbrosia {
 
-  private static void registerConfigurationSerializable(GsonBuilder builder) {
-    builder.registerTypeHierarchyAdapter(ConfigurationSerializable.class, new ConfigurationSerializableTypeAdapter<>());
+  /**
+   * How {@link ConfigurationSerializable} objects like ItemStacks and Locations are stored.
+   */
+  public enum SerializationMode {
+    /**
+     * Plain json objects of their serialized maps, tagged with their type like in yaml configs. Can be queried.
+     * Also reads values written in {@link #JAVA_SERIALIZATION} mode.
+     */
+    STRUCTURED,
+    /**
+     * Java serialization with {@link org.bukkit.util.io.BukkitObjectOutputStream}, stored as a Base64 string.
+     */
+    JAVA_SERIALIZATION
+  }
+
+  private static Consumer<GsonBuilder> registerConfigurationSerializable(SerializationMode mode) {
+    return builder -> {
+      if (mode == SerializationMode.STRUCTURED) {
+        builder.registerTypeHierarchyAdapter(ConfigurationSerializable.class, new StructuredConfigurationSerializableTypeAdapter<>());
+      } else {
+        builder.registerTypeHierarchyAdapter(ConfigurationSerializable.class, new ConfigurationSerializableTypeAdapter<>());
+      }
+    };
   }
 
   public static MongoAmbrosia.AmbrosiaGsonConstructBuilder mongoDB() {
+    return mongoDB(SerializationMode.STRUCTURED);
+  }
+
+  public static MongoAmbrosia.AmbrosiaGsonConstructBuilder mongoDB(SerializationMode mode) {
     return MongoAmbrosia.builder()
         .gsonBuild()
-        .construct(SpigotCapableAmbrosia::registerConfigurationSerializable)
+        .construct(registerConfigurationSerializable(mode))
         .construct(GsonBuilder::enableComplexMapKeySerialization);
   }
 
   public static RedissonAmbrosia.AmbrosiaGsonConstructBuilder redisson() {
+    return redisson(SerializationMode.STRUCTURED);
+  }
+
+  public static RedissonAmbrosia.AmbrosiaGsonConstructBuilder redisson(SerializationMode mode) {
     return RedissonAmbrosia.builder()
         .gsonBuild()
-        .construct(SpigotCapableAmbrosia::registerConfigurationSerializable)
+        .construct(registerConfigurationSerializable(mode))
         .construct(GsonBuilder::enableComplexMapKeySerialization);
   }
 
   public static FileAmbrosia.AmbrosiaGsonConstructBuilder toFiles() {
+    return toFiles(SerializationMode.STRUCTURED);
+  }
+
+  public static FileAmbrosia.AmbrosiaGsonConstructBuilder toFiles(SerializationMode mode) {
     return FileAmbrosia.builder()
         .gsonBuild()
-        .construct(SpigotCapableAmbrosia::registerConfigurationSerializable)
+        .construct(registerConfigurationSerializable(mode))
         .construct(GsonBuilder::enableComplexMapKeySerialization);
   }
 
   public static PDCAmbrosia.AmbrosiaGsonConstructBuilder pdc() {
+    return pdc(SerializationMode.STRUCTURED);
+  }
+
+  public static PDCAmbrosia.AmbrosiaGsonConstructBuilder pdc(SerializationMode mode) {
     return PDCAmbrosia.builder()
         .gsonBuild()
-        .construct(SpigotCapableAmbrosia::registerConfigurationSerializable)
+        .construct(registerConfigurationSerializable(mode))
         .construct(GsonBuilder::enableComplexMapKeySerialization);
   }
 
@@ -0,0 +1,220 @@
+package com.gestankbratwurst.ambrosia.adapter;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.bukkit.inventory.ItemStack;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes {@link ConfigurationSerializable} objects as plain json objects, like yaml configs do, and reads them back
+ * with {@link ConfigurationSerialization#deserializeObject(Map)}.
+ * Values written by {@link ConfigurationSerializableTypeAdapter} can still be read.
+ *
+ * @param <T> The type of the serialized objects.
+ */
+public class StructuredConfigurationSerializableTypeAdapter<T extends ConfigurationSerializable> implements JsonSerializer<T>, JsonDeserializer<T> {
+
+  private static final String typeKey = ConfigurationSerialization.SERIALIZED_TYPE_KEY;
+  private static final String uuidAlias = "java.util.UUID";
+
+  private final Map<Class<?>, String> aliases = new ConcurrentHashMap<>();
+  private final ConfigurationSerializableTypeAdapter<T> legacyAdapter = new ConfigurationSerializableTypeAdapter<>();
+
+  @Override
+  public JsonElement serialize(T src, Type typeOfSrc, JsonSerializationContext context) {
+    return this.toJson(src, context);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+    if (json.isJsonPrimitive()) {
+      return this.legacyAdapter.deserialize(json, typeOfT, context);
+    }
+    if (!json.isJsonObject()) {
+      throw new JsonParseException("Expected an object but got: " + json);
+    }
+    JsonObject object = json.getAsJsonObject();
+    if (!object.has(typeKey)) {
+      if (!(typeOfT instanceof Class<?> type)) {
+        throw new JsonParseException("Missing " + typeKey + " type key: " + json);
+      }
+      // Written without a type, fall back to the requested type.
+      Map<String, Object> args = this.toArgs(object);
+      Object result = ConfigurationSerialization.deserializeObject(args, (Class<? extends ConfigurationSerializable>) type);
+      if (result == null) {
+        throw new JsonParseException("Failed to deserialize " + type.getName() + ": " + json);
+      }
+      return (T) result;
+    }
+    return (T) this.fromJson(object);
+  }
+
+  private String getAlias(Class<? extends ConfigurationSerializable> type) {
+    return this.aliases.computeIfAbsent(type, ignored -> ConfigurationSerialization.getAlias(type));
+  }
+
+  private JsonElement toJson(Object value, JsonSerializationContext context) {
+    if (value == null) {
+      return JsonNull.INSTANCE;
+    } else if (value instanceof String string) {
+      return new JsonPrimitive(string);
+    } else if (value instanceof Number number) {
+      return new JsonPrimitive(number);
+    } else if (value instanceof Boolean bool) {
+      return new JsonPrimitive(bool);
+    } else if (value instanceof Character character) {
+      return new JsonPrimitive(character);
+    } else if (value instanceof UUID uuid) {
+      JsonObject object = new JsonObject();
+      object.addProperty(typeKey, uuidAlias);
+      object.addProperty("uuid", uuid.toString());
+      return object;
+    } else if (value instanceof Location location) {
+      return this.writeLocation(location);
+    } else if (value instanceof ConfigurationSerializable serializable) {
+      JsonObject object = new JsonObject();
+      object.addProperty(typeKey, this.getAlias(serializable.getClass()));
+      for (Map.Entry<String, Object> entry : serializable.serialize().entrySet()) {
+        object.add(entry.getKey(), this.toJson(entry.getValue(), context));
+      }
+      return object;
+    } else if (value instanceof Map<?, ?> map) {
+      JsonObject object = new JsonObject();
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        object.add(String.valueOf(entry.getKey()), this.toJson(entry.getValue(), context));
+      }
+      return object;
+    } else if (value instanceof Iterable<?> iterable) {
+      JsonArray array = new JsonArray();
+      for (Object element : iterable) {
+        array.add(this.toJson(element, context));
+      }
+      return array;
+    } else if (value instanceof Object[] elements) {
+      JsonArray array = new JsonArray(elements.length);
+      for (Object element : elements) {
+        array.add(this.toJson(element, context));
+      }
+      return array;
+    } else if (value instanceof Enum<?> constant) {
+      return new JsonPrimitive(constant.name());
+    }
+    return context.serialize(value);
+  }
+
+  private JsonObject writeLocation(Location location) {
+    JsonObject object = new JsonObject();
+    object.addProperty(typeKey, this.getAlias(Location.class));
+    World world = location.isWorldLoaded() ? location.getWorld() : null;
+    if (world != null) {
+      object.addProperty("world", world.getName());
+    }
+    object.addProperty("x", location.getX());
+    object.addProperty("y", location.getY());
+    object.addProperty("z", location.getZ());
+    object.addProperty("yaw", location.getYaw());
+    object.addProperty("pitch", location.getPitch());
+    return object;
+  }
+
+  private Location readLocation(JsonObject object) {
+    World world = null;
+    if (object.has("world")) {
+      String worldName = object.get("world").getAsString();
+      world = Bukkit.getWorld(worldName);
+      if (world == null) {
+        throw new JsonParseException("Unknown world: " + worldName);
+      }
+    }
+    return new Location(world,
+        object.get("x").getAsDouble(), object.get("y").getAsDouble(), object.get("z").getAsDouble(),
+        object.get("yaw").getAsFloat(), object.get("pitch").getAsFloat());
+  }
+
+  private Object fromJson(JsonElement json) {
+    if (json == null || json.isJsonNull()) {
+      return null;
+    } else if (json.isJsonArray()) {
+      List<Object> list = new ArrayList<>(json.getAsJsonArray().size());
+      for (JsonElement element : json.getAsJsonArray()) {
+        list.add(this.fromJson(element));
+      }
+      return list;
+    } else if (json.isJsonPrimitive()) {
+      return this.fromPrimitive(json.getAsJsonPrimitive());
+    }
+    JsonObject object = json.getAsJsonObject();
+    JsonElement type = object.get(typeKey);
+    if (type == null) {
+      return this.toArgs(object);
+    }
+    String alias = type.getAsString();
+    if (alias.equals(uuidAlias)) {
+      return UUID.fromString(object.get("uuid").getAsString());
+    } else if (alias.equals(this.getAlias(Location.class))) {
+      return this.readLocation(object);
+    }
+    Map<String, Object> args = this.toArgs(object);
+    Object result;
+    if (alias.equals(this.getAlias(ItemStack.class))) {
+      result = ItemStack.deserialize(args);
+    } else {
+      result = ConfigurationSerialization.deserializeObject(args);
+    }
+    if (result == null) {
+      // The error is logged by Bukkit.
+      throw new JsonParseException("Failed to deserialize " + alias + ": " + json);
+    }
+    return result;
+  }
+
+  private Map<String, Object> toArgs(JsonObject object) {
+    Map<String, Object> args = new LinkedHashMap<>();
+    for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+      args.put(entry.getKey(), this.fromJson(entry.getValue()));
+    }
+    return args;
+  }
+
+  private Object fromPrimitive(JsonPrimitive primitive) {
+    if (primitive.isBoolean()) {
+      return primitive.getAsBoolean();
+    } else if (primitive.isString()) {
+      return primitive.getAsString();
+    }
+    String number = primitive.getAsString();
+    if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+      try {
+        long value = Long.parseLong(number);
+        if (value == (int) value) {
+          return (int) value;
+        }
+        return value;
+      } catch (NumberFormatException ignored) {
+        // Too large for a long.
+      }
+    }
+    return primitive.getAsDouble();
+  }
+}
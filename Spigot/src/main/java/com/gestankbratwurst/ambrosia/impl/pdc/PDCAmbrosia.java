@@ -3,9 +3,14 @@ package com.gestankbratwurst.ambrosia.impl.pdc;
 import com.gestankbratwurst.ambrosia.Ambrosia;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import org.bukkit.NamespacedKey;
 import org.bukkit.persistence.PersistentDataContainer;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 public class PDCAmbrosia extends Ambrosia<PersistentDataContainer, PDCMap<?, ?>> {
@@ -15,15 +20,86 @@ public class PDCAmbrosia extends Ambrosia<PersistentDataContainer, PDCMap<?, ?>>
   }
 
   private final PDCSerializer serializer;
+  private final PDCObjectCache cache;
+  private final PDCAsyncWriter asyncWriter;
+  private final Map<String, Set<NamespacedKey>> keysByPrefix;
+  private final Map<String, Set<NamespacedKey>> legacyKeysByNamespace;
 
   public PDCAmbrosia(PersistentDataContainer backbone, PDCSerializer serializer) {
+    this(backbone, serializer, null, null);
+  }
+
+  public PDCAmbrosia(PersistentDataContainer backbone, PDCSerializer serializer, @Nullable PDCObjectCache cache, @Nullable PDCAsyncWriter asyncWriter) {
     super(backbone);
     this.serializer = serializer;
+    this.cache = cache;
+    this.asyncWriter = asyncWriter;
+    this.keysByPrefix = new ConcurrentHashMap<>();
+    this.legacyKeysByNamespace = new ConcurrentHashMap<>();
   }
 
+  /**
+   * Creates a view of a map. Views of the same map share their cached keys.
+   *
+   * @param mapName   The name of the map, which prefixes all of its keys.
+   * @param keyType   The type of the keys.
+   * @param valueType The type of the values.
+   * @return The map view.
+   */
   @Override
-  public <K, V> PDCMap<K, V> createMapView(String unused, Class<K> keyType, Class<V> valueType) {
-    return new PDCMap<>(this.getBackbone(), this.serializer, keyType, valueType);
+  public <K, V> PDCMap<K, V> createMapView(String mapName, Class<K> keyType, Class<V> valueType) {
+    return this.createMapView(mapName, keyType, valueType, this.serializer);
+  }
+
+  /**
+   * Creates a view of a map that stores its values with its own serializer, for example in another
+   * {@link PDCGsonSerializer.Format}. The serializer must use the same namespace for every view of the map.
+   *
+   * @param mapName    The name of the map, which prefixes all of its keys.
+   * @param keyType    The type of the keys.
+   * @param valueType  The type of the values.
+   * @param serializer The serializer of the map.
+   * @return The map view.
+   */
+  public <K, V> PDCMap<K, V> createMapView(String mapName, Class<K> keyType, Class<V> valueType, PDCSerializer serializer) {
+    String prefix = PDCMap.toPrefix(mapName);
+    Set<NamespacedKey> keys = this.keysByPrefix.computeIfAbsent(prefix, ignored -> this.loadKeys(serializer, prefix));
+    Set<NamespacedKey> legacyKeys = this.legacyKeysByNamespace.computeIfAbsent(serializer.getNamespace(), this::loadLegacyKeys);
+    return new PDCMap<>(this.getBackbone(), serializer, prefix, keys, legacyKeys, keyType, valueType, this.cache, this.asyncWriter);
+  }
+
+  public PDCSerializer getSerializer() {
+    return this.serializer;
+  }
+
+  /**
+   * Writes all dirty cached values of the container.
+   */
+  public void flush() {
+    if (this.cache != null) {
+      this.cache.flush(this.getBackbone());
+    }
+  }
+
+  private Set<NamespacedKey> loadKeys(PDCSerializer serializer, String prefix) {
+    String namespace = serializer.getNamespace();
+    Set<NamespacedKey> keys = ConcurrentHashMap.newKeySet();
+    for (NamespacedKey key : this.getBackbone().getKeys()) {
+      if (PDCMap.isScoped(key, namespace, prefix)) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
+  private Set<NamespacedKey> loadLegacyKeys(String namespace) {
+    Set<NamespacedKey> keys = ConcurrentHashMap.newKeySet();
+    for (NamespacedKey key : this.getBackbone().getKeys()) {
+      if (PDCMap.isLegacy(key, namespace)) {
+        keys.add(key);
+      }
+    }
+    return keys;
   }
 
   public <K, V> PDCMap<K, V> createMapView(Class<K> keyType, Class<V> valueType) {
@@ -34,6 +110,8 @@ public class PDCAmbrosia extends Ambrosia<PersistentDataContainer, PDCMap<?, ?>>
 
     protected PDCSerializer serializer;
     protected PersistentDataContainer container;
+    protected PDCObjectCache cache;
+    protected PDCAsyncWriter asyncWriter;
 
     private Builder() {
     }
@@ -44,15 +122,15 @@ public class PDCAmbrosia extends Ambrosia<PersistentDataContainer, PDCMap<?, ?>>
     }
 
     public AmbrosiaSerializerBuilder serializer(PDCSerializer serializer) {
-      return new AmbrosiaSerializerBuilder(serializer).container(this.container);
+      return new AmbrosiaSerializerBuilder(serializer).container(this.container).cache(this.cache).asyncWriter(this.asyncWriter);
     }
 
     public AmbrosiaGsonBuilder gson(Gson gson) {
-      return new AmbrosiaGsonBuilder(gson).container(this.container);
+      return new AmbrosiaGsonBuilder(gson).container(this.container).cache(this.cache).asyncWriter(this.asyncWriter);
     }
 
     public AmbrosiaGsonConstructBuilder gsonBuild() {
-      return new AmbrosiaGsonConstructBuilder().container(this.container);
+      return new AmbrosiaGsonConstructBuilder().container(this.container).cache(this.cache).asyncWriter(this.asyncWriter);
     }
 
     public SELF container(PersistentDataContainer container) {
@@ -60,6 +138,28 @@ public class PDCAmbrosia extends Ambrosia<PersistentDataContainer, PDCMap<?, ?>>
       return this.self();
     }
 
+    /**
+     * Caches deserialized values and defers writes, see {@link PDCObjectCache}.
+     *
+     * @param cache The cache, usually shared by all instances of a plugin.
+     * @return This builder.
+     */
+    public SELF cache(PDCObjectCache cache) {
+      this.cache = cache;
+      return this.self();
+    }
+
+    /**
+     * Enables {@link PDCMap#putAsync}, see {@link PDCAsyncWriter}.
+     *
+     * @param asyncWriter The writer, usually shared by all instances of a plugin.
+     * @return This builder.
+     */
+    public SELF asyncWriter(PDCAsyncWriter asyncWriter) {
+      this.asyncWriter = asyncWriter;
+      return this.self();
+    }
+
     public PDCAmbrosia build() {
       if (this.serializer == null) {
         throw new IllegalStateException("Serializer is not set.");
@@ -67,7 +167,7 @@ public class PDCAmbrosia extends Ambrosia<PersistentDataContainer, PDCMap<?, ?>>
       if (this.container == null) {
         throw new IllegalStateException("PDC is not set.");
       }
-      return new PDCAmbrosia(this.container, this.serializer);
+      return new PDCAmbrosia(this.container, this.serializer, this.cache, this.asyncWriter);
     }
 
   }
@@ -84,6 +184,7 @@ public class PDCAmbrosia extends Ambrosia<PersistentDataContainer, PDCMap<?, ?>>
 
     private final Gson gson;
     private JavaPlugin plugin;
+    private PDCGsonSerializer.Format format = PDCGsonSerializer.Format.JSON;
 
     private AmbrosiaGsonBuilder(Gson gson) {
       this.gson = gson;
@@ -94,9 +195,14 @@ public class PDCAmbrosia extends Ambrosia<PersistentDataContainer, PDCMap<?, ?>>
       return this;
     }
 
+    public AmbrosiaGsonBuilder format(PDCGsonSerializer.Format format) {
+      this.format = format;
+      return this;
+    }
+
     @Override
     public PDCAmbrosia build() {
-      this.serializer = new PDCGsonSerializer(this.gson, this.plugin);
+      this.serializer = new PDCGsonSerializer(this.gson, this.plugin, this.format);
       return super.build();
     }
   }
@@ -105,6 +211,7 @@ public class PDCAmbrosia extends Ambrosia<PersistentDataContainer, PDCMap<?, ?>>
 
     private final GsonBuilder gsonBuilder;
     private JavaPlugin plugin;
+    private PDCGsonSerializer.Format format = PDCGsonSerializer.Format.JSON;
 
     private AmbrosiaGsonConstructBuilder() {
       this.gsonBuilder = new GsonBuilder();
@@ -120,9 +227,14 @@ public class PDCAmbrosia extends Ambrosia<PersistentDataContainer, PDCMap<?, ?>>
       return this.self();
     }
 
+    public AmbrosiaGsonConstructBuilder format(PDCGsonSerializer.Format format) {
+      this.format = format;
+      return this.self();
+    }
+
     @Override
     public PDCAmbrosia build() {
-      this.serializer = new PDCGsonSerializer(this.gsonBuilder.create(), this.plugin);
+      this.serializer = new PDCGsonSerializer(this.gsonBuilder.create(), this.plugin, this.format);
       return super.build();
     }
   }
@@ -0,0 +1,289 @@
+package com.gestankbratwurst.ambrosia.impl.pdc;
+
+import org.bukkit.Bukkit;
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Serializes PDC writes on a small worker pool and applies them on the main thread, within a budget per tick.
+ * Pending writes of a holder are written right away when it unloads. A single writer can be shared by a plugin.
+ */
+public class PDCAsyncWriter implements Listener, AutoCloseable {
+
+  private final ExecutorService executor;
+  private final Map<WriteKey, PendingWrite> pendingWrites;
+  private final Queue<ReadyWrite> readyWrites;
+  private final long tickBudgetNanos;
+  private final BukkitTask applyTask;
+
+  /**
+   * Creates a writer, starts its main thread task and registers its listener.
+   *
+   * @param plugin     The plugin to schedule the main thread task and register the listener for.
+   * @param threads    The amount of serialization threads.
+   * @param tickBudget The maximum time spent applying writes per tick. At least one write is applied per tick.
+   */
+  public PDCAsyncWriter(JavaPlugin plugin, int threads, Duration tickBudget) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Writer threads must be positive.");
+    }
+    AtomicInteger counter = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "Ambrosia-PDCWriter-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.pendingWrites = new ConcurrentHashMap<>();
+    this.readyWrites = new ConcurrentLinkedQueue<>();
+    this.tickBudgetNanos = tickBudget.toNanos();
+    this.applyTask = Bukkit.getScheduler().runTaskTimer(plugin, () -> this.applyReadyWrites(this.tickBudgetNanos), 1, 1);
+    Bukkit.getPluginManager().registerEvents(this, plugin);
+  }
+
+  /**
+   * Identifies a key of a container. Containers compare by their content, which changes, so they are compared by identity.
+   */
+  private record WriteKey(PersistentDataContainer container, NamespacedKey key) {
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof WriteKey writeKey && this.container == writeKey.container && this.key.equals(writeKey.key);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(this.container) + this.key.hashCode();
+    }
+  }
+
+  private record PendingWrite(Object value, PDCSerializer serializer, CompletableFuture<Void> future) {
+  }
+
+  private record ReadyWrite(WriteKey writeKey, PendingWrite pendingWrite, Consumer<PersistentDataContainer> apply) {
+  }
+
+  /**
+   * Queues a value to be serialized on a worker thread and written on the main thread.
+   * The value must not be changed until the returned future completes.
+   *
+   * @param container  The container to write to.
+   * @param key        The key in the container.
+   * @param value      The value.
+   * @param serializer The serializer of the value.
+   * @return A future that completes on the main thread once the value is written to the container.
+   */
+  public CompletableFuture<Void> submit(PersistentDataContainer container, NamespacedKey key, Object value, PDCSerializer serializer) {
+    WriteKey writeKey = new WriteKey(container, key);
+    PendingWrite pendingWrite = new PendingWrite(value, serializer, new CompletableFuture<>());
+    PendingWrite replaced = this.pendingWrites.put(writeKey, pendingWrite);
+    if (replaced != null) {
+      // The replaced write is skipped, so it is written once its replacement is.
+      pendingWrite.future().whenComplete((ignored, error) -> {
+        if (error != null) {
+          replaced.future().completeExceptionally(error);
+        } else {
+          replaced.future().complete(null);
+        }
+      });
+    }
+    try {
+      this.executor.execute(() -> this.serialize(writeKey, pendingWrite));
+    } catch (RejectedExecutionException e) {
+      this.pendingWrites.remove(writeKey, pendingWrite);
+      pendingWrite.future().completeExceptionally(new IllegalStateException("PDC writer is closed.", e));
+    }
+    return pendingWrite.future();
+  }
+
+  private void serialize(WriteKey writeKey, PendingWrite pendingWrite) {
+    if (this.pendingWrites.get(writeKey) != pendingWrite) {
+      return;
+    }
+    try {
+      Consumer<PersistentDataContainer> apply = pendingWrite.serializer().prepareSave(writeKey.key(), pendingWrite.value());
+      this.readyWrites.add(new ReadyWrite(writeKey, pendingWrite, apply));
+    } catch (RuntimeException e) {
+      this.pendingWrites.remove(writeKey, pendingWrite);
+      pendingWrite.future().completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Gets the value of a write that is not applied yet.
+   *
+   * @param container The container.
+   * @param key       The key in the container.
+   * @return The pending value or null if there is none.
+   */
+  public Object getPendingValue(PersistentDataContainer container, NamespacedKey key) {
+    PendingWrite pendingWrite = this.pendingWrites.get(new WriteKey(container, key));
+    return pendingWrite == null ? null : pendingWrite.value();
+  }
+
+  /**
+   * Drops a pending write that is replaced by a synchronous one.
+   *
+   * @param container The container.
+   * @param key       The key in the container.
+   */
+  public void discard(PersistentDataContainer container, NamespacedKey key) {
+    PendingWrite discarded = this.pendingWrites.remove(new WriteKey(container, key));
+    if (discarded != null) {
+      discarded.future().complete(null);
+    }
+  }
+
+  private void applyReadyWrites(long budgetNanos) {
+    long start = System.nanoTime();
+    ReadyWrite readyWrite;
+    while ((readyWrite = this.readyWrites.poll()) != null) {
+      this.apply(readyWrite.writeKey(), readyWrite.pendingWrite(), readyWrite.apply());
+      if (System.nanoTime() - start >= budgetNanos) {
+        return;
+      }
+    }
+  }
+
+  private void apply(WriteKey writeKey, PendingWrite pendingWrite, Consumer<PersistentDataContainer> apply) {
+    if (!this.pendingWrites.remove(writeKey, pendingWrite)) {
+      // Replaced or discarded in the meantime.
+      return;
+    }
+    try {
+      apply.accept(writeKey.container());
+      pendingWrite.future().complete(null);
+    } catch (RuntimeException e) {
+      pendingWrite.future().completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Writes all pending writes right away, serializing the ones that are not serialized yet.
+   * Must be called on the main thread.
+   */
+  public void flush() {
+    this.applyReadyWrites(Long.MAX_VALUE);
+    this.applyPendingWrites(container -> true);
+  }
+
+  /**
+   * Writes all pending writes of a container right away, serializing the ones that are not serialized yet.
+   * Must be called on the main thread.
+   *
+   * @param container The container.
+   */
+  public void flush(PersistentDataContainer container) {
+    this.flush(other -> other == container);
+  }
+
+  private void flush(Predicate<PersistentDataContainer> filter) {
+    if (this.pendingWrites.isEmpty()) {
+      return;
+    }
+    Iterator<ReadyWrite> iterator = this.readyWrites.iterator();
+    while (iterator.hasNext()) {
+      ReadyWrite readyWrite = iterator.next();
+      if (filter.test(readyWrite.writeKey().container())) {
+        iterator.remove();
+        this.apply(readyWrite.writeKey(), readyWrite.pendingWrite(), readyWrite.apply());
+      }
+    }
+    // Writes that are still serialized on a worker thread are serialized again, their late results are skipped.
+    this.applyPendingWrites(filter);
+  }
+
+  private void applyPendingWrites(Predicate<PersistentDataContainer> filter) {
+    for (Map.Entry<WriteKey, PendingWrite> entry : this.pendingWrites.entrySet()) {
+      WriteKey writeKey = entry.getKey();
+      if (!filter.test(writeKey.container())) {
+        continue;
+      }
+      PendingWrite pendingWrite = entry.getValue();
+      Consumer<PersistentDataContainer> apply;
+      try {
+        apply = pendingWrite.serializer().prepareSave(writeKey.key(), pendingWrite.value());
+      } catch (RuntimeException e) {
+        if (this.pendingWrites.remove(writeKey, pendingWrite)) {
+          pendingWrite.future().completeExceptionally(e);
+        }
+        continue;
+      }
+      this.apply(writeKey, pendingWrite, apply);
+    }
+  }
+
+  /**
+   * Writes all pending writes and stops the worker threads and the main thread task.
+   * Must be called on the main thread, for example when the plugin disables.
+   */
+  @Override
+  public void close() {
+    HandlerList.unregisterAll(this);
+    this.applyTask.cancel();
+    this.executor.shutdown();
+    try {
+      if (!this.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        throw new IllegalStateException("Timed out waiting for PDC serialization.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    this.flush();
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onChunkUnload(ChunkUnloadEvent event) {
+    this.flush(event.getChunk().getPersistentDataContainer());
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onEntitiesUnload(EntitiesUnloadEvent event) {
+    // Called before the entities are saved, unlike their remove events.
+    // Containers compare by their content, which changes.
+    Set<PersistentDataContainer> containers = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Entity entity : event.getEntities()) {
+      containers.add(entity.getPersistentDataContainer());
+    }
+    this.flush(containers::contains);
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onPlayerQuit(PlayerQuitEvent event) {
+    // Called before the player data is saved.
+    this.flush(event.getPlayer().getPersistentDataContainer());
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onWorldUnload(WorldUnloadEvent event) {
+    this.flush(event.getWorld().getPersistentDataContainer());
+  }
+}
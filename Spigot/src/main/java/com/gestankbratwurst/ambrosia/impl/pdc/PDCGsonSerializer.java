@@ -1,47 +1,197 @@
 package com.gestankbratwurst.ambrosia.impl.pdc;
 
+import com.gestankbratwurst.ambrosia.impl.file.format.BinaryJson;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
 import org.bukkit.NamespacedKey;
+import org.bukkit.persistence.PersistentDataAdapterContext;
 import org.bukkit.persistence.PersistentDataContainer;
 import org.bukkit.persistence.PersistentDataType;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public class PDCGsonSerializer implements PDCSerializer {
 
+  private static final int defaultKeyCacheSize = 4096;
+
   private final Gson gson;
   private final WeakReference<JavaPlugin> pluginRef;
+  private final Format format;
+  private final KeyCache keyCache;
 
   public PDCGsonSerializer(Gson gson, JavaPlugin plugin) {
+    this(gson, plugin, Format.JSON);
+  }
+
+  public PDCGsonSerializer(Gson gson, JavaPlugin plugin, Format format) {
+    this(gson, plugin, format, defaultKeyCacheSize);
+  }
+
+  /**
+   * @param gson         The gson instance for values and complex keys.
+   * @param plugin       The plugin whose namespace is used, or null for the minecraft namespace.
+   * @param format       The format of the values.
+   * @param keyCacheSize The maximum amount of keys cached in each direction.
+   */
+  public PDCGsonSerializer(Gson gson, JavaPlugin plugin, Format format, int keyCacheSize) {
+    this(gson, plugin == null ? null : new WeakReference<>(plugin), format, new KeyCache(keyCacheSize));
+  }
+
+  private PDCGsonSerializer(Gson gson, WeakReference<JavaPlugin> pluginRef, Format format, KeyCache keyCache) {
     this.gson = gson;
-    if (plugin == null) {
-      this.pluginRef = null;
-    } else {
-      this.pluginRef = new WeakReference<>(plugin);
+    this.pluginRef = pluginRef;
+    this.format = format;
+    this.keyCache = keyCache;
+  }
+
+  /**
+   * Caches keys and their namespaced keys in both directions, evicting the least recently used ones.
+   */
+  private static final class KeyCache {
+
+    private final Map<Object, NamespacedKey> namespacedKeys;
+    private final Map<NamespacedKey, Object> keys;
+
+    private KeyCache(int maxSize) {
+      this.namespacedKeys = new LinkedHashMap<>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, NamespacedKey> eldest) {
+          return this.size() > maxSize;
+        }
+      };
+      this.keys = new LinkedHashMap<>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<NamespacedKey, Object> eldest) {
+          return this.size() > maxSize;
+        }
+      };
+    }
+
+    private synchronized NamespacedKey getNamespacedKey(Object key) {
+      return this.namespacedKeys.get(key);
     }
+
+    private synchronized Object getKey(NamespacedKey namespacedKey) {
+      return this.keys.get(namespacedKey);
+    }
+
+    private synchronized void put(Object key, NamespacedKey namespacedKey) {
+      this.namespacedKeys.put(key, namespacedKey);
+      this.keys.put(namespacedKey, key);
+    }
+  }
+
+  /**
+   * Creates a serializer with the same gson instance and namespace, which stores values in another format.
+   * Useful to pick a format per map, see {@link PDCAmbrosia#createMapView(String, Class, Class, PDCSerializer)}.
+   *
+   * @param format The format of the values.
+   * @return The serializer.
+   */
+  public PDCGsonSerializer withFormat(Format format) {
+    return new PDCGsonSerializer(this.gson, this.pluginRef, format, this.keyCache);
+  }
+
+  public Format getFormat() {
+    return this.format;
   }
 
   @Override
   public <T> void save(NamespacedKey key, PersistentDataContainer container, T value) {
-    String json = this.gson.toJson(value);
-    container.set(key, PersistentDataType.STRING, json);
+    this.prepareSave(key, value).accept(container);
+  }
+
+  @Override
+  public <T> Consumer<PersistentDataContainer> prepareSave(NamespacedKey key, T value) {
+    switch (this.format) {
+      case BINARY -> {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+          JsonWriter writer = BinaryJson.writer(outputStream);
+          this.gson.toJson(value, value == null ? Object.class : value.getClass(), writer);
+          writer.flush();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        byte[] bytes = outputStream.toByteArray();
+        return container -> container.set(key, PersistentDataType.BYTE_ARRAY, bytes);
+      }
+      case STRUCTURED -> {
+        // Containers are only created on the main thread.
+        JsonElement json = this.gson.toJsonTree(value);
+        String namespace = this.getNamespace();
+        return container -> {
+          PersistentDataAdapterContext context = container.getAdapterContext();
+          container.set(key, PersistentDataType.TAG_CONTAINER, TagContainerJson.toContainer(json, context, namespace));
+        };
+      }
+      default -> {
+        String json = this.gson.toJson(value);
+        return container -> container.set(key, PersistentDataType.STRING, json);
+      }
+    }
   }
 
   @Override
   public <T> T load(NamespacedKey key, PersistentDataContainer container, Class<T> type) {
-    String json = container.get(key, PersistentDataType.STRING);
-    return this.gson.fromJson(json, type);
+    switch (this.format) {
+      case BINARY -> {
+        byte[] bytes = container.get(key, PersistentDataType.BYTE_ARRAY);
+        if (bytes == null) {
+          return null;
+        }
+        try {
+          return this.gson.fromJson(BinaryJson.decodeTree(ByteBuffer.wrap(bytes)), type);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      case STRUCTURED -> {
+        PersistentDataContainer tagContainer = container.get(key, PersistentDataType.TAG_CONTAINER);
+        if (tagContainer == null) {
+          return null;
+        }
+        return this.gson.fromJson(TagContainerJson.fromContainer(tagContainer, this.getNamespace()), type);
+      }
+      default -> {
+        String json = container.get(key, PersistentDataType.STRING);
+        return this.gson.fromJson(json, type);
+      }
+    }
   }
 
   @Override
   public <T> NamespacedKey serializeKey(T key) {
+    NamespacedKey namespacedKey = this.keyCache.getNamespacedKey(key);
+    if (namespacedKey == null) {
+      namespacedKey = this.createKey(key);
+      this.keyCache.put(key, namespacedKey);
+    }
+    return namespacedKey;
+  }
+
+  private NamespacedKey createKey(Object key) {
     String nameKey;
 
-    if (key.getClass().isPrimitive()) {
-      nameKey = String.valueOf(key);
+    if (key instanceof Character character) {
+      // Most characters are not allowed in keys.
+      nameKey = Integer.toString(character);
+    } else if (isBoxedPrimitive(key.getClass())) {
+      // Lower case for the exponent of floating point numbers.
+      nameKey = String.valueOf(key).toLowerCase(Locale.ROOT);
     } else if (key instanceof NamespacedKey) {
       nameKey = ((NamespacedKey) key).getKey();
     } else if (key instanceof String) {
@@ -49,8 +199,9 @@ public class PDCGsonSerializer implements PDCSerializer {
     } else if (key instanceof UUID) {
       nameKey = key.toString();
     } else {
+      // Lower case hex, as keys only allow [a-z0-9/._-].
       String json = this.gson.toJson(key);
-      nameKey = Base64.getEncoder().encodeToString(json.getBytes());
+      nameKey = HexFormat.of().formatHex(json.getBytes(StandardCharsets.UTF_8));
     }
 
     if (pluginRef == null) {
@@ -63,47 +214,132 @@ public class PDCGsonSerializer implements PDCSerializer {
     return new NamespacedKey(plugin, nameKey);
   }
 
+  private static boolean isBoxedPrimitive(Class<?> type) {
+    return type == Integer.class || type == Long.class || type == Short.class || type == Byte.class
+        || type == Float.class || type == Double.class || type == Boolean.class;
+  }
+
+  private static Class<?> box(Class<?> type) {
+    if (!type.isPrimitive()) {
+      return type;
+    } else if (type == int.class) {
+      return Integer.class;
+    } else if (type == long.class) {
+      return Long.class;
+    } else if (type == short.class) {
+      return Short.class;
+    } else if (type == byte.class) {
+      return Byte.class;
+    } else if (type == float.class) {
+      return Float.class;
+    } else if (type == double.class) {
+      return Double.class;
+    } else if (type == char.class) {
+      return Character.class;
+    } else if (type == boolean.class) {
+      return Boolean.class;
+    }
+    return type;
+  }
+
   @Override
+  @SuppressWarnings("unchecked")
   public <T> T deserializeKey(NamespacedKey key, Class<T> type) {
     if (type == NamespacedKey.class) {
       return type.cast(key);
     }
+    Object cachedKey = this.keyCache.getKey(key);
+    if (cachedKey != null && box(type).isInstance(cachedKey)) {
+      return (T) cachedKey;
+    }
+    Object deserializedKey = this.parseKey(key.getKey(), type);
+    this.keyCache.put(deserializedKey, key);
+    // Class.cast doesn't accept boxed values for primitive types.
+    return (T) deserializedKey;
+  }
 
-    String nameKey = key.getKey();
-
-    if (type.isPrimitive()) {
-      if (type == int.class) {
-        return type.cast(Integer.parseInt(nameKey));
-      } else if (type == long.class) {
-        return type.cast(Long.parseLong(nameKey));
-      } else if (type == short.class) {
-        return type.cast(Short.parseShort(nameKey));
-      } else if (type == byte.class) {
-        return type.cast(Byte.parseByte(nameKey));
-      } else if (type == float.class) {
-        return type.cast(Float.parseFloat(nameKey));
-      } else if (type == double.class) {
-        return type.cast(Double.parseDouble(nameKey));
-      } else if (type == char.class) {
-        return type.cast(nameKey.charAt(0));
-      } else if (type == boolean.class) {
-        return type.cast(Boolean.parseBoolean(nameKey));
-      } else {
-        throw new IllegalArgumentException("Unknown primitive type: " + type);
-      }
+  private Object parseKey(String nameKey, Class<?> type) {
+    if (type == int.class || type == Integer.class) {
+      return Integer.parseInt(nameKey);
+    } else if (type == long.class || type == Long.class) {
+      return Long.parseLong(nameKey);
+    } else if (type == short.class || type == Short.class) {
+      return Short.parseShort(nameKey);
+    } else if (type == byte.class || type == Byte.class) {
+      return Byte.parseByte(nameKey);
+    } else if (type == float.class || type == Float.class) {
+      return Float.parseFloat(nameKey);
+    } else if (type == double.class || type == Double.class) {
+      return Double.parseDouble(nameKey);
+    } else if (type == char.class || type == Character.class) {
+      return (char) Integer.parseInt(nameKey);
+    } else if (type == boolean.class || type == Boolean.class) {
+      return Boolean.parseBoolean(nameKey);
+    } else if (type.isPrimitive()) {
+      throw new IllegalArgumentException("Unknown primitive type: " + type);
     } else if (type == String.class) {
-      return type.cast(nameKey);
+      return nameKey;
     } else if (type == UUID.class) {
-      return type.cast(UUID.fromString(nameKey));
+      return UUID.fromString(nameKey);
     } else {
-      byte[] bytes = Base64.getDecoder().decode(nameKey);
-      String json = new String(bytes);
+      byte[] bytes = isHex(nameKey) ? HexFormat.of().parseHex(nameKey) : Base64.getDecoder().decode(nameKey);
+      String json = new String(bytes, StandardCharsets.UTF_8);
       return this.gson.fromJson(json, type);
     }
   }
 
+  /**
+   * Tells hex encoded complex keys apart from the Base64 encoded ones of older versions.
+   */
+  private static boolean isHex(String nameKey) {
+    if (nameKey.length() % 2 != 0) {
+      return false;
+    }
+    for (int i = 0; i < nameKey.length(); i++) {
+      if (Character.digit(nameKey.charAt(i), 16) < 0 || Character.isUpperCase(nameKey.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public <K> PersistentDataType<?, ?> getDataType(K key) {
-    return PersistentDataType.STRING;
+    return switch (this.format) {
+      case JSON -> PersistentDataType.STRING;
+      case BINARY -> PersistentDataType.BYTE_ARRAY;
+      case STRUCTURED -> PersistentDataType.TAG_CONTAINER;
+    };
+  }
+
+  @Override
+  public String getNamespace() {
+    if (this.pluginRef == null) {
+      return NamespacedKey.MINECRAFT;
+    }
+    JavaPlugin plugin = this.pluginRef.get();
+    if (plugin == null) {
+      throw new IllegalStateException("Plugin reference was garbage collected.");
+    }
+    return plugin.getName().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * The ways a value can be stored in a container. The format of a map must not change once it holds values.
+   */
+  public enum Format {
+    /**
+     * Json text as {@link PersistentDataType#STRING}.
+     */
+    JSON,
+    /**
+     * Compact binary json as {@link PersistentDataType#BYTE_ARRAY}. Property names are only stored once per value
+     * and integers are stored as varints.
+     */
+    BINARY,
+    /**
+     * Nested {@link PersistentDataType#TAG_CONTAINER} entries, one per property, so values stay readable in NBT.
+     */
+    STRUCTURED
   }
 }
@@ -2,36 +2,284 @@ package com.gestankbratwurst.ambrosia.impl.pdc;
 
 import org.bukkit.NamespacedKey;
 import org.bukkit.persistence.PersistentDataContainer;
-import org.bukkit.persistence.PersistentDataType;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+/**
+ * A map stored in a {@link PersistentDataContainer}. All keys of a map are prefixed with its sanitized name,
+ * and its cached key set only tracks changes made through Ambrosia.
+ * Unprefixed values of older versions are still read and moved by {@link #migrateLegacyKeys()}.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
 public class PDCMap<K, V> implements Map<K, V> {
 
   private final PersistentDataContainer container;
   private final PDCSerializer serializer;
+  private final String prefix;
+  private final Set<NamespacedKey> keys;
+  private final Set<NamespacedKey> legacyKeys;
   private final Class<K> keyType;
   private final Class<V> valueType;
+  private final PDCObjectCache cache;
+  private final PDCAsyncWriter asyncWriter;
 
-  public PDCMap(PersistentDataContainer container, PDCSerializer serializer, Class<K> keyType, Class<V> valueType) {
+  public PDCMap(PersistentDataContainer container, PDCSerializer serializer, String prefix, Set<NamespacedKey> keys, Class<K> keyType, Class<V> valueType) {
+    this(container, serializer, prefix, keys, keyType, valueType, null, null);
+  }
+
+  public PDCMap(PersistentDataContainer container, PDCSerializer serializer, String prefix, Set<NamespacedKey> keys, Class<K> keyType, Class<V> valueType,
+                @Nullable PDCObjectCache cache, @Nullable PDCAsyncWriter asyncWriter) {
+    this(container, serializer, prefix, keys, ConcurrentHashMap.newKeySet(), keyType, valueType, cache, asyncWriter);
+  }
+
+  /**
+   * @param container   The container.
+   * @param serializer  The serializer of keys and values.
+   * @param prefix      The prefix of all keys of the map, see {@link #toPrefix(String)}.
+   * @param keys        The cached keys of the map, shared by all views of the map.
+   * @param legacyKeys  The unprefixed keys written by older versions that are not moved yet, shared by all maps of the container.
+   * @param keyType     The type of the keys.
+   * @param valueType   The type of the values.
+   * @param cache       The object cache or null.
+   * @param asyncWriter The async writer or null.
+   */
+  public PDCMap(PersistentDataContainer container, PDCSerializer serializer, String prefix, Set<NamespacedKey> keys, Set<NamespacedKey> legacyKeys,
+                Class<K> keyType, Class<V> valueType, @Nullable PDCObjectCache cache, @Nullable PDCAsyncWriter asyncWriter) {
     this.serializer = serializer;
     this.container = container;
+    this.prefix = prefix;
+    this.keys = keys;
+    this.legacyKeys = legacyKeys;
     this.keyType = keyType;
     this.valueType = valueType;
+    this.cache = cache;
+    this.asyncWriter = asyncWriter;
+  }
+
+  /**
+   * Turns a map name into a key prefix. Characters that are not allowed in keys are replaced with underscores.
+   *
+   * @param mapName The name of the map.
+   * @return The prefix of all keys of the map.
+   */
+  public static String toPrefix(String mapName) {
+    StringBuilder builder = new StringBuilder(mapName.length() + 1);
+    for (char c : mapName.toLowerCase(Locale.ROOT).toCharArray()) {
+      boolean valid = (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '_' || c == '-';
+      builder.append(valid ? c : '_');
+    }
+    return builder.append('/').toString();
+  }
+
+  /**
+   * Checks if a key of a container belongs to a map.
+   *
+   * @param key       The key in the container.
+   * @param namespace The namespace of the serializer.
+   * @param prefix    The prefix of the map.
+   * @return True if the key belongs to the map.
+   */
+  public static boolean isScoped(NamespacedKey key, String namespace, String prefix) {
+    return key.getNamespace().equals(namespace) && key.getKey().startsWith(prefix);
+  }
+
+  /**
+   * Checks if a key of a container was written by a version without map prefixes.
+   *
+   * @param key       The key in the container.
+   * @param namespace The namespace of the serializer.
+   * @return True if the key has no prefix.
+   */
+  public static boolean isLegacy(NamespacedKey key, String namespace) {
+    return key.getNamespace().equals(namespace) && key.getKey().indexOf('/') < 0;
+  }
+
+  private NamespacedKey toScopedKey(K key) {
+    NamespacedKey namespacedKey = this.serializer.serializeKey(key);
+    return new NamespacedKey(namespacedKey.getNamespace(), this.prefix + namespacedKey.getKey());
+  }
+
+  private NamespacedKey toLegacyKey(NamespacedKey scopedKey) {
+    return new NamespacedKey(scopedKey.getNamespace(), scopedKey.getKey().substring(this.prefix.length()));
+  }
+
+  private K fromScopedKey(NamespacedKey scopedKey) {
+    return this.serializer.deserializeKey(this.toLegacyKey(scopedKey), this.keyType);
+  }
+
+  /**
+   * Reads a value written by a version without prefixes, without moving it.
+   *
+   * @return The value or null if there is none in the format of this map.
+   */
+  private V loadLegacyValue(K key, NamespacedKey namespacedKey) {
+    if (!this.hasLegacyValue(key, namespacedKey)) {
+      return null;
+    }
+    return this.serializer.load(this.toLegacyKey(namespacedKey), this.container, this.valueType);
+  }
+
+  private boolean hasLegacyValue(K key, NamespacedKey namespacedKey) {
+    if (this.legacyKeys.isEmpty()) {
+      return false;
+    }
+    NamespacedKey legacyKey = this.toLegacyKey(namespacedKey);
+    return this.legacyKeys.contains(legacyKey) && this.container.has(legacyKey, this.serializer.getDataType(key));
+  }
+
+  private void dropLegacyValue(NamespacedKey namespacedKey) {
+    if (this.legacyKeys.isEmpty()) {
+      return;
+    }
+    NamespacedKey legacyKey = this.toLegacyKey(namespacedKey);
+    if (this.legacyKeys.remove(legacyKey)) {
+      this.container.remove(legacyKey);
+    }
+  }
+
+  private V readValue(K key, NamespacedKey namespacedKey) {
+    if (this.asyncWriter != null) {
+      Object pendingValue = this.asyncWriter.getPendingValue(this.container, namespacedKey);
+      if (pendingValue != null) {
+        return this.valueType.cast(pendingValue);
+      }
+    }
+    if (this.cache == null) {
+      V value = this.serializer.load(namespacedKey, this.container, this.valueType);
+      return value != null ? value : this.loadLegacyValue(key, namespacedKey);
+    }
+    Object cachedValue = this.cache.get(this.container, namespacedKey);
+    if (cachedValue != null) {
+      return this.valueType.cast(cachedValue);
+    }
+    V value = this.serializer.load(namespacedKey, this.container, this.valueType);
+    if (value == null) {
+      return this.loadLegacyValue(key, namespacedKey);
+    }
+    this.cache.put(this.container, namespacedKey, value, this.serializer, false);
+    return value;
+  }
+
+  private void writeValue(NamespacedKey namespacedKey, V value) {
+    if (this.asyncWriter != null) {
+      this.asyncWriter.discard(this.container, namespacedKey);
+    }
+    if (this.cache == null) {
+      this.serializer.save(namespacedKey, this.container, value);
+    } else {
+      this.cache.put(this.container, namespacedKey, value, this.serializer, true);
+    }
+    this.dropLegacyValue(namespacedKey);
+    this.keys.add(namespacedKey);
+  }
+
+  private void deleteValue(NamespacedKey namespacedKey) {
+    if (this.asyncWriter != null) {
+      this.asyncWriter.discard(this.container, namespacedKey);
+    }
+    if (this.cache != null) {
+      this.cache.remove(this.container, namespacedKey);
+    }
+    this.container.remove(namespacedKey);
+    this.dropLegacyValue(namespacedKey);
+    this.keys.remove(namespacedKey);
+  }
+
+  /**
+   * Serializes a value on a worker thread and writes it to the container in a later tick. Reads see it right away,
+   * but the value must not be changed until the returned future completes.
+   *
+   * @param key   The key to put the value under.
+   * @param value The value to put.
+   * @return A future that completes on the main thread once the value is written to the container.
+   */
+  public CompletableFuture<Void> putAsync(K key, V value) {
+    NamespacedKey namespacedKey = this.toScopedKey(key);
+    if (this.cache != null) {
+      this.writeValue(namespacedKey, value);
+      return CompletableFuture.completedFuture(null);
+    }
+    if (this.asyncWriter == null) {
+      throw new IllegalStateException("Async writer is not set.");
+    }
+    this.dropLegacyValue(namespacedKey);
+    this.keys.add(namespacedKey);
+    return this.asyncWriter.submit(this.container, namespacedKey, value, this.serializer);
+  }
+
+  /**
+   * Marks a cached value as changed, so it is written on the next flush.
+   * Only needed for values that were changed in place.
+   *
+   * @param key The key of the value.
+   */
+  public void markDirty(K key) {
+    if (this.cache == null) {
+      throw new IllegalStateException("Object cache is not set.");
+    }
+    this.cache.markDirty(this.container, this.toScopedKey(key));
+  }
+
+  /**
+   * Moves all values written by a version without prefixes under the prefix of this map, so they are counted and iterated.
+   * Before prefixes, all maps of a container shared their keys, so this should be called on the map that owned them.
+   * Keys that are not of the key type of this map and values that are not in its format are left in place.
+   *
+   * @return The amount of moved values.
+   */
+  public int migrateLegacyKeys() {
+    int moved = 0;
+    for (NamespacedKey legacyKey : List.copyOf(this.legacyKeys)) {
+      K key;
+      try {
+        key = this.serializer.deserializeKey(legacyKey, this.keyType);
+      } catch (RuntimeException e) {
+        // Owned by a map with another key type.
+        continue;
+      }
+      NamespacedKey namespacedKey = this.toScopedKey(key);
+      if (this.keys.contains(namespacedKey)) {
+        // Already written through this map, the legacy value is outdated.
+        this.dropLegacyValue(namespacedKey);
+      } else {
+        V value = this.loadLegacyValue(key, namespacedKey);
+        if (value != null) {
+          this.writeValue(namespacedKey, value);
+          moved++;
+        }
+      }
+    }
+    return moved;
+  }
+
+  /**
+   * Writes all dirty cached values of the container.
+   */
+  public void flush() {
+    if (this.cache != null) {
+      this.cache.flush(this.container);
+    }
   }
 
   @Override
   public int size() {
-    return this.container.getKeys().size();
+    return this.keys.size();
   }
 
   @Override
   public boolean isEmpty() {
-    return this.container.isEmpty();
+    return this.keys.isEmpty();
   }
 
   @Override
@@ -40,8 +288,14 @@ public class PDCMap<K, V> implements Map<K, V> {
       return false;
     }
     K typedKey = this.keyType.cast(key);
-    NamespacedKey namespacedKey = this.serializer.serializeKey(typedKey);
-    return this.container.has(namespacedKey, PersistentDataType.STRING);
+    NamespacedKey namespacedKey = this.toScopedKey(typedKey);
+    if (this.cache != null && this.cache.contains(this.container, namespacedKey)) {
+      return true;
+    }
+    if (this.asyncWriter != null && this.asyncWriter.getPendingValue(this.container, namespacedKey) != null) {
+      return true;
+    }
+    return this.container.has(namespacedKey, this.serializer.getDataType(typedKey)) || this.hasLegacyValue(typedKey, namespacedKey);
   }
 
   @Override
@@ -62,21 +316,20 @@ public class PDCMap<K, V> implements Map<K, V> {
       return null;
     }
     K typedKey = this.keyType.cast(key);
-    NamespacedKey namespacedKey = this.serializer.serializeKey(typedKey);
-    return this.serializer.load(namespacedKey, this.container, this.valueType);
+    NamespacedKey namespacedKey = this.toScopedKey(typedKey);
+    return this.readValue(typedKey, namespacedKey);
   }
 
   @Override
   public V put(K key, V value) {
-    NamespacedKey namespacedKey = this.serializer.serializeKey(key);
-    V oldValue = this.get(key);
-    this.serializer.save(namespacedKey, this.container, value);
+    NamespacedKey namespacedKey = this.toScopedKey(key);
+    V oldValue = this.readValue(key, namespacedKey);
+    this.writeValue(namespacedKey, value);
     return oldValue;
   }
 
   public void fastPut(K key, V value) {
-    NamespacedKey namespacedKey = this.serializer.serializeKey(key);
-    this.serializer.save(namespacedKey, this.container, value);
+    this.writeValue(this.toScopedKey(key), value);
   }
 
   @Override
@@ -85,15 +338,14 @@ public class PDCMap<K, V> implements Map<K, V> {
       return null;
     }
     K typedKey = this.keyType.cast(key);
-    NamespacedKey namespacedKey = this.serializer.serializeKey(typedKey);
-    V oldValue = this.get(key);
-    this.container.remove(namespacedKey);
+    NamespacedKey namespacedKey = this.toScopedKey(typedKey);
+    V oldValue = this.readValue(typedKey, namespacedKey);
+    this.deleteValue(namespacedKey);
     return oldValue;
   }
 
   public void fastRemove(K key) {
-    NamespacedKey namespacedKey = this.serializer.serializeKey(key);
-    this.container.remove(namespacedKey);
+    this.deleteValue(this.toScopedKey(key));
   }
 
   @Override
@@ -103,12 +355,14 @@ public class PDCMap<K, V> implements Map<K, V> {
 
   @Override
   public void clear() {
-    this.container.getKeys().forEach(this.container::remove);
+    for (NamespacedKey namespacedKey : List.copyOf(this.keys)) {
+      this.deleteValue(namespacedKey);
+    }
   }
 
   @Override
   public @NotNull Set<K> keySet() {
-    return this.container.getKeys().stream().map(nKey -> this.serializer.deserializeKey(nKey, this.keyType)).collect(Collectors.toSet());
+    return this.keys.stream().map(this::fromScopedKey).collect(Collectors.toSet());
   }
 
   @Override
@@ -0,0 +1,202 @@
+package com.gestankbratwurst.ambrosia.impl.pdc;
+
+import org.bukkit.Bukkit;
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityRemoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.event.world.WorldSaveEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Caches deserialized values of PDC maps. Dirty values are written on {@link #flush}, on world saves and
+ * before their holder unloads. Must only be used on the main thread.
+ */
+public class PDCObjectCache implements Listener {
+
+  private final Map<PersistentDataContainer, Map<NamespacedKey, CachedValue>> cachedValues;
+
+  /**
+   * Creates a cache and registers its listener.
+   *
+   * @param plugin The plugin to register the listener for.
+   */
+  public PDCObjectCache(JavaPlugin plugin) {
+    // Containers compare by their content, which changes.
+    this.cachedValues = new IdentityHashMap<>();
+    Bukkit.getPluginManager().registerEvents(this, plugin);
+  }
+
+  private static final class CachedValue {
+
+    private final Object value;
+    private final PDCSerializer serializer;
+    private boolean dirty;
+
+    private CachedValue(Object value, PDCSerializer serializer, boolean dirty) {
+      this.value = value;
+      this.serializer = serializer;
+      this.dirty = dirty;
+    }
+  }
+
+  /**
+   * Checks if a value is cached, including values that are not written to the container yet.
+   *
+   * @param container The container.
+   * @param key       The key in the container.
+   * @return True if the value is cached.
+   */
+  public boolean contains(PersistentDataContainer container, NamespacedKey key) {
+    Map<NamespacedKey, CachedValue> values = this.cachedValues.get(container);
+    return values != null && values.containsKey(key);
+  }
+
+  /**
+   * Gets a cached value.
+   *
+   * @param container The container.
+   * @param key       The key in the container.
+   * @return The value or null if it is not cached.
+   */
+  public Object get(PersistentDataContainer container, NamespacedKey key) {
+    Map<NamespacedKey, CachedValue> values = this.cachedValues.get(container);
+    if (values == null) {
+      return null;
+    }
+    CachedValue cachedValue = values.get(key);
+    return cachedValue == null ? null : cachedValue.value;
+  }
+
+  /**
+   * Caches a value.
+   *
+   * @param container  The container.
+   * @param key        The key in the container.
+   * @param value      The value.
+   * @param serializer Writes the value into the container once it is flushed.
+   * @param dirty      True if the value still has to be written to the container.
+   */
+  public void put(PersistentDataContainer container, NamespacedKey key, Object value, PDCSerializer serializer, boolean dirty) {
+    this.cachedValues.computeIfAbsent(container, ignored -> new HashMap<>()).put(key, new CachedValue(value, serializer, dirty));
+  }
+
+  /**
+   * Marks a cached value as dirty, after it was changed in place.
+   *
+   * @param container The container.
+   * @param key       The key in the container.
+   * @return False if the value is not cached.
+   */
+  public boolean markDirty(PersistentDataContainer container, NamespacedKey key) {
+    Map<NamespacedKey, CachedValue> values = this.cachedValues.get(container);
+    CachedValue cachedValue = values == null ? null : values.get(key);
+    if (cachedValue == null) {
+      return false;
+    }
+    cachedValue.dirty = true;
+    return true;
+  }
+
+  /**
+   * Removes a value from the cache without writing it.
+   *
+   * @param container The container.
+   * @param key       The key in the container.
+   */
+  public void remove(PersistentDataContainer container, NamespacedKey key) {
+    Map<NamespacedKey, CachedValue> values = this.cachedValues.get(container);
+    if (values == null) {
+      return;
+    }
+    values.remove(key);
+    if (values.isEmpty()) {
+      this.cachedValues.remove(container);
+    }
+  }
+
+  /**
+   * Writes all dirty values of a container.
+   *
+   * @param container The container.
+   */
+  public void flush(PersistentDataContainer container) {
+    Map<NamespacedKey, CachedValue> values = this.cachedValues.get(container);
+    if (values != null) {
+      flush(container, values);
+    }
+  }
+
+  /**
+   * Writes all dirty values of all containers.
+   */
+  public void flushAll() {
+    this.cachedValues.forEach(PDCObjectCache::flush);
+  }
+
+  private static void flush(PersistentDataContainer container, Map<NamespacedKey, CachedValue> values) {
+    values.forEach((key, cachedValue) -> {
+      if (cachedValue.dirty) {
+        cachedValue.serializer.save(key, container, cachedValue.value);
+        cachedValue.dirty = false;
+      }
+    });
+  }
+
+  /**
+   * Writes all dirty values of a container and drops its cached values.
+   *
+   * @param container The container.
+   */
+  public void invalidate(PersistentDataContainer container) {
+    Map<NamespacedKey, CachedValue> values = this.cachedValues.remove(container);
+    if (values != null) {
+      flush(container, values);
+    }
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onChunkUnload(ChunkUnloadEvent event) {
+    this.invalidate(event.getChunk().getPersistentDataContainer());
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onEntitiesUnload(EntitiesUnloadEvent event) {
+    // Called before the entities are saved, unlike their remove events.
+    for (Entity entity : event.getEntities()) {
+      this.invalidate(entity.getPersistentDataContainer());
+    }
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onEntityRemove(EntityRemoveEvent event) {
+    this.invalidate(event.getEntity().getPersistentDataContainer());
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onPlayerQuit(PlayerQuitEvent event) {
+    // Called before the player data is saved, unlike the remove event of the player.
+    this.invalidate(event.getPlayer().getPersistentDataContainer());
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onWorldSave(WorldSaveEvent event) {
+    this.flushAll();
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onWorldUnload(WorldUnloadEvent event) {
+    this.invalidate(event.getWorld().getPersistentDataContainer());
+  }
+}
@@ -4,16 +4,39 @@ import org.bukkit.NamespacedKey;
 import org.bukkit.persistence.PersistentDataContainer;
 import org.bukkit.persistence.PersistentDataType;
 
+import java.util.function.Consumer;
+
 public interface PDCSerializer {
 
   <T> void save(NamespacedKey key, PersistentDataContainer container, T value);
 
   <T> T load(NamespacedKey key, PersistentDataContainer container, Class<T> type);
 
+  /**
+   * Serializes a value without touching a container, so it can run off the main thread.
+   * The default defers all work to the returned write.
+   *
+   * @param key   The key to save the value under.
+   * @param value The value.
+   * @return Writes the serialized value into a container. Only called on the main thread.
+   */
+  default <T> Consumer<PersistentDataContainer> prepareSave(NamespacedKey key, T value) {
+    return container -> this.save(key, container, value);
+  }
+
   <T> NamespacedKey serializeKey(T key);
 
   <T> T deserializeKey(NamespacedKey key, Class<T> type);
 
   <K> PersistentDataType<?, ?> getDataType(K key);
 
+  /**
+   * Used to find the keys of a map in a container, so serializers creating keys of another namespace must override it.
+   *
+   * @return The namespace of all keys created by {@link #serializeKey(Object)}.
+   */
+  default String getNamespace() {
+    return NamespacedKey.MINECRAFT;
+  }
+
 }
@@ -0,0 +1,167 @@
+package com.gestankbratwurst.ambrosia.impl.pdc;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.bukkit.NamespacedKey;
+import org.bukkit.persistence.PersistentDataAdapterContext;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Maps json trees onto nested tag containers, with one entry per property. Property names are escaped to fit
+ * into keys, and keys starting with {@code _-}, which escaping never produces, mark arrays and wrapped primitives.
+ */
+final class TagContainerJson {
+
+  private static final String lengthKey = "_-length";
+  private static final String valueKey = "_-value";
+
+  private TagContainerJson() {
+  }
+
+  /**
+   * Writes a json tree into a new container.
+   *
+   * @param json      The json tree.
+   * @param context   The context to create containers with.
+   * @param namespace The namespace of all keys.
+   * @return The container holding the json tree.
+   */
+  static PersistentDataContainer toContainer(JsonElement json, PersistentDataAdapterContext context, String namespace) {
+    if (json.isJsonObject() || json.isJsonArray()) {
+      return writeContainer(json, context, namespace);
+    }
+    PersistentDataContainer container = context.newPersistentDataContainer();
+    write(container, new NamespacedKey(namespace, valueKey), json, context, namespace);
+    return container;
+  }
+
+  /**
+   * Reads a json tree written by {@link #toContainer}.
+   *
+   * @param container The container.
+   * @param namespace The namespace of all keys.
+   * @return The json tree.
+   */
+  static JsonElement fromContainer(PersistentDataContainer container, String namespace) {
+    NamespacedKey wrappedKey = new NamespacedKey(namespace, valueKey);
+    if (container.getKeys().contains(wrappedKey)) {
+      return read(container, wrappedKey, namespace);
+    }
+    return readContainer(container, namespace);
+  }
+
+  private static PersistentDataContainer writeContainer(JsonElement json, PersistentDataAdapterContext context, String namespace) {
+    PersistentDataContainer container = context.newPersistentDataContainer();
+    if (json.isJsonArray()) {
+      JsonArray array = json.getAsJsonArray();
+      container.set(new NamespacedKey(namespace, lengthKey), PersistentDataType.INTEGER, array.size());
+      for (int i = 0; i < array.size(); i++) {
+        write(container, new NamespacedKey(namespace, Integer.toString(i)), array.get(i), context, namespace);
+      }
+    } else {
+      for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject().entrySet()) {
+        write(container, new NamespacedKey(namespace, escape(entry.getKey())), entry.getValue(), context, namespace);
+      }
+    }
+    return container;
+  }
+
+  private static void write(PersistentDataContainer container, NamespacedKey key, JsonElement json, PersistentDataAdapterContext context, String namespace) {
+    if (json.isJsonNull()) {
+      return;
+    }
+    if (json.isJsonObject() || json.isJsonArray()) {
+      container.set(key, PersistentDataType.TAG_CONTAINER, writeContainer(json, context, namespace));
+      return;
+    }
+    JsonPrimitive primitive = json.getAsJsonPrimitive();
+    if (primitive.isBoolean()) {
+      container.set(key, PersistentDataType.BYTE, (byte) (primitive.getAsBoolean() ? 1 : 0));
+    } else if (primitive.isNumber()) {
+      BigDecimal number = primitive.getAsBigDecimal();
+      if (number.scale() <= 0 && number.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) <= 0 && number.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) >= 0) {
+        container.set(key, PersistentDataType.LONG, number.longValueExact());
+      } else {
+        container.set(key, PersistentDataType.DOUBLE, number.doubleValue());
+      }
+    } else {
+      container.set(key, PersistentDataType.STRING, primitive.getAsString());
+    }
+  }
+
+  private static JsonElement readContainer(PersistentDataContainer container, String namespace) {
+    Integer length = container.get(new NamespacedKey(namespace, lengthKey), PersistentDataType.INTEGER);
+    if (length != null) {
+      JsonArray array = new JsonArray(length);
+      for (int i = 0; i < length; i++) {
+        array.add(read(container, new NamespacedKey(namespace, Integer.toString(i)), namespace));
+      }
+      return array;
+    }
+    JsonObject object = new JsonObject();
+    for (NamespacedKey key : container.getKeys()) {
+      object.add(unescape(key.getKey()), read(container, key, namespace));
+    }
+    return object;
+  }
+
+  private static JsonElement read(PersistentDataContainer container, NamespacedKey key, String namespace) {
+    if (container.has(key, PersistentDataType.TAG_CONTAINER)) {
+      return readContainer(container.get(key, PersistentDataType.TAG_CONTAINER), namespace);
+    } else if (container.has(key, PersistentDataType.STRING)) {
+      return new JsonPrimitive(container.get(key, PersistentDataType.STRING));
+    } else if (container.has(key, PersistentDataType.LONG)) {
+      return new JsonPrimitive(container.get(key, PersistentDataType.LONG));
+    } else if (container.has(key, PersistentDataType.DOUBLE)) {
+      return new JsonPrimitive(container.get(key, PersistentDataType.DOUBLE));
+    } else if (container.has(key, PersistentDataType.BYTE)) {
+      return new JsonPrimitive(container.get(key, PersistentDataType.BYTE) != 0);
+    }
+    // Skipped nulls of arrays.
+    return JsonNull.INSTANCE;
+  }
+
+  static String escape(String name) {
+    StringBuilder builder = new StringBuilder(name.length() + 4);
+    for (char c : name.toCharArray()) {
+      if (c == '_') {
+        builder.append("__");
+      } else if (c >= 'A' && c <= 'Z') {
+        builder.append('_').append(Character.toLowerCase(c));
+      } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '/') {
+        builder.append(c);
+      } else {
+        builder.append("_.").append(String.format("%04x", (int) c));
+      }
+    }
+    return builder.toString();
+  }
+
+  static String unescape(String key) {
+    StringBuilder builder = new StringBuilder(key.length());
+    for (int i = 0; i < key.length(); i++) {
+      char c = key.charAt(i);
+      if (c != '_') {
+        builder.append(c);
+        continue;
+      }
+      char next = key.charAt(++i);
+      if (next == '_') {
+        builder.append('_');
+      } else if (next == '.') {
+        builder.append((char) Integer.parseInt(key.substring(i + 1, i + 5), 16));
+        i += 4;
+      } else {
+        builder.append(Character.toUpperCase(next));
+      }
+    }
+    return builder.toString();
+  }
+}